@@ -0,0 +1,108 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented test, which checks that backends give same results
+ * when reused for images of different size
+ */
+@RunWith(AndroidJUnit4.class)
+public class FilterBackendTest {
+    /**
+     * Maximum allowed difference of one channel caused by rounding
+     */
+    private static final int TOLERANCE = 1;
+
+    /**
+     * Backends under test
+     */
+    private FilterBackend mRenderScript, mJava;
+
+    /**
+     * Source image used for testing and its smaller copy
+     */
+    private Bitmap mLarge, mSmall;
+
+    @Before
+    public void setUp() {
+        mRenderScript = new RenderScriptBackend(getApplicationContext());
+        mJava = new JavaBackend();
+        mLarge = BitmapFactory.decodeResource(getApplicationContext().getResources(),
+                R.drawable.ducklings);
+        mSmall = Bitmap.createScaledBitmap(mLarge, mLarge.getWidth() / 3,
+                mLarge.getHeight() / 3, true);
+    }
+
+    @After
+    public void tearDown() {
+        mRenderScript.release();
+        mJava.release();
+    }
+
+    /**
+     * Tests blur with changing image size
+     */
+    @Test
+    public void blur_reusedAcrossSizes() {
+        for(Bitmap src : new Bitmap[] { mLarge, mSmall, mLarge }) {
+            Bitmap expected = empty(src), actual = empty(src);
+            mRenderScript.blur(src, expected, 10f);
+            mJava.blur(src, actual, 10f);
+            assertMaxDifference(expected, actual);
+        }
+    }
+
+    /**
+     * Tests sharpening with changing image size
+     */
+    @Test
+    public void sharpen_reusedAcrossSizes() {
+        for(Bitmap src : new Bitmap[] { mSmall, mLarge, mSmall }) {
+            Bitmap expected = empty(src), actual = empty(src);
+            mRenderScript.sharpen(src, expected, 1);
+            mJava.sharpen(src, actual, 1);
+            assertMaxDifference(expected, actual);
+        }
+    }
+
+    /**
+     * Creates empty bitmap of same size
+     * @param src Bitmap to take size from
+     * @return New bitmap
+     */
+    private static Bitmap empty(Bitmap src) {
+        return Bitmap.createBitmap(src.getWidth(), src.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Checks that every channel of every pixel differs no more than by tolerance
+     * @param expected Expected bitmap
+     * @param actual Actual bitmap
+     */
+    private static void assertMaxDifference(Bitmap expected, Bitmap actual) {
+        int maxDifference = 0;
+        for(int y = 0; y < expected.getHeight(); y++) {
+            for(int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getPixel(x, y), a = actual.getPixel(x, y);
+                for(int shift = 0; shift < 32; shift += 8) {
+                    maxDifference = Math.max(maxDifference,
+                            Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF)));
+                }
+            }
+        }
+        assertThat(maxDifference, lessThanOrEqualTo(TOLERANCE));
+    }
+}
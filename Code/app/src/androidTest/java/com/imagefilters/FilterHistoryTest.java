@@ -0,0 +1,139 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Instrumented test of undo/redo history
+ */
+@RunWith(AndroidJUnit4.class)
+public class FilterHistoryTest {
+    /**
+     * Runtime that applies blur and sharpening
+     */
+    private FilterRuntime mRuntime;
+
+    /**
+     * Bitmap of source image used for testing
+     */
+    private Bitmap mSource;
+
+    @Before
+    public void setUp() {
+        mRuntime = new FilterRuntime(new JavaBackend());
+        mSource = BitmapFactory.decodeResource(getApplicationContext().getResources(),
+                R.drawable.ducklings);
+    }
+
+    @After
+    public void tearDown() {
+        mRuntime.release();
+    }
+
+    /**
+     * Tests if undo and redo give same images as applying steps directly
+     */
+    @Test
+    public void undoRedo_matchesDirectApplication() {
+        FilterOp blur = new FilterOp(FilterOp.Type.BLUR, 10f),
+                invert = new FilterOp(FilterOp.Type.INVERT),
+                sharpen = new FilterOp(FilterOp.Type.SHARPEN, 1f);
+        FilterChain chain = new FilterChain(mSource);
+        FilterHistory history = new FilterHistory(mSource, Integer.MAX_VALUE);
+        history.push(blur, chain, mRuntime);
+        Bitmap blurred = chain.render();
+        history.push(invert, chain, mRuntime);
+        history.push(sharpen, chain, mRuntime);
+        Bitmap sharpened = chain.render();
+
+        assertThat(history.undo(chain, mRuntime), is(true));
+        assertThat(history.undo(chain, mRuntime), is(true));
+        assertThat(chain.render().sameAs(blurred), is(true));
+        assertThat(chain.getOps().size(), is(1));
+
+        assertThat(history.redo(chain, mRuntime), is(true));
+        assertThat(history.redo(chain, mRuntime), is(true));
+        assertThat(history.redo(chain, mRuntime), is(false));
+        assertThat(chain.render().sameAs(sharpened), is(true));
+    }
+
+    /**
+     * Tests if undo works without any checkpoints and new step drops redo
+     */
+    @Test
+    public void undo_withoutCheckpoints() {
+        FilterChain chain = new FilterChain(mSource);
+        FilterHistory history = new FilterHistory(mSource, 0);
+        history.push(new FilterOp(FilterOp.Type.BLUR, 5f), chain, mRuntime);
+        history.push(new FilterOp(FilterOp.Type.GBR), chain, mRuntime);
+
+        assertThat(history.undo(chain, mRuntime), is(true));
+        assertThat(history.undo(chain, mRuntime), is(true));
+        assertThat(history.undo(chain, mRuntime), is(false));
+        assertThat(chain.render().sameAs(mSource), is(true));
+
+        history.push(new FilterOp(FilterOp.Type.INVERT), chain, mRuntime);
+        assertThat(history.redo(chain, mRuntime), is(false));
+        assertThat(chain.getOps().size(), is(1));
+    }
+
+    /**
+     * Tests if editing step gives same image as applying edited steps from scratch
+     */
+    @Test
+    public void edit_matchesFreshChain() {
+        FilterOp invert = new FilterOp(FilterOp.Type.INVERT),
+                gamma = new FilterOp(FilterOp.Type.GAMMA, 2f);
+        FilterChain chain = new FilterChain(mSource);
+        FilterHistory history = new FilterHistory(mSource, Integer.MAX_VALUE);
+        history.push(invert, chain, mRuntime);
+        history.push(new FilterOp(FilterOp.Type.BLUR, 10f), chain, mRuntime);
+        history.push(gamma, chain, mRuntime);
+
+        FilterOp edited = new FilterOp(FilterOp.Type.BLUR, 3f);
+        assertThat(history.edit(1, edited, chain, mRuntime), is(true));
+        assertThat(history.getPosition(), is(3));
+
+        FilterChain fresh = new FilterChain(mSource);
+        fresh.apply(invert, mRuntime);
+        fresh.apply(edited, mRuntime);
+        fresh.apply(gamma, mRuntime);
+        assertThat(chain.render().sameAs(fresh.render()), is(true));
+    }
+
+    /**
+     * Tests if checkpoints evicted from memory are spilled to files, used by undo and
+     * deleted on release
+     */
+    @Test
+    public void undo_fromSpilledCheckpoints() {
+        File dir = new File(getApplicationContext().getCacheDir(), "history-test");
+        FilterChain chain = new FilterChain(mSource);
+        //No checkpoint fits in memory, so every one is spilled right away
+        FilterHistory history = new FilterHistory(mSource, 1, dir, Long.MAX_VALUE);
+        history.push(new FilterOp(FilterOp.Type.BLUR, 10f), chain, mRuntime);
+        Bitmap blurred = chain.render();
+        history.push(new FilterOp(FilterOp.Type.SHARPEN, 1f), chain, mRuntime);
+        assertThat(dir.listFiles().length, is(2));
+
+        assertThat(history.undo(chain, mRuntime), is(true));
+        assertThat(chain.render().sameAs(blurred), is(true));
+
+        history.release();
+        assertThat(dir.listFiles().length, is(0));
+    }
+}
@@ -0,0 +1,44 @@
+package com.imagefilters;
+
+import androidx.test.espresso.IdlingResource;
+
+/**
+ * Lets Espresso wait until filters applied in background are shown
+ */
+public class FilterIdlingResource implements IdlingResource {
+    /**
+     * Activity whose filters are watched
+     */
+    private final FilterImage mActivity;
+
+    /**
+     * Callback to notify Espresso when filtering is finished
+     */
+    private volatile ResourceCallback mCallback;
+
+    /**
+     * Creates resource for given Activity
+     * @param activity Activity whose filters are watched
+     */
+    public FilterIdlingResource(FilterImage activity) {
+        mActivity = activity;
+    }
+
+    @Override
+    public String getName() {
+        return FilterIdlingResource.class.getName();
+    }
+
+    @Override
+    public boolean isIdleNow() {
+        boolean idle = mActivity.isFilteringIdle();
+        if(idle && mCallback != null)
+            mCallback.onTransitionToIdle();
+        return idle;
+    }
+
+    @Override
+    public void registerIdleTransitionCallback(ResourceCallback callback) {
+        mCallback = callback;
+    }
+}
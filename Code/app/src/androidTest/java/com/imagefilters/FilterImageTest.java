@@ -4,7 +4,10 @@ import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
 import static androidx.test.espresso.Espresso.onView;
 import static androidx.test.espresso.action.ViewActions.click;
 import static androidx.test.espresso.action.ViewActions.scrollTo;
+import static androidx.test.espresso.assertion.ViewAssertions.matches;
+import static androidx.test.espresso.matcher.ViewMatchers.Visibility.VISIBLE;
 import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+import static androidx.test.espresso.matcher.ViewMatchers.withEffectiveVisibility;
 import static androidx.test.espresso.matcher.ViewMatchers.withId;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -15,11 +18,15 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.widget.ImageView;
+import android.widget.SeekBar;
 
+import androidx.test.espresso.IdlingRegistry;
 import androidx.test.ext.junit.rules.ActivityScenarioRule;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.rule.GrantPermissionRule;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -62,9 +69,28 @@ public class FilterImageTest {
      * View IDs of all filter buttons
      */
     private final int[] BUTTONS_IDS = { R.id.invert_button, R.id.grayscale_button,
-        R.id.blur_button, R.id.sharp_button,
+        R.id.blur_button, R.id.sharp_button, R.id.unsharp_button, R.id.gamma_button,
+            R.id.contrast_button, R.id.posterize_button, R.id.levels_button, R.id.curves_button,
             R.id.change_gbr_button, R.id.change_brg_button };
 
+    /**
+     * Resource that makes Espresso wait for filters applied in background
+     */
+    private FilterIdlingResource mIdlingResource;
+
+    @Before
+    public void registerIdlingResource() {
+        activityRule.getScenario().onActivity(activity -> {
+            mIdlingResource = new FilterIdlingResource(activity);
+            IdlingRegistry.getInstance().register(mIdlingResource);
+        });
+    }
+
+    @After
+    public void unregisterIdlingResource() {
+        IdlingRegistry.getInstance().unregister(mIdlingResource);
+    }
+
     /**
      * Tests if any random filter works
      */
@@ -77,6 +103,9 @@ public class FilterImageTest {
         onView(withId(BUTTONS_IDS[randIndex])).perform(scrollTo());
         onView(withId(BUTTONS_IDS[randIndex])).perform(click());
 
+        //Waiting until filtered image is shown
+        onView(withId(R.id.filter_source)).check(matches(withEffectiveVisibility(VISIBLE)));
+
         //Checking if filtered image doesn't match source image
         activityRule.getScenario().onActivity(activity -> {
             Resources resources = getApplicationContext().getResources();
@@ -103,6 +132,9 @@ public class FilterImageTest {
         onView(withId(R.id.filter_clear_button)).perform(scrollTo());
         onView(withId(R.id.filter_clear_button)).perform(click());
 
+        //Waiting until cleared image is shown
+        onView(withId(R.id.filter_source)).check(matches(withEffectiveVisibility(VISIBLE)));
+
         //Checking if cleared image matches source image
         activityRule.getScenario().onActivity(activity -> {
             Resources resources = getApplicationContext().getResources();
@@ -113,6 +145,80 @@ public class FilterImageTest {
         });
     }
 
+    /**
+     * Tests if dragging blur radius slider re-renders blur, down to source image at zero
+     */
+    @Test
+    public void blurSlider_rerendersImage() {
+        onView(withId(R.id.blur_button)).perform(scrollTo());
+        onView(withId(R.id.blur_button)).perform(click());
+        onView(withId(R.id.filter_params)).check(matches(withEffectiveVisibility(VISIBLE)));
+
+        //Several changes in a row, only the last one has to be rendered
+        activityRule.getScenario().onActivity(activity -> {
+            SeekBar radius = activity.findViewById(R.id.filter_param_1);
+            radius.setProgress(radius.getMax() / 2);
+            radius.setProgress(radius.getMax() / 4);
+            radius.setProgress(0);
+        });
+
+        //Waiting until re-rendered image is shown
+        onView(withId(R.id.filter_source)).check(matches(withEffectiveVisibility(VISIBLE)));
+
+        activityRule.getScenario().onActivity(activity -> {
+            Resources resources = getApplicationContext().getResources();
+            mSourceImage = BitmapFactory.decodeResource(resources, SOURCE_ID);
+            ImageView sourceView = activity.findViewById(R.id.filter_source);
+            Bitmap activityImage = ((BitmapDrawable)sourceView.getDrawable()).getBitmap();
+            assertThat(mSourceImage.sameAs(activityImage), is(true));
+        });
+    }
+
+    /**
+     * Tests if filtered image survives recreation of activity, e.g. on rotation
+     */
+    @Test
+    public void recreate_keepsFilteredImage() {
+        int randIndex = getRandomFilter();
+        onView(withId(BUTTONS_IDS[randIndex])).perform(scrollTo());
+        onView(withId(BUTTONS_IDS[randIndex])).perform(click());
+        onView(withId(R.id.filter_source)).check(matches(withEffectiveVisibility(VISIBLE)));
+
+        Bitmap[] filtered = new Bitmap[1];
+        activityRule.getScenario().onActivity(activity -> {
+            ImageView sourceView = activity.findViewById(R.id.filter_source);
+            filtered[0] = ((BitmapDrawable)sourceView.getDrawable()).getBitmap();
+        });
+
+        activityRule.getScenario().recreate();
+        //Saved pixels are taken over in background, so new activity is watched
+        activityRule.getScenario().onActivity(activity -> {
+            IdlingRegistry.getInstance().unregister(mIdlingResource);
+            mIdlingResource = new FilterIdlingResource(activity);
+            IdlingRegistry.getInstance().register(mIdlingResource);
+        });
+        onView(withId(R.id.filter_source)).check(matches(withEffectiveVisibility(VISIBLE)));
+
+        activityRule.getScenario().onActivity(activity -> {
+            ImageView sourceView = activity.findViewById(R.id.filter_source);
+            Bitmap activityImage = ((BitmapDrawable)sourceView.getDrawable()).getBitmap();
+            assertThat(filtered[0].sameAs(activityImage), is(true));
+        });
+    }
+
+    /**
+     * Tests if automatic white balance is applied as color balance that can be adjusted
+     */
+    @Test
+    public void autoWhiteBalance_showsGainSliders() {
+        onView(withId(R.id.auto_white_balance_button)).perform(scrollTo());
+        onView(withId(R.id.auto_white_balance_button)).perform(click());
+
+        //Sliders are shown once gains are chosen from image in background
+        onView(withId(R.id.filter_params)).check(matches(withEffectiveVisibility(VISIBLE)));
+        onView(withId(R.id.filter_param_3)).check(matches(withEffectiveVisibility(VISIBLE)));
+    }
+
     /**
      * Helper method to get random filter
      * @return Index of Button View that deploys filter
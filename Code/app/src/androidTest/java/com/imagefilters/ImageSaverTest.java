@@ -0,0 +1,85 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.rule.GrantPermissionRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Instrumented test of saving images to MediaStore
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageSaverTest {
+    /**
+     * Rule to allow writing to local storage on old API levels
+     */
+    @Rule
+    public GrantPermissionRule storageTestRule =
+            GrantPermissionRule.grant(Manifest.permission.READ_EXTERNAL_STORAGE,
+                    Manifest.permission.WRITE_EXTERNAL_STORAGE);
+
+    /**
+     * Tests if image saved in each format decodes back with same size and lossless
+     * formats keep pixels
+     */
+    @Test
+    public void save_allFormatsDecode() throws IOException {
+        ContentResolver resolver = getApplicationContext().getContentResolver();
+        Bitmap image = BitmapFactory.decodeResource(getApplicationContext().getResources(),
+                R.drawable.ducklings);
+
+        for(ImageSaver.Format format : ImageSaver.Format.values()) {
+            Uri uri = ImageSaver.save(resolver, image, format, 80);
+            try {
+                Bitmap saved;
+                try(InputStream in = resolver.openInputStream(uri)) {
+                    saved = BitmapFactory.decodeStream(in);
+                }
+                assertThat(saved, is(notNullValue()));
+                assertThat(saved.getWidth(), is(image.getWidth()));
+                assertThat(saved.getHeight(), is(image.getHeight()));
+                if(!format.usesQuality())
+                    assertThat(saved.sameAs(image), is(true));
+            }
+            finally {
+                resolver.delete(uri, null, null);
+            }
+        }
+    }
+
+    /**
+     * Tests if encoding failure reaches caller instead of publishing partial image
+     */
+    @Test
+    public void save_propagatesEncodeFailure() {
+        ContentResolver resolver = getApplicationContext().getContentResolver();
+        try {
+            ImageSaver.save(resolver, ImageSaver.Format.PNG, out -> {
+                out.write(1);
+                throw new IOException("Encoding failed");
+            });
+        }
+        catch(IOException e) {
+            assertThat(e.getMessage(), is("Encoding failed"));
+            return;
+        }
+        throw new AssertionError("Expected IOException");
+    }
+}
@@ -1,7 +1,10 @@
 package com.imagefilters;
 
 import android.Manifest;
+import android.graphics.Bitmap;
+import android.net.Uri;
 
+import androidx.lifecycle.Lifecycle;
 import androidx.test.ext.junit.rules.ActivityScenarioRule;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.rule.GrantPermissionRule;
@@ -10,11 +13,15 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.List;
+
 import static androidx.test.espresso.Espresso.*;
 import static androidx.test.espresso.action.ViewActions.*;
 import static androidx.test.espresso.assertion.ViewAssertions.*;
 import static androidx.test.espresso.matcher.ViewMatchers.*;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  * Instrumented test, which will execute on an Android device.
@@ -39,24 +46,25 @@ public class MainActivityInstrumentedTest {
                     Manifest.permission.WRITE_EXTERNAL_STORAGE);
 
     /**
-     * Tests whether input Buttons block when user starts download from default URL
+     * Tests whether progress is shown and more downloads can be started
+     * when user starts download from default URL
      */
     @Test
     public void defaultUrlLoadInterfaceChanged() {
         //Clicking button to start download
         onView(withId(R.id.download_url_default_button)).perform(click());
 
-        //Checking if clickable buttons became disabled
-        onView(withId(R.id.select_gallery_button)).check(matches(isNotEnabled()));
-        onView(withId(R.id.download_url_default_button)).check(matches(isNotEnabled()));
-        onView(withId(R.id.download_url_user_button)).check(matches(isNotEnabled()));
+        //Checking if download buttons stay enabled to queue more downloads
+        onView(withId(R.id.download_url_default_button)).check(matches(isEnabled()));
+        onView(withId(R.id.download_url_user_button)).check(matches(isEnabled()));
 
         //Checking if progress bar became visible
-        onView(withId(R.id.progress_loader)).check(matches(isEnabled()));
+        onView(withId(R.id.progress_loader)).check(matches(isDisplayed()));
     }
 
     /**
-     * Tests whether input Buttons block when user starts download from their valid URL
+     * Tests whether progress is shown and more downloads can be started
+     * when user starts download from their valid URL
      */
     @Test
     public void userUrlLoadInterfaceChanged() {
@@ -67,13 +75,13 @@ public class MainActivityInstrumentedTest {
         //Clicking button to start download
         onView(withId(R.id.download_url_user_button)).perform(click());
 
-        //Checking if clickable buttons became disabled
-        onView(withId(R.id.select_gallery_button)).check(matches(isNotEnabled()));
-        onView(withId(R.id.download_url_default_button)).check(matches(isNotEnabled()));
-        onView(withId(R.id.download_url_user_button)).check(matches(isNotEnabled()));
+        //Checking if download buttons stay enabled to queue more downloads
+        onView(withId(R.id.download_url_default_button)).check(matches(isEnabled()));
+        onView(withId(R.id.download_url_user_button)).check(matches(isEnabled()));
 
-        //Checking if progress bar became visible
+        //Checking if progress bar and number of downloads became visible
         onView(withId(R.id.progress_loader)).check(matches(isDisplayed()));
+        onView(withId(R.id.download_status)).check(matches(isDisplayed()));
     }
 
     /**
@@ -91,4 +99,26 @@ public class MainActivityInstrumentedTest {
         //Checking if progress bar is still invisible
         onView(withId(R.id.progress_loader)).check(matches(not(isDisplayed())));
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests whether every image downloaded from the same URL while activity is paused
+     * stays queued, in order, instead of replacing one that is still waiting
+     */
+    @Test
+    public void repeatedUrlWhilePaused_queuesEveryImage() {
+        activityRule.getScenario().moveToState(Lifecycle.State.STARTED);
+        Uri url = Uri.parse("http://picsum.photos/500");
+        Bitmap[] images = new Bitmap[5];
+        for(int i = 0; i < images.length; i++)
+            images[i] = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+
+        activityRule.getScenario().onActivity(activity -> {
+            for(Bitmap image : images)
+                activity.onImageDownloaded(url, image);
+            List<Bitmap> queued = activity.getQueuedImages();
+            assertThat(queued.size(), is(images.length));
+            for(int i = 0; i < images.length; i++)
+                assertThat(queued.get(i), sameInstance(images[i]));
+        });
+    }
+}
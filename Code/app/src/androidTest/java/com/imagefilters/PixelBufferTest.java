@@ -0,0 +1,74 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Instrumented test of pixel buffers outside of Java heap
+ */
+@RunWith(AndroidJUnit4.class)
+public class PixelBufferTest {
+    /**
+     * Bitmap of source image used for testing
+     */
+    private Bitmap mSource;
+
+    @Before
+    public void setUp() {
+        mSource = BitmapFactory.decodeResource(getApplicationContext().getResources(),
+                R.drawable.ducklings);
+    }
+
+    /**
+     * Tests if pixels copied into direct buffer come back unchanged
+     */
+    @Test
+    public void direct_keepsPixels() {
+        PixelBuffer buffer = PixelBuffer.allocate(mSource);
+        buffer.copyFrom(mSource);
+        assertThat(buffer.isMapped(), is(false));
+        assertThat(buffer.toBitmap().sameAs(mSource), is(true));
+    }
+
+    /**
+     * Tests if pixels copied into mapped file come back unchanged and file is deleted
+     * on release
+     */
+    @Test
+    public void mapped_keepsPixelsAndDeletesFile() throws IOException {
+        File file = new File(getApplicationContext().getCacheDir(), "buffer-test.raw");
+        PixelBuffer buffer = PixelBuffer.map(file, mSource);
+        buffer.copyFrom(mSource);
+        assertThat(file.length(), is((long)mSource.getByteCount()));
+
+        Bitmap copy = Bitmap.createBitmap(mSource.getWidth(), mSource.getHeight(),
+                mSource.getConfig());
+        assertThat(buffer.copyTo(copy).sameAs(mSource), is(true));
+        buffer.release();
+        assertThat(file.exists(), is(false));
+    }
+
+    /**
+     * Tests if bitmap of other size is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void copyTo_rejectsOtherSize() {
+        PixelBuffer buffer = PixelBuffer.allocate(mSource);
+        buffer.copyTo(Bitmap.createBitmap(mSource.getWidth() + 1, mSource.getHeight(),
+                mSource.getConfig()));
+    }
+}
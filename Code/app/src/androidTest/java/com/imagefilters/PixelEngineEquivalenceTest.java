@@ -0,0 +1,160 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.test.ext.junit.rules.ActivityScenarioRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented test, which checks that PixelEngine gives same pixels
+ * as filters of FilterImage Activity
+ */
+@RunWith(AndroidJUnit4.class)
+public class PixelEngineEquivalenceTest {
+    /**
+     * Rule to get access to FilterImage filters
+     */
+    @Rule
+    public ActivityScenarioRule<FilterImage> activityRule =
+            new ActivityScenarioRule<>(FilterImage.class);
+
+    /**
+     * Maximum allowed difference of one channel caused by rounding
+     */
+    private static final int TOLERANCE = 1;
+
+    /**
+     * Bitmap of source image used for testing
+     */
+    private Bitmap mSourceImage;
+
+    /**
+     * Engine under test
+     */
+    private PixelEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mSourceImage = BitmapFactory.decodeResource(
+                getApplicationContext().getResources(), R.drawable.ducklings);
+        mEngine = new PixelEngine();
+    }
+
+    @After
+    public void tearDown() {
+        mEngine.shutdown();
+    }
+
+    /**
+     * Tests inverting
+     */
+    @Test
+    public void invert() {
+        activityRule.getScenario().onActivity(activity -> assertMatrixMatches(
+                activity.invertFilter(mSourceImage), ColorMatrices.INVERT));
+    }
+
+    /**
+     * Tests grayscale filter
+     */
+    @Test
+    public void grayscale() {
+        activityRule.getScenario().onActivity(activity -> assertMatrixMatches(
+                activity.grayscaleFilter(mSourceImage), ColorMatrices.GRAYSCALE));
+    }
+
+    /**
+     * Tests GBR filter
+     */
+    @Test
+    public void gbr() {
+        activityRule.getScenario().onActivity(activity -> assertMatrixMatches(
+                activity.rgbToGbrFilter(mSourceImage), ColorMatrices.GBR));
+    }
+
+    /**
+     * Tests BRG filter
+     */
+    @Test
+    public void brg() {
+        activityRule.getScenario().onActivity(activity -> assertMatrixMatches(
+                activity.rgbToBrgFilter(mSourceImage), ColorMatrices.BRG));
+    }
+
+    /**
+     * Tests Gaussian blur
+     */
+    @Test
+    public void blur() {
+        activityRule.getScenario().onActivity(activity -> {
+            int[] src = pixels(mSourceImage), dst = new int[src.length];
+            mEngine.blur(src, dst, mSourceImage.getWidth(), mSourceImage.getHeight(), 25f);
+            assertMaxDifference(pixels(activity.blurFilter(mSourceImage, 25f)), dst);
+        });
+    }
+
+    /**
+     * Tests sharpening
+     */
+    @Test
+    public void sharpen() {
+        activityRule.getScenario().onActivity(activity -> {
+            int[] src = pixels(mSourceImage), dst = new int[src.length];
+            mEngine.sharpen(src, dst, mSourceImage.getWidth(), mSourceImage.getHeight(), 1);
+            assertMaxDifference(pixels(activity.sharpFilter(mSourceImage, 1)), dst);
+        });
+    }
+
+    /**
+     * Checks that engine applies matrix same way as Activity did
+     * @param expected Bitmap filtered by Activity
+     * @param matrix Color matrix of filter
+     */
+    private void assertMatrixMatches(Bitmap expected, float[] matrix) {
+        int[] src = pixels(mSourceImage), dst = new int[src.length];
+        mEngine.colorMatrix(src, dst, mSourceImage.getWidth(), mSourceImage.getHeight(),
+                matrix);
+        assertMaxDifference(pixels(expected), dst);
+    }
+
+    /**
+     * Checks that every channel of every pixel differs no more than by tolerance
+     * @param expected Expected pixels
+     * @param actual Actual pixels
+     */
+    private static void assertMaxDifference(int[] expected, int[] actual) {
+        int maxDifference = 0;
+        for(int i = 0; i < expected.length; i++) {
+            for(int shift = 0; shift < 32; shift += 8) {
+                int difference = Math.abs(((expected[i] >>> shift) & 0xFF)
+                        - ((actual[i] >>> shift) & 0xFF));
+                maxDifference = Math.max(maxDifference, difference);
+            }
+        }
+        assertThat(maxDifference, lessThanOrEqualTo(TOLERANCE));
+    }
+
+    /**
+     * Gets pixels of bitmap
+     * @param bitmap Bitmap to read
+     * @return ARGB pixels
+     */
+    private static int[] pixels(Bitmap bitmap) {
+        int width = bitmap.getWidth(), height = bitmap.getHeight();
+        int[] result = new int[width * height];
+        bitmap.getPixels(result, 0, width, 0, 0, width, height);
+        return result;
+    }
+}
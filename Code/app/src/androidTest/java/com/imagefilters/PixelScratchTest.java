@@ -0,0 +1,87 @@
+package com.imagefilters;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static androidx.test.espresso.matcher.ViewMatchers.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Instrumented test of raw pixel scratch files
+ */
+@RunWith(AndroidJUnit4.class)
+public class PixelScratchTest {
+    /**
+     * Tests if bitmap read back from scratch file has the same pixels
+     */
+    @Test
+    public void writeRead_keepsPixels() throws IOException {
+        Bitmap image = BitmapFactory.decodeResource(getApplicationContext().getResources(),
+                R.drawable.ducklings);
+        File file = new File(getApplicationContext().getCacheDir(), "scratch-test.raw");
+        try {
+            PixelScratch.write(file, image);
+            Bitmap read = PixelScratch.read(file);
+            assertThat(read, is(notNullValue()));
+            assertThat(read.sameAs(image), is(true));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests if missing and truncated files aren't read
+     */
+    @Test
+    public void read_rejectsInvalidFiles() throws IOException {
+        File file = new File(getApplicationContext().getCacheDir(), "scratch-test.raw");
+        try {
+            assertThat(PixelScratch.read(file), is(nullValue()));
+
+            PixelScratch.write(file, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888));
+            try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(out.length() - 4);
+            }
+            assertThat(PixelScratch.read(file), is(nullValue()));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests if header claiming more pixels than file holds is rejected before bitmap
+     * of that size is allocated
+     */
+    @Test
+    public void read_rejectsOversizedHeader() throws IOException {
+        File file = new File(getApplicationContext().getCacheDir(), "scratch-test.raw");
+        try {
+            PixelScratch.write(file, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888));
+            try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                //Width and height follow mark, 65536x65536 wouldn't fit into memory
+                out.seek(4);
+                out.writeInt(1 << 16);
+                out.writeInt(1 << 16);
+            }
+            assertThat(PixelScratch.read(file), is(nullValue()));
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
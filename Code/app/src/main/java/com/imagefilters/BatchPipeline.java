@@ -0,0 +1,376 @@
+package com.imagefilters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Processes many images in three overlapping stages (decode, filter, encode), each
+ * on its own thread. Stages are connected by bounded queues and number of images
+ * in flight is limited by memory budget, so decoding never runs far ahead of encoding
+ * @param <I> Type of input item, e.g. URI
+ * @param <D> Type of decoded image
+ * @param <F> Type of filtered image
+ */
+public class BatchPipeline<I, D, F> {
+    /**
+     * Granularity of memory budget in bytes
+     */
+    private static final int PERMIT_BYTES = 1024;
+
+    /**
+     * Work done by stages
+     */
+    private final Stages<I, D, F> mStages;
+
+    /**
+     * Number of items that can wait between two stages
+     */
+    private final int mQueueCapacity;
+
+    /**
+     * Memory budget in permits of {@link #PERMIT_BYTES}
+     */
+    private final int mBudgetPermits;
+
+    /**
+     * Permits of memory budget held by images in flight
+     */
+    private final Semaphore mMemory;
+
+    /**
+     * Receiver of progress
+     */
+    private final Listener<I> mListener;
+
+    /**
+     * Stage threads, empty until started
+     */
+    private final List<Thread> mThreads = new ArrayList<>();
+
+    /**
+     * Number of items processed so far
+     */
+    private int mDone, mFailed;
+
+    /**
+     * Time pipeline was started at
+     */
+    private long mStartNanos;
+
+    /**
+     * True once pipeline was cancelled
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * Creates pipeline
+     * @param stages Work done by stages
+     * @param memoryBudget Maximum bytes held by images in flight, image larger than whole
+     *                     budget is processed alone
+     * @param queueCapacity Number of items that can wait between two stages
+     * @param listener Receiver of progress, called on encode thread
+     */
+    public BatchPipeline(Stages<I, D, F> stages, long memoryBudget, int queueCapacity,
+                         Listener<I> listener) {
+        mStages = stages;
+        mQueueCapacity = queueCapacity;
+        mBudgetPermits = (int)Math.max(1, Math.min(Integer.MAX_VALUE,
+                memoryBudget / PERMIT_BYTES));
+        mMemory = new Semaphore(mBudgetPermits);
+        mListener = listener;
+    }
+
+    /**
+     * Starts processing items in background, can be called only once
+     * @param items Items to process in order
+     */
+    public synchronized void start(List<I> items) {
+        if(!mThreads.isEmpty())
+            throw new IllegalStateException("Pipeline was already started");
+
+        final List<I> input = new ArrayList<>(items);
+        final BlockingQueue<Job<I>> decoded = new ArrayBlockingQueue<>(mQueueCapacity),
+                filtered = new ArrayBlockingQueue<>(mQueueCapacity);
+        mStartNanos = System.nanoTime();
+
+        mThreads.add(new Thread(() -> {
+            try {
+                for(I item : input) {
+                    if(mCancelled)
+                        break;
+                    Job<I> job = new Job<>(item);
+                    try {
+                        job.mPermits = toPermits(mStages.estimateBytes(item));
+                        mMemory.acquire(job.mPermits);
+                        job.mData = mStages.decode(item);
+                    }
+                    catch(InterruptedException e) {
+                        throw e;
+                    }
+                    catch(Exception e) {
+                        job.mError = e;
+                    }
+                    decoded.put(job);
+                }
+            }
+            catch(InterruptedException e) {
+                //Cancelled, remaining items are skipped
+            }
+            //Later stages are never interrupted, they drain queue until end marker
+            putUninterruptibly(decoded, Job.<I>end());
+        }, "BatchDecode"));
+
+        mThreads.add(new Thread(() -> {
+            try {
+                for(Job<I> job = decoded.take(); !job.isEnd(); job = decoded.take()) {
+                    if(job.mError == null && !mCancelled) {
+                        try {
+                            @SuppressWarnings("unchecked") D data = (D)job.mData;
+                            job.mData = mStages.filter(job.mItem, data);
+                        }
+                        catch(Exception e) {
+                            job.mError = e;
+                        }
+                    }
+                    filtered.put(job);
+                }
+                filtered.put(Job.end());
+            }
+            catch(InterruptedException e) {
+                //Cancelled
+            }
+        }, "BatchFilter"));
+
+        mThreads.add(new Thread(() -> {
+            try {
+                for(Job<I> job = filtered.take(); !job.isEnd(); job = filtered.take()) {
+                    if(job.mError == null && !mCancelled) {
+                        try {
+                            @SuppressWarnings("unchecked") F data = (F)job.mData;
+                            mStages.encode(job.mItem, data);
+                            job.mSaved = true;
+                        }
+                        catch(Exception e) {
+                            job.mError = e;
+                        }
+                    }
+                    job.mData = null;
+                    mMemory.release(job.mPermits);
+                    report(job, input.size());
+                }
+                mListener.onFinished(getProgress(input.size()), mCancelled);
+            }
+            catch(InterruptedException e) {
+                mListener.onFinished(getProgress(input.size()), true);
+            }
+        }, "BatchEncode"));
+
+        for(Thread thread : mThreads)
+            thread.start();
+    }
+
+    /**
+     * Stops processing, images already in flight are dropped without encoding
+     */
+    public synchronized void cancel() {
+        mCancelled = true;
+        for(Thread thread : mThreads) {
+            if(thread.getName().equals("BatchDecode"))
+                thread.interrupt();
+        }
+    }
+
+    /**
+     * Waits until all stages finish
+     * @throws InterruptedException If waiting thread is interrupted
+     */
+    public void await() throws InterruptedException {
+        List<Thread> threads;
+        synchronized(this) {
+            threads = new ArrayList<>(mThreads);
+        }
+        for(Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * Puts item into queue even if thread is interrupted
+     * @param queue Queue to put into
+     * @param job Item to put
+     * @param <I> Type of input item
+     */
+    private static <I> void putUninterruptibly(BlockingQueue<Job<I>> queue, Job<I> job) {
+        boolean interrupted = false;
+        while(true) {
+            try {
+                queue.put(job);
+                break;
+            }
+            catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Counts finished item and reports progress
+     * @param job Finished item
+     * @param total Number of all items
+     */
+    private void report(Job<I> job, int total) {
+        BatchProgress progress;
+        synchronized(this) {
+            if(job.mSaved)
+                mDone++;
+            else
+                mFailed++;
+            progress = getProgress(total);
+        }
+        if(job.mError != null)
+            mListener.onFailed(job.mItem, job.mError);
+        mListener.onProgress(progress);
+    }
+
+    /**
+     * Gets current progress
+     * @param total Number of all items
+     * @return Snapshot of progress
+     */
+    private synchronized BatchProgress getProgress(int total) {
+        return new BatchProgress(mDone, mFailed, total, System.nanoTime() - mStartNanos);
+    }
+
+    /**
+     * Converts bytes to permits of memory budget
+     * @param bytes Estimated memory of image
+     * @return Number of permits, at most whole budget
+     */
+    private int toPermits(long bytes) {
+        long permits = (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES;
+        return (int)Math.max(1, Math.min(mBudgetPermits, permits));
+    }
+
+    /**
+     * Work done by pipeline stages, each method is always called on the same thread
+     * @param <I> Type of input item
+     * @param <D> Type of decoded image
+     * @param <F> Type of filtered image
+     */
+    public interface Stages<I, D, F> {
+        /**
+         * Estimates peak memory of item from decode until end of encode
+         * @param item Item to estimate
+         * @return Memory in bytes
+         * @throws Exception If item can't be read
+         */
+        long estimateBytes(I item) throws Exception;
+
+        /**
+         * Decodes item
+         * @param item Item to decode
+         * @return Decoded image
+         * @throws Exception If item can't be decoded
+         */
+        D decode(I item) throws Exception;
+
+        /**
+         * Filters decoded image
+         * @param item Item image was decoded from
+         * @param decoded Decoded image
+         * @return Filtered image
+         * @throws Exception If image can't be filtered
+         */
+        F filter(I item, D decoded) throws Exception;
+
+        /**
+         * Encodes and stores filtered image, releasing resources of image afterwards
+         * @param item Item image was decoded from
+         * @param filtered Filtered image
+         * @throws Exception If image can't be encoded
+         */
+        void encode(I item, F filtered) throws Exception;
+    }
+
+    /**
+     * Receiver of pipeline progress
+     * @param <I> Type of input item
+     */
+    public interface Listener<I> {
+        /**
+         * Called after each item is encoded or dropped
+         * @param progress Snapshot of progress
+         */
+        void onProgress(BatchProgress progress);
+
+        /**
+         * Called when item fails in any stage, before its progress is reported
+         * @param item Item that failed
+         * @param error Cause of failure
+         */
+        void onFailed(I item, Exception error);
+
+        /**
+         * Called once after last item
+         * @param progress Final progress
+         * @param cancelled True if pipeline was cancelled
+         */
+        void onFinished(BatchProgress progress, boolean cancelled);
+    }
+
+    /**
+     * Item moving through stages
+     * @param <I> Type of input item
+     */
+    private static class Job<I> {
+        /**
+         * Input item, null for end of stream
+         */
+        final I mItem;
+
+        /**
+         * Result of last stage
+         */
+        Object mData;
+
+        /**
+         * Permits of memory budget held by item
+         */
+        int mPermits;
+
+        /**
+         * Failure of any stage, null if item succeeded so far
+         */
+        Exception mError;
+
+        /**
+         * True once item was encoded
+         */
+        boolean mSaved;
+
+        Job(I item) {
+            mItem = item;
+        }
+
+        /**
+         * Creates marker of end of stream
+         * @param <I> Type of input item
+         * @return Marker job
+         */
+        static <I> Job<I> end() {
+            return new Job<>(null);
+        }
+
+        /**
+         * Checks if job marks end of stream
+         * @return True for end marker
+         */
+        boolean isEnd() {
+            return mItem == null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.imagefilters;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stages of batch pipeline that apply one recorded filter chain to many images:
+ * each image is decoded to working size, filtered and saved to MediaStore
+ */
+public class BatchProcessor implements BatchPipeline.Stages<Uri, Bitmap, Bitmap> {
+    /**
+     * Number of image-sized buffers alive at peak for one image:
+     * decoded image and two buffers of filter pool
+     */
+    private static final int BUFFERS_PER_IMAGE = 3;
+
+    /**
+     * Resolver to read and save images with
+     */
+    private final ContentResolver mResolver;
+
+    /**
+     * Runtime that applies blur and sharpening, used only on filter thread
+     */
+    private final FilterRuntime mRuntime;
+
+    /**
+     * Steps to apply to every image
+     */
+    private final List<FilterOp> mOps;
+
+    /**
+     * Width of image steps were chosen for
+     */
+    private final int mReferenceWidth;
+
+    /**
+     * Maximum longest side of decoded image
+     */
+    private final int mMaxSize;
+
+    /**
+     * Format and quality of saved images
+     */
+    private final ImageSaver.Format mFormat;
+    private final int mQuality;
+
+    /**
+     * Creates stages
+     * @param context Context to create compute runtime in
+     * @param ops Steps to apply to every image
+     * @param referenceWidth Width of image steps were chosen for, blur is scaled
+     *                       to width of each image
+     * @param maxSize Maximum longest side of decoded image
+     * @param format Format of saved images
+     * @param quality Quality of lossy formats
+     */
+    public BatchProcessor(Context context, List<FilterOp> ops, int referenceWidth, int maxSize,
+                          ImageSaver.Format format, int quality) {
+        mResolver = context.getContentResolver();
+        mRuntime = new FilterRuntime(context);
+        mOps = new ArrayList<>(ops);
+        mReferenceWidth = referenceWidth;
+        mMaxSize = maxSize;
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    @Override
+    public long estimateBytes(Uri item) throws Exception {
+        if(BitmapLoader.isRemote(item))
+            return (long)getDownloaded(item).getByteCount() * BUFFERS_PER_IMAGE;
+        BitmapFactory.Options bounds = BitmapLoader.readBounds(mResolver, item);
+        float scale = Math.min(1f, (float)mMaxSize
+                / Math.max(bounds.outWidth, bounds.outHeight));
+        long pixels = (long)Math.ceil(bounds.outWidth * scale)
+                * (long)Math.ceil(bounds.outHeight * scale);
+        return pixels * 4 * BUFFERS_PER_IMAGE;
+    }
+
+    @Override
+    public Bitmap decode(Uri item) throws Exception {
+        if(BitmapLoader.isRemote(item)) {
+            //Downloaded image stays with FilterImage, filtering recycles its copy
+            Bitmap downloaded = getDownloaded(item);
+            return downloaded.copy(downloaded.getConfig(), false);
+        }
+        return BitmapLoader.load(mResolver, item, mMaxSize);
+    }
+
+    @Override
+    public Bitmap filter(Uri item, Bitmap decoded) {
+        float scale = (float)decoded.getWidth() / mReferenceWidth;
+        //Pool is private to image, its buffers are freed after encoding
+        Bitmap filtered = FilterChain.replay(decoded, mOps, scale, mRuntime, new BitmapPool());
+        if(filtered != decoded)
+            decoded.recycle();
+        return filtered;
+    }
+
+    @Override
+    public void encode(Uri item, Bitmap filtered) throws Exception {
+        try {
+            ImageSaver.save(mResolver, filtered, mFormat, mQuality);
+        }
+        finally {
+            filtered.recycle();
+        }
+    }
+
+    /**
+     * Gets image downloaded by MainActivity
+     * @param item URL of image
+     * @return Downloaded image
+     * @throws IOException If image is no longer held, e.g. after process was restarted
+     */
+    private static Bitmap getDownloaded(Uri item) throws IOException {
+        Bitmap downloaded = ImageHandoff.get(item);
+        if(downloaded == null)
+            throw new IOException("Downloaded image isn't held: " + item);
+        return downloaded;
+    }
+
+    /**
+     * Frees compute runtime, must be called after pipeline finished
+     */
+    public void release() {
+        mRuntime.release();
+    }
+}
@@ -0,0 +1,75 @@
+package com.imagefilters;
+
+/**
+ * Immutable snapshot of batch progress
+ */
+public class BatchProgress {
+    /**
+     * Number of images saved and failed
+     */
+    private final int mDone, mFailed;
+
+    /**
+     * Number of all images in batch
+     */
+    private final int mTotal;
+
+    /**
+     * Time since batch was started
+     */
+    private final long mElapsedNanos;
+
+    /**
+     * Creates snapshot
+     * @param done Number of images saved
+     * @param failed Number of images that failed or were dropped
+     * @param total Number of all images in batch
+     * @param elapsedNanos Time since batch was started
+     */
+    public BatchProgress(int done, int failed, int total, long elapsedNanos) {
+        mDone = done;
+        mFailed = failed;
+        mTotal = total;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets number of images saved
+     * @return Number of saved images
+     */
+    public int getDone() {
+        return mDone;
+    }
+
+    /**
+     * Gets number of images that failed or were dropped
+     * @return Number of failed images
+     */
+    public int getFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Gets number of all images in batch
+     * @return Number of images
+     */
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Gets throughput of batch so far
+     * @return Saved images per second, 0 before any time has passed
+     */
+    public float getImagesPerSecond() {
+        if(mElapsedNanos <= 0)
+            return 0;
+        return mDone * 1e9f / mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return mDone + "/" + mTotal + " saved, " + mFailed + " failed, "
+                + getImagesPerSecond() + " images/s";
+    }
+}
@@ -0,0 +1,182 @@
+package com.imagefilters;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes images streamed from content URIs, reading bounds first and
+ * downsampling large images during decode so they fit into working size
+ */
+public final class BitmapLoader {
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = "BitmapLoader";
+
+    /**
+     * Number of bytes kept to rewind stream after reading bounds, enough for
+     * headers with large embedded metadata
+     */
+    private static final int HEADER_LIMIT = 256 * 1024;
+
+    private BitmapLoader() {}
+
+    /**
+     * Decodes image so that its longest side is at most maxSize
+     * @param resolver Resolver to open URI with
+     * @param uri URI of image
+     * @param maxSize Maximum longest side in pixels
+     * @return Bitmap of decoded image
+     * @throws IOException If image can't be read or decoded
+     */
+    public static Bitmap load(ContentResolver resolver, Uri uri, int maxSize) throws IOException {
+        //Read only size of image first
+        BitmapFactory.Options options = readBounds(resolver, uri);
+        configureScaling(options, options.outWidth, options.outHeight, maxSize);
+        Log.i(TAG, "Decoding " + options.outWidth + "x" + options.outHeight
+                + " image with sample size " + options.inSampleSize);
+
+        Bitmap bitmap;
+        try(InputStream in = openStream(resolver, uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if(bitmap == null)
+            throw new IOException("Can't decode " + uri);
+
+        //Density was only used for scaling, image is shown pixel for pixel
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    /**
+     * Checks if image is fetched from network rather than read through content resolver
+     * @param uri URI of image
+     * @return True for HTTP and HTTPS URIs
+     */
+    public static boolean isRemote(Uri uri) {
+        return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+    }
+
+    /**
+     * Decodes image from stream that can be read only once, e.g. while it downloads.
+     * Only header is buffered to read bounds, pixels are decoded as bytes arrive
+     * @param in Stream of encoded image, closed by caller
+     * @param maxSize Maximum longest side in pixels
+     * @return Bitmap of decoded image
+     * @throws IOException If image can't be read or decoded
+     */
+    public static Bitmap decodeStream(InputStream in, int maxSize) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(HEADER_LIMIT);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(buffered, null, options);
+        if(options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Can't decode bounds of stream");
+        try {
+            buffered.reset();
+        }
+        catch(IOException e) {
+            throw new IOException("Image header is larger than " + HEADER_LIMIT + " bytes", e);
+        }
+
+        configureScaling(options, options.outWidth, options.outHeight, maxSize);
+        Log.i(TAG, "Decoding streamed " + options.outWidth + "x" + options.outHeight
+                + " image with sample size " + options.inSampleSize);
+        Bitmap bitmap = BitmapFactory.decodeStream(buffered, null, options);
+        if(bitmap == null)
+            throw new IOException("Can't decode stream");
+
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    /**
+     * Reads size of encoded image without decoding its pixels
+     * @param resolver Resolver to open URI with
+     * @param uri URI of image
+     * @return Options with outWidth and outHeight of image
+     * @throws IOException If image can't be read or its size decoded
+     */
+    public static BitmapFactory.Options readBounds(ContentResolver resolver, Uri uri)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try(InputStream in = openStream(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if(options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Can't decode bounds of " + uri);
+        return options;
+    }
+
+    /**
+     * Sets up decoding options to downsample image to fit into maximum size: by power of
+     * two sample size as far as possible, then by density scaling for the remainder
+     * @param options Options to set up
+     * @param width Width of encoded image
+     * @param height Height of encoded image
+     * @param maxSize Maximum longest side in pixels
+     */
+    static void configureScaling(BitmapFactory.Options options, int width, int height,
+                                 int maxSize) {
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = calculateInSampleSize(width, height, maxSize);
+
+        int sampledSize = sampledSize(Math.max(width, height), options.inSampleSize);
+        if(sampledSize > maxSize) {
+            options.inScaled = true;
+            options.inDensity = sampledSize;
+            options.inTargetDensity = maxSize;
+        }
+        else {
+            options.inScaled = false;
+        }
+    }
+
+    /**
+     * Finds largest power of two sample size that keeps image not smaller than maximum size
+     * @param width Width of encoded image
+     * @param height Height of encoded image
+     * @param maxSize Maximum longest side in pixels
+     * @return Sample size for BitmapFactory
+     */
+    static int calculateInSampleSize(int width, int height, int maxSize) {
+        int longest = Math.max(width, height), sampleSize = 1;
+        while(sampledSize(longest, sampleSize * 2) >= maxSize)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Gets size of side after decoding with sample size
+     * @param size Size of side in encoded image
+     * @param sampleSize Sample size
+     * @return Size of side in decoded image
+     */
+    private static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Opens stream of URI
+     * @param resolver Resolver to open URI with
+     * @param uri URI of image
+     * @return Stream of encoded image
+     * @throws IOException If URI can't be opened
+     */
+    static InputStream openStream(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if(in == null)
+            throw new IOException("Can't open " + uri);
+        return in;
+    }
+}
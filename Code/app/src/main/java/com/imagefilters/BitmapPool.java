@@ -0,0 +1,56 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+
+/**
+ * Two reusable same-size bitmaps that filter steps alternate between,
+ * so that chain of any length needs memory of only two images
+ */
+public class BitmapPool {
+    /**
+     * Reusable bitmaps, null until first needed
+     */
+    private final Bitmap[] mBuffers = new Bitmap[2];
+
+    /**
+     * Gets mutable bitmap of given size that isn't the one currently read from.
+     * Contents of returned bitmap are undefined
+     * @param width Width of image
+     * @param height Height of image
+     * @param inUse Bitmap that step reads from, never returned
+     * @return Pooled bitmap
+     */
+    public Bitmap obtain(int width, int height, Bitmap inUse) {
+        for(Bitmap buffer : mBuffers) {
+            if(buffer != null && buffer != inUse && buffer.getWidth() == width
+                    && buffer.getHeight() == height)
+                return buffer;
+        }
+
+        //Replace buffer of other size, keeping the one that is read from
+        int slot = mBuffers[0] == inUse ? 1 : 0;
+        mBuffers[slot] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        return mBuffers[slot];
+    }
+
+    /**
+     * Checks if bitmap belongs to pool and can be overwritten by next steps
+     * @param bitmap Bitmap to check
+     * @return True if bitmap was obtained from this pool
+     */
+    public boolean owns(Bitmap bitmap) {
+        return bitmap != null && (bitmap == mBuffers[0] || bitmap == mBuffers[1]);
+    }
+
+    /**
+     * Drops pooled bitmaps, bitmaps obtained before must not be used afterwards
+     */
+    public void clear() {
+        for(int i = 0; i < mBuffers.length; i++) {
+            if(mBuffers[i] != null) {
+                mBuffers[i].recycle();
+                mBuffers[i] = null;
+            }
+        }
+    }
+}
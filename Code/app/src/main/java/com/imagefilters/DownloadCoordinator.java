@@ -0,0 +1,232 @@
+package com.imagefilters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many downloads at once, each tracked by its own id. At most given number of
+ * downloads run in parallel, the rest wait in order of enqueueing. Result of each
+ * download is delivered to consumer it was enqueued with, on delivery executor,
+ * unless download was cancelled meanwhile. Thread-safe
+ * @param <T> Type of download results
+ */
+public class DownloadCoordinator<T> {
+    /**
+     * Threads that run downloads
+     */
+    private final ExecutorService mWorkers;
+
+    /**
+     * Executor results are delivered on, e.g. main thread
+     */
+    private final Executor mDelivery;
+
+    /**
+     * Downloads enqueued and not yet delivered or cancelled, by id
+     */
+    private final Map<Long, Request<T>> mRequests = new LinkedHashMap<>();
+
+    /**
+     * Id of next download
+     */
+    private long mNextId = 1;
+
+    /**
+     * Creates coordinator
+     * @param maxConcurrent Maximum number of downloads running at once
+     * @param delivery Executor results are delivered on
+     */
+    public DownloadCoordinator(int maxConcurrent, Executor delivery) {
+        AtomicInteger threads = new AtomicInteger();
+        mWorkers = Executors.newFixedThreadPool(maxConcurrent, runnable ->
+                new Thread(runnable, "Download-" + threads.incrementAndGet()));
+        mDelivery = delivery;
+    }
+
+    /**
+     * Enqueues download
+     * @param task Download to run
+     * @param consumer Receiver of its result
+     * @return Id of download
+     */
+    public synchronized long enqueue(Task<T> task, Consumer<T> consumer) {
+        Request<T> request = new Request<>(mNextId++, task, consumer);
+        mRequests.put(request.mId, request);
+        request.setFuture(mWorkers.submit(() -> run(request)));
+        return request.mId;
+    }
+
+    /**
+     * Cancels download, its consumer isn't called afterwards
+     * @param id Id of download
+     * @return True if download was running or waiting
+     */
+    public boolean cancel(long id) {
+        Request<T> request;
+        synchronized(this) {
+            request = mRequests.remove(id);
+        }
+        if(request == null)
+            return false;
+        request.cancel();
+        return true;
+    }
+
+    /**
+     * @return Number of downloads enqueued and not yet delivered or cancelled
+     */
+    public synchronized int getInFlightCount() {
+        return mRequests.size();
+    }
+
+    /**
+     * Cancels all downloads and stops worker threads. Coordinator can't be used afterwards
+     */
+    public void shutdown() {
+        Request<?>[] requests;
+        synchronized(this) {
+            requests = mRequests.values().toArray(new Request<?>[0]);
+            mRequests.clear();
+            mWorkers.shutdownNow();
+        }
+        for(Request<?> request : requests)
+            request.cancel();
+    }
+
+    /**
+     * Runs download on worker thread and delivers its result
+     * @param request Download to run
+     */
+    private void run(Request<T> request) {
+        synchronized(this) {
+            if(request.isCancelled() || !mRequests.containsKey(request.mId))
+                return;
+        }
+
+        T result = null;
+        Exception error = null;
+        try {
+            result = request.mTask.run();
+        }
+        catch(Exception e) {
+            error = e;
+        }
+
+        T delivered = result;
+        Exception failure = error;
+        mDelivery.execute(() -> {
+            //Download is finished only when its result is delivered
+            synchronized(this) {
+                if(mRequests.remove(request.mId) == null || request.isCancelled())
+                    return;
+            }
+            if(failure == null)
+                request.mConsumer.onDownloaded(request.mId, delivered);
+            else
+                request.mConsumer.onFailed(request.mId, failure);
+        });
+    }
+
+    /**
+     * One download
+     */
+    public interface Task<T> {
+        /**
+         * Downloads, called on worker thread
+         * @return Result of download
+         * @throws Exception If download fails
+         */
+        T run() throws Exception;
+
+        /**
+         * Aborts running download, called on any thread
+         */
+        void cancel();
+    }
+
+    /**
+     * Receiver of download result, called on delivery executor
+     */
+    public interface Consumer<T> {
+        /**
+         * Called when download succeeded
+         * @param id Id of download
+         * @param result Result of download
+         */
+        void onDownloaded(long id, T result);
+
+        /**
+         * Called when download failed
+         * @param id Id of download
+         * @param error Cause of failure
+         */
+        void onFailed(long id, Exception error);
+    }
+
+    /**
+     * Enqueued download with its consumer
+     */
+    private static class Request<T> {
+        final long mId;
+        final Task<T> mTask;
+        final Consumer<T> mConsumer;
+
+        /**
+         * Pending run on worker, null until submitted. Guarded by this request together
+         * with mCancelled, so that cancel either sees it or keeps it from being set
+         */
+        private volatile Future<?> mFuture;
+
+        /**
+         * True once download is cancelled
+         */
+        private volatile boolean mCancelled;
+
+        Request(long id, Task<T> task, Consumer<T> consumer) {
+            mId = id;
+            mTask = task;
+            mConsumer = consumer;
+        }
+
+        /**
+         * Keeps pending run of download, or cancels it right away if download
+         * was cancelled before it was submitted
+         * @param future Pending run on worker
+         */
+        void setFuture(Future<?> future) {
+            synchronized(this) {
+                if(!mCancelled) {
+                    mFuture = future;
+                    return;
+                }
+            }
+            future.cancel(true);
+        }
+
+        /**
+         * @return True once download is cancelled
+         */
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Aborts download and removes it from queue if it didn't start
+         */
+        void cancel() {
+            Future<?> future;
+            synchronized(this) {
+                mCancelled = true;
+                future = mFuture;
+            }
+            mTask.cancel();
+            if(future != null)
+                future.cancel(true);
+        }
+    }
+}
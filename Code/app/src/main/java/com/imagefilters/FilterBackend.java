@@ -0,0 +1,45 @@
+package com.imagefilters;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Implementation of filters that need compute context (blur and sharpening).
+ * Backend keeps its resources between calls until {@link #release()} is called,
+ * it is not thread-safe. Source is copied into backend buffers before filtering,
+ * so source and destination may be the same bitmap
+ */
+public interface FilterBackend {
+    /**
+     * Applies Gaussian blur
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size as src to write result to, may be src
+     * @param blurRadius Radius of blur (must be [0, 25])
+     */
+    void blur(Bitmap src, Bitmap dst, float blurRadius);
+
+    /**
+     * Applies sharpening
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size as src to write result to, may be src
+     * @param sharpRadius Radius of sharpening
+     */
+    void sharpen(Bitmap src, Bitmap dst, float sharpRadius);
+
+    /**
+     * Frees all resources held by backend
+     */
+    void release();
+
+    /**
+     * Creates backend for given context
+     */
+    interface Factory {
+        /**
+         * Creates backend
+         * @param context Context backend will be used in
+         * @return New backend
+         */
+        FilterBackend create(Context context);
+    }
+}
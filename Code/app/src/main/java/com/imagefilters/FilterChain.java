@@ -0,0 +1,284 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazy chain of filters applied to image. Consecutive point filters (color matrices and
+ * lookup tables) are combined into one pass and image is drawn once, only when result
+ * is requested
+ */
+public class FilterChain {
+    /**
+     * Number of pixels read at once when point filters are applied in Java
+     */
+    private static final int IN_PLACE_BAND_PIXELS = 1 << 14;
+
+    /**
+     * Bitmap with all filters applied except pending point filters
+     */
+    private Bitmap mBase;
+
+    /**
+     * Pass combined from all point filters added after base was drawn
+     */
+    private PointChain mPending = new PointChain();
+
+    /**
+     * Bitmap with pending point filters drawn over base, null if not drawn yet
+     */
+    private Bitmap mRendered;
+
+    /**
+     * Steps applied since chain was created or reset
+     */
+    private final List<FilterOp> mOps = new ArrayList<>();
+
+    /**
+     * Pool to draw results into, null if every result gets new bitmap
+     */
+    private final BitmapPool mPool;
+
+    /**
+     * Creates chain without filters
+     * @param source Bitmap of image to be filtered
+     */
+    public FilterChain(Bitmap source) {
+        this(source, null);
+    }
+
+    /**
+     * Creates chain without filters that draws all results into pool, so that memory
+     * stays the same for any number of steps. Results are valid until next step
+     * @param source Bitmap of image to be filtered, never modified
+     * @param pool Pool to draw results into
+     */
+    public FilterChain(Bitmap source, BitmapPool pool) {
+        mBase = source;
+        mPool = pool;
+    }
+
+    /**
+     * Adds color matrix filter to chain, drawing image only if matrix can't be combined
+     * with pending point filters
+     * @param matrix 4x5 color matrix of filter
+     */
+    public void addMatrix(float[] matrix) {
+        if(!mPending.addMatrix(matrix)) {
+            flush();
+            mPending.addMatrix(matrix);
+        }
+        mRendered = null;
+    }
+
+    /**
+     * Adds color matrix or lookup table filter to chain, drawing image only if it can't
+     * be combined with pending point filters
+     * @param op Point filter step
+     */
+    private void addPointFilter(FilterOp op) {
+        if(!mPending.add(op)) {
+            flush();
+            mPending.add(op);
+        }
+        mRendered = null;
+    }
+
+    /**
+     * Adds filter step to chain, drawing image only if step isn't point filter
+     * @param op Filter step
+     * @param runtime Runtime that applies blur and sharpening
+     */
+    public void apply(FilterOp op, FilterRuntime runtime) {
+        mOps.add(op);
+        switch(op.getType()) {
+            case BLUR: {
+                Bitmap src = flush();
+                setBase(runtime.blur(src, obtainResult(src), op.getParam()));
+                break;
+            }
+            case SHARPEN: {
+                Bitmap src = flush();
+                setBase(runtime.sharpen(src, obtainResult(src), op.getParam()));
+                break;
+            }
+            case UNSHARP: {
+                Bitmap src = flush();
+                setBase(runtime.unsharpMask(src, obtainResult(src), op.getParam(0),
+                        op.getParam(1), op.getParam(2)));
+                break;
+            }
+            default:
+                addPointFilter(op);
+                break;
+        }
+    }
+
+    /**
+     * Replaces image with result of filter that isn't point filter
+     * @param filtered Bitmap returned by filter applied to {@link #flush()} result
+     */
+    public void setBase(Bitmap filtered) {
+        mBase = filtered;
+        mPending = new PointChain();
+        mRendered = null;
+    }
+
+    /**
+     * Draws pending point filters into image, so that other filter can be applied to it
+     * @return Bitmap with all filters applied
+     */
+    public Bitmap flush() {
+        Bitmap result = render();
+        mBase = result;
+        mPending = new PointChain();
+        mRendered = null;
+        return result;
+    }
+
+    /**
+     * Gets filtered image for display or saving, drawing it only if chain changed
+     * @return Bitmap with all filters applied
+     */
+    public Bitmap render() {
+        if(mPending.isIdentity())
+            return mBase;
+
+        if(mRendered == null) {
+            //Pooled base isn't shared with anyone, so pass is applied in place
+            if(mPool != null && mPool.owns(mBase)) {
+                drawPointChain(mBase, mBase, mPending);
+                mPending = new PointChain();
+                return mBase;
+            }
+
+            //Matrices of point filters keep colors in range and filters that can push
+            //them out, e.g. color balance, are tables that clamp, so drawing combined
+            //pass once gives same result as drawing each of them
+            mRendered = obtainResult(mBase);
+            drawPointChain(mBase, mRendered, mPending);
+        }
+        return mRendered;
+    }
+
+    /**
+     * Removes all filters from chain
+     * @param source Bitmap of image to be filtered
+     */
+    public void reset(Bitmap source) {
+        setBase(source);
+        mOps.clear();
+    }
+
+    /**
+     * Starts chain from already filtered image
+     * @param filtered Bitmap of image with given steps applied
+     * @param ops Steps that were applied to get filtered image
+     */
+    public void restore(Bitmap filtered, List<FilterOp> ops) {
+        reset(filtered);
+        mOps.addAll(ops);
+    }
+
+    /**
+     * Gets recorded steps, e.g. to replay them on image of other resolution
+     * @return Copy of steps applied since chain was created or reset
+     */
+    public List<FilterOp> getOps() {
+        return new ArrayList<>(mOps);
+    }
+
+    /**
+     * Applies recorded steps to other image, drawing into pool
+     * @param source Bitmap of image to be filtered
+     * @param ops Steps to apply
+     * @param scale Ratio of source size to size steps were chosen for
+     * @param runtime Runtime that applies blur and sharpening
+     * @param pool Pool to draw results into
+     * @return Bitmap with all steps applied, valid until pool is used again
+     */
+    public static Bitmap replay(Bitmap source, List<FilterOp> ops, float scale,
+                                FilterRuntime runtime, BitmapPool pool) {
+        FilterChain chain = new FilterChain(source, pool);
+        for(FilterOp op : ops)
+            chain.apply(op.scaled(scale), runtime);
+        return chain.render();
+    }
+
+    /**
+     * Draws image with combined point filters. Pass of only color matrix is drawn by
+     * {@link #drawColorMatrix}, pass with lookup table runs in Java over bands of rows
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to draw into, may be the same as src
+     * @param chain Combined point filters
+     */
+    public static void drawPointChain(Bitmap src, Bitmap dst, PointChain chain) {
+        if(!chain.hasLut()) {
+            drawColorMatrix(src, dst, chain.getMatrix());
+            return;
+        }
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.lut");
+        drawBands(src, dst, chain);
+        timer.stop(dst.getWidth(), dst.getHeight());
+    }
+
+    /**
+     * Applies point filters to bands of rows read from source and written to destination
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write into, may be the same as src
+     * @param chain Combined point filters
+     */
+    private static void drawBands(Bitmap src, Bitmap dst, PointChain chain) {
+        int width = src.getWidth(), height = src.getHeight();
+        int bandRows = Math.max(1, IN_PLACE_BAND_PIXELS / width);
+        int[] band = new int[bandRows * width];
+        for(int y = 0; y < height; y += bandRows) {
+            int rows = Math.min(bandRows, height - y);
+            src.getPixels(band, 0, width, 0, y, width, rows);
+            chain.applyRange(band, band, 0, rows * width);
+            dst.setPixels(band, 0, width, 0, y, width, rows);
+        }
+    }
+
+    /**
+     * Draws image with given color matrix
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to draw into, may be the same as src
+     * @param matrix 4x5 color matrix from {@link ColorMatrices}
+     */
+    public static void drawColorMatrix(Bitmap src, Bitmap dst, float[] matrix) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.colorMatrix");
+        if(src == dst) {
+            //Canvas can't read bitmap it draws to, so pixels are filtered in bands
+            PointChain chain = new PointChain();
+            chain.addMatrix(matrix);
+            drawBands(src, dst, chain);
+        }
+        else {
+            Paint paint = new Paint();
+            paint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(matrix)));
+            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+            new Canvas(dst).drawBitmap(src, 0, 0, paint);
+        }
+        timer.stop(dst.getWidth(), dst.getHeight());
+    }
+
+    /**
+     * Gets bitmap to draw result of step into
+     * @param src Bitmap step reads from
+     * @return Pooled bitmap other than src, or new bitmap if chain has no pool
+     */
+    private Bitmap obtainResult(Bitmap src) {
+        if(mPool != null)
+            return mPool.obtain(src.getWidth(), src.getHeight(), src);
+        return Bitmap.createBitmap(src.getWidth(), src.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+}
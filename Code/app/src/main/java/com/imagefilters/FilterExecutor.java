@@ -0,0 +1,429 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies filters on single background thread. Steps, undos and redos submitted
+ * while worker is busy are applied together, preview is drawn only for the latest
+ * state and delivered to listener on main thread. Edits of last step, e.g. from
+ * slider being dragged, are applied at most once per display frame and each one
+ * replaces edit still waiting, so that only the newest value is rendered
+ */
+public class FilterExecutor {
+    /**
+     * Receives filtered images on main thread
+     */
+    public interface Listener {
+        /**
+         * Called when image with all submitted filters applied is ready
+         * @param filtered Bitmap of filtered image
+         */
+        void onFiltered(Bitmap filtered);
+    }
+
+    /**
+     * Creates filter step from image it is applied to, e.g. automatic adjustment
+     */
+    public interface StepFactory {
+        /**
+         * Called on worker once all steps submitted before are applied
+         * @param image Bitmap of image with those steps applied, must not be modified
+         * @return Filter step to apply
+         */
+        FilterOp create(Bitmap image);
+    }
+
+    /**
+     * Image with steps already applied, kept e.g. across recreation of activity
+     */
+    public interface SavedImage {
+        /**
+         * Called on worker before any step submitted after resume is applied
+         * @return Bitmap of image with all resumed steps applied, or null if it isn't
+         * available, so that steps are applied again
+         */
+        Bitmap load();
+    }
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = "FilterExecutor";
+
+    /**
+     * Interval between edits in milliseconds until display refresh rate is set
+     */
+    private static final long DEFAULT_FRAME_INTERVAL = 16;
+
+    /**
+     * Thread that applies filters
+     */
+    private final ExecutorService mWorker = Executors.newSingleThreadExecutor();
+
+    /**
+     * Handler to deliver results on main thread
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Changes of history submitted but not yet taken by worker, guarded by itself
+     */
+    private final List<Runnable> mPending = new ArrayList<>();
+
+    /**
+     * Number of state changes, guarded by mPending. Result is delivered only
+     * if no change was submitted after it
+     */
+    private int mGeneration;
+
+    /**
+     * Generation of last drawn preview, accessed only from worker
+     */
+    private int mDrawnGeneration = -1;
+
+    /**
+     * Number of tasks which didn't finish on main thread yet
+     */
+    private final AtomicInteger mInFlight = new AtomicInteger();
+
+    /**
+     * Chain of filters, accessed only from worker
+     */
+    private final FilterChain mChain;
+
+    /**
+     * Runtime that applies blur and sharpening, used only from worker
+     */
+    private final FilterRuntime mRuntime;
+
+    /**
+     * Undo/redo history of chain, accessed only from worker
+     */
+    private final FilterHistory mHistory;
+
+    /**
+     * Receiver of filtered images
+     */
+    private final Listener mListener;
+
+    /**
+     * True when executor was shut down, accessed only from main thread
+     */
+    private boolean mShutdown;
+
+    /**
+     * Last delivered image and steps applied to get it, accessed only from main thread
+     */
+    private Bitmap mShown;
+    private List<FilterOp> mShownOps;
+
+    /**
+     * Shortest time between two applied edits in milliseconds, accessed only from
+     * main thread
+     */
+    private long mFrameInterval = DEFAULT_FRAME_INTERVAL;
+
+    /**
+     * Uptime in milliseconds before which next edit isn't applied, accessed only from
+     * main thread
+     */
+    private long mNextEditTime;
+
+    /**
+     * True while edit is waiting for its frame, accessed only from main thread
+     */
+    private boolean mEditScheduled;
+
+    /**
+     * True while task applying edits is queued on worker and hasn't started yet
+     */
+    private final AtomicBoolean mEditQueued = new AtomicBoolean();
+
+    /**
+     * Creates executor, it takes ownership of chain, runtime and history
+     * @param chain Chain of filters to apply steps to
+     * @param runtime Runtime that applies blur and sharpening
+     * @param history Undo/redo history of chain
+     * @param listener Receiver of filtered images
+     */
+    public FilterExecutor(FilterChain chain, FilterRuntime runtime, FilterHistory history,
+                          Listener listener) {
+        mChain = chain;
+        mRuntime = runtime;
+        mHistory = history;
+        mListener = listener;
+        mShown = chain.render();
+        mShownOps = chain.getOps();
+    }
+
+    /**
+     * Queues filter step, must be called from main thread
+     * @param op Filter step
+     */
+    public void submit(FilterOp op) {
+        post(() -> {
+            Log.i(TAG, "Applying " + op);
+            mHistory.push(op, mChain, mRuntime);
+        });
+    }
+
+    /**
+     * Queues filter step chosen from image at the time step is applied, must be called
+     * from main thread
+     * @param factory Factory of filter step
+     */
+    public void submit(StepFactory factory) {
+        post(() -> {
+            FilterOp op = factory.create(mChain.render());
+            Log.i(TAG, "Applying " + op);
+            mHistory.push(op, mChain, mRuntime);
+        });
+    }
+
+    /**
+     * Queues steps applied by previous instance, must be called from main thread before
+     * any other step is submitted. Their image is taken over if saved one is available,
+     * otherwise steps are applied again. Steps submitted meanwhile wait for it, but main
+     * thread doesn't
+     * @param ops Applied steps
+     * @param saved Image with those steps applied
+     */
+    public void resume(List<FilterOp> ops, SavedImage saved) {
+        post(() -> {
+            Bitmap filtered = saved.load();
+            if(filtered != null) {
+                Log.i(TAG, "Resuming " + ops.size() + " steps from saved image");
+                mHistory.resume(ops, filtered, mChain);
+                return;
+            }
+            Log.i(TAG, "Saved image isn't available, applying " + ops.size() + " steps again");
+            for(FilterOp op : ops)
+                mHistory.push(op, mChain, mRuntime);
+        });
+    }
+
+    /**
+     * Queues replacement of last applied step, e.g. with same filter with other
+     * parameters, must be called from main thread. Edit replaces previous edit that
+     * wasn't applied yet and is applied no sooner than one frame after previous one
+     * @param op New filter step
+     */
+    public void editLast(FilterOp op) {
+        synchronized(mPending) {
+            int last = mPending.size() - 1;
+            EditChange change = new EditChange(op);
+            if(last >= 0 && mPending.get(last) instanceof EditChange)
+                mPending.set(last, change);
+            else
+                mPending.add(change);
+            mGeneration++;
+        }
+        if(mEditScheduled)
+            return;
+
+        //Edits are spread over frames, ones made before the frame only update change
+        mEditScheduled = true;
+        mInFlight.incrementAndGet();
+        mMainHandler.postAtTime(() -> {
+            mEditScheduled = false;
+            mNextEditTime = SystemClock.uptimeMillis() + mFrameInterval;
+            //Worker that is still busy takes all edits made meanwhile in one task
+            if(!mShutdown && mEditQueued.compareAndSet(false, true))
+                enqueue(() -> {
+                    mEditQueued.set(false);
+                    applyPending();
+                });
+            mInFlight.decrementAndGet();
+        }, Math.max(SystemClock.uptimeMillis(), mNextEditTime));
+    }
+
+    /**
+     * Sets how often edits are applied
+     * @param refreshRate Refresh rate of display in frames per second
+     */
+    public void setFrameRate(float refreshRate) {
+        if(refreshRate > 0)
+            mFrameInterval = Math.max(1, Math.round(1000 / refreshRate));
+    }
+
+    /**
+     * Queues undo of last step, must be called from main thread
+     */
+    public void undo() {
+        post(() -> mHistory.undo(mChain, mRuntime));
+    }
+
+    /**
+     * Queues redo of last undone step, must be called from main thread
+     */
+    public void redo() {
+        post(() -> mHistory.redo(mChain, mRuntime));
+    }
+
+    /**
+     * Drops queued steps and resets chain to source, must be called from main thread
+     * @param source Bitmap of image to be filtered
+     */
+    public void clear(Bitmap source) {
+        synchronized(mPending) {
+            mPending.clear();
+            mGeneration++;
+        }
+        enqueue(() -> {
+            mHistory.reset(source);
+            mChain.reset(source);
+            applyPending();
+        });
+    }
+
+    /**
+     * Runs task on worker after all queued steps are applied
+     * @param task Task that gets chain with all steps applied
+     */
+    public void execute(ChainTask task) {
+        enqueue(() -> task.run(mChain));
+    }
+
+    /**
+     * Gets image currently shown, e.g. to keep it across recreation of activity, must
+     * be called from main thread
+     * @return Last delivered image, or initial image of chain if none was delivered yet
+     */
+    public Bitmap getShown() {
+        return mShown;
+    }
+
+    /**
+     * Gets steps applied to image currently shown, must be called from main thread
+     * @return Steps of last delivered image
+     */
+    public List<FilterOp> getShownOps() {
+        return mShownOps;
+    }
+
+    /**
+     * Checks if all submitted work has finished and results were delivered
+     * @return True if executor is idle
+     */
+    public boolean isIdle() {
+        return mInFlight.get() == 0;
+    }
+
+    /**
+     * Stops worker after queued work and releases runtime and
+     * history, must be called from main thread
+     */
+    public void shutdown() {
+        mShutdown = true;
+        mWorker.execute(() -> {
+            mRuntime.release();
+            mHistory.release();
+        });
+        mWorker.shutdown();
+    }
+
+    /**
+     * Replacement of last applied step
+     */
+    private class EditChange implements Runnable {
+        /**
+         * New filter step
+         */
+        private final FilterOp mOp;
+
+        EditChange(FilterOp op) {
+            mOp = op;
+        }
+
+        @Override
+        public void run() {
+            Log.i(TAG, "Editing last step to " + mOp);
+            mHistory.edit(mHistory.getPosition() - 1, mOp, mChain, mRuntime);
+        }
+    }
+
+    /**
+     * Task run on worker with chain of filters
+     */
+    public interface ChainTask {
+        /**
+         * Runs task
+         * @param chain Chain with all submitted steps applied
+         */
+        void run(FilterChain chain);
+    }
+
+    /**
+     * Queues change of history to be applied with other pending changes
+     * @param change Change run on worker
+     */
+    private void post(Runnable change) {
+        synchronized(mPending) {
+            mPending.add(change);
+            mGeneration++;
+        }
+        enqueue(this::applyPending);
+    }
+
+    /**
+     * Runs task on worker, counting it as in flight until main thread is notified
+     * @param task Task to run
+     */
+    private void enqueue(Runnable task) {
+        mInFlight.incrementAndGet();
+        mWorker.execute(() -> {
+            try {
+                task.run();
+            }
+            finally {
+                mMainHandler.post(mInFlight::decrementAndGet);
+            }
+        });
+    }
+
+    /**
+     * Applies all pending changes and delivers preview if nothing newer was submitted
+     */
+    private void applyPending() {
+        List<Runnable> changes;
+        int generation;
+        synchronized(mPending) {
+            changes = new ArrayList<>(mPending);
+            mPending.clear();
+            generation = mGeneration;
+        }
+
+        for(Runnable change : changes)
+            change.run();
+
+        //Skip drawing preview if it is already drawn or newer steps are waiting,
+        //their task will draw it
+        synchronized(mPending) {
+            if(generation == mDrawnGeneration || generation != mGeneration)
+                return;
+        }
+        mDrawnGeneration = generation;
+        Bitmap preview = mChain.render();
+        List<FilterOp> ops = mChain.getOps();
+        mMainHandler.post(() -> {
+            synchronized(mPending) {
+                if(mShutdown || generation != mGeneration)
+                    return;
+            }
+            mShown = preview;
+            mShownOps = ops;
+            mListener.onFiltered(preview);
+        });
+    }
+}
@@ -0,0 +1,323 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Undo/redo history of filter steps. Images after expensive steps are kept as
+ * checkpoints in memory-bounded LRU cache, so that undo replays only the steps
+ * after nearest cached checkpoint instead of the whole chain. Editing step keeps
+ * image before it as checkpoint too, so that repeated edits rerun only the edited
+ * step and steps after it. Checkpoints evicted from memory can spill to memory-mapped
+ * files, so that long histories keep them without taking heap. Not thread-safe
+ */
+public class FilterHistory {
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = "FilterHistory";
+
+    /**
+     * All steps including undone ones that can be redone
+     */
+    private final List<FilterOp> mOps = new ArrayList<>();
+
+    /**
+     * Number of steps currently applied
+     */
+    private int mPosition;
+
+    /**
+     * Bitmap of image without filters
+     */
+    private Bitmap mSource;
+
+    /**
+     * Images with first N steps applied, keyed by N
+     */
+    private final LruCache<Integer, Bitmap> mCheckpoints;
+
+    /**
+     * Directory for checkpoints evicted from memory, null if they are dropped
+     */
+    private final File mSpillDir;
+
+    /**
+     * Maximum size of all spilled checkpoints in bytes
+     */
+    private final long mSpillBudget;
+
+    /**
+     * Checkpoints evicted from memory, keyed like mCheckpoints
+     */
+    private final Map<Integer, PixelBuffer> mSpilled = new HashMap<>();
+
+    /**
+     * Size of all spilled checkpoints in bytes
+     */
+    private long mSpilledBytes;
+
+    /**
+     * Creates empty history that drops checkpoints evicted from memory
+     * @param source Bitmap of image without filters
+     * @param budgetBytes Maximum size of all checkpoints in bytes
+     */
+    public FilterHistory(Bitmap source, int budgetBytes) {
+        this(source, budgetBytes, null, 0);
+    }
+
+    /**
+     * Creates empty history
+     * @param source Bitmap of image without filters
+     * @param budgetBytes Maximum size of all checkpoints in memory in bytes
+     * @param spillDir Directory for checkpoints evicted from memory, null to drop them
+     * @param spillBytes Maximum size of all spilled checkpoints in bytes
+     */
+    public FilterHistory(Bitmap source, int budgetBytes, File spillDir, long spillBytes) {
+        mSource = source;
+        mSpillDir = spillDir;
+        mSpillBudget = spillBytes;
+        mCheckpoints = new LruCache<Integer, Bitmap>(budgetBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if(evicted)
+                    spill(key, oldValue);
+            }
+        };
+    }
+
+    /**
+     * Applies new step, dropping steps that could be redone
+     * @param op Filter step
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     */
+    public void push(FilterOp op, FilterChain chain, FilterRuntime runtime) {
+        while(mOps.size() > mPosition)
+            mOps.remove(mOps.size() - 1);
+        removeCheckpointsAfter(mPosition);
+        mOps.add(op);
+        applyNext(chain, runtime);
+    }
+
+    /**
+     * Reverts last applied step
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     * @return False if there was nothing to undo
+     */
+    public boolean undo(FilterChain chain, FilterRuntime runtime) {
+        if(mPosition == 0)
+            return false;
+        mPosition--;
+        restore(mPosition, chain, runtime);
+        return true;
+    }
+
+    /**
+     * Replaces applied step with other one, e.g. same filter with other parameters.
+     * Image before step is taken from checkpoint, so only edited step and steps after
+     * it are applied again
+     * @param index Position of step, less than number of applied steps
+     * @param op New filter step
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     * @return False if there is no applied step at index
+     */
+    public boolean edit(int index, FilterOp op, FilterChain chain, FilterRuntime runtime) {
+        if(index < 0 || index >= mPosition)
+            return false;
+
+        //Image before edited step stays valid for all following edits of it
+        Bitmap prefix = index == 0 ? mSource : getCheckpoint(index);
+        if(prefix == null) {
+            restore(index, chain, runtime);
+            prefix = chain.render();
+            mCheckpoints.put(index, prefix);
+        }
+
+        mOps.set(index, op);
+        removeCheckpointsAfter(index);
+        chain.restore(prefix, mOps.subList(0, index));
+        int position = mPosition;
+        mPosition = index;
+        while(mPosition < position)
+            applyNext(chain, runtime);
+        return true;
+    }
+
+    /**
+     * @return Number of steps currently applied
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Applies again last undone step
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     * @return False if there was nothing to redo
+     */
+    public boolean redo(FilterChain chain, FilterRuntime runtime) {
+        if(mPosition == mOps.size())
+            return false;
+        applyNext(chain, runtime);
+        return true;
+    }
+
+    /**
+     * Drops all steps and checkpoints
+     * @param source Bitmap of image without filters
+     */
+    public void reset(Bitmap source) {
+        mSource = source;
+        mOps.clear();
+        mPosition = 0;
+        removeCheckpointsAfter(0);
+    }
+
+    /**
+     * Drops all checkpoints and deletes their spilled files
+     */
+    public void release() {
+        removeCheckpointsAfter(0);
+    }
+
+    /**
+     * Starts history from steps already applied elsewhere, e.g. kept across recreation
+     * of activity. Filtered image becomes checkpoint, so nothing is applied again
+     * @param ops Applied steps
+     * @param filtered Bitmap of image with all steps applied
+     * @param chain Chain that shows current state of history
+     */
+    public void resume(List<FilterOp> ops, Bitmap filtered, FilterChain chain) {
+        mOps.clear();
+        mOps.addAll(ops);
+        mPosition = ops.size();
+        removeCheckpointsAfter(0);
+        if(mPosition > 0)
+            mCheckpoints.put(mPosition, filtered);
+        chain.restore(filtered, ops);
+    }
+
+    /**
+     * Shows image with given number of steps applied, replaying steps after nearest
+     * checkpoint
+     * @param position Number of steps to apply
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     */
+    private void restore(int position, FilterChain chain, FilterRuntime runtime) {
+        //Find nearest checkpoint not after position, source is the last resort
+        int start = position;
+        Bitmap checkpoint = null;
+        while(start > 0 && (checkpoint = getCheckpoint(start)) == null)
+            start--;
+        if(checkpoint == null)
+            checkpoint = mSource;
+        Log.i(TAG, "Restoring from checkpoint " + start + " to step " + position);
+
+        chain.restore(checkpoint, mOps.subList(0, start));
+        for(int i = start; i < position; i++)
+            chain.apply(mOps.get(i), runtime);
+    }
+
+    /**
+     * Applies step at current position and stores checkpoint after expensive step
+     * @param chain Chain that shows current state of history
+     * @param runtime Runtime that applies blur and sharpening
+     */
+    private void applyNext(FilterChain chain, FilterRuntime runtime) {
+        FilterOp op = mOps.get(mPosition);
+        chain.apply(op, runtime);
+        mPosition++;
+
+        //Point filters are cheap to replay, so only images after other steps are kept
+        if(!op.isPointFilter())
+            mCheckpoints.put(mPosition, chain.render());
+    }
+
+    /**
+     * Gets checkpoint from memory, or from spill file which then moves back to memory
+     * @param step Number of steps applied to checkpoint
+     * @return Bitmap of checkpoint, or null if there is none
+     */
+    private Bitmap getCheckpoint(int step) {
+        Bitmap checkpoint = mCheckpoints.get(step);
+        if(checkpoint != null)
+            return checkpoint;
+        PixelBuffer spilled = mSpilled.remove(step);
+        if(spilled == null)
+            return null;
+
+        checkpoint = spilled.toBitmap();
+        mSpilledBytes -= spilled.getByteCount();
+        spilled.release();
+        mCheckpoints.put(step, checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Writes checkpoint evicted from memory to mapped file, if spilling is enabled and
+     * its budget allows it
+     * @param step Number of steps applied to checkpoint
+     * @param checkpoint Bitmap of checkpoint
+     */
+    private void spill(int step, Bitmap checkpoint) {
+        if(mSpillDir == null || mSpilledBytes + checkpoint.getByteCount() > mSpillBudget)
+            return;
+        try {
+            mSpillDir.mkdirs();
+            PixelBuffer buffer = PixelBuffer.map(
+                    File.createTempFile("checkpoint", ".raw", mSpillDir), checkpoint);
+            buffer.copyFrom(checkpoint);
+            mSpilledBytes += buffer.getByteCount();
+            //Step redone after its checkpoint was spilled has older copy on disk
+            PixelBuffer old = mSpilled.put(step, buffer);
+            if(old != null) {
+                mSpilledBytes -= old.getByteCount();
+                old.release();
+            }
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error spilling checkpoint " + step + ", dropping it", e);
+        }
+    }
+
+    /**
+     * Drops checkpoints that belong to steps which are no longer valid
+     * @param step Checkpoints after this number of steps are dropped
+     */
+    private void removeCheckpointsAfter(int step) {
+        //Removal isn't eviction, so it doesn't spill
+        for(Integer key : mCheckpoints.snapshot().keySet()) {
+            if(key > step)
+                mCheckpoints.remove(key);
+        }
+        Iterator<Map.Entry<Integer, PixelBuffer>> spilled = mSpilled.entrySet().iterator();
+        while(spilled.hasNext()) {
+            Map.Entry<Integer, PixelBuffer> entry = spilled.next();
+            if(entry.getKey() > step) {
+                mSpilledBytes -= entry.getValue().getByteCount();
+                entry.getValue().release();
+                spilled.remove();
+            }
+        }
+    }
+}
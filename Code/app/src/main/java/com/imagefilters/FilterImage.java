@@ -2,39 +2,65 @@ package com.imagefilters;
 
 import androidx.annotation.FloatRange;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.hardware.display.DisplayManagerCompat;
 
 import android.Manifest;
-import android.database.Cursor;
+import android.app.ActivityManager;
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.ColorFilter;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
-import android.renderscript.ScriptIntrinsicConvolve3x3;
 import android.util.Log;
+import android.view.Display;
+import android.view.View;
+import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Activity to filter given image
  */
 public class FilterImage extends AppCompatActivity {
     /**
-     * Bitmap of image to be filtered and filtered image
+     * Bitmap of image to be filtered at full resolution and its copy
+     * downsampled to fit on screen, which is filtered interactively
      */
-    private Bitmap mSourceImageBitmap, mFilteredImageBitmap;
+    private Bitmap mSourceImageBitmap, mPreviewBitmap;
+
+    /**
+     * Executor that applies filters to source image in background
+     */
+    private FilterExecutor mFilterExecutor;
+
+    /**
+     * Runtime that keeps compute context for blur and sharpening,
+     * shared with filter executor
+     */
+    private FilterRuntime mFilterRuntime;
+
+    /**
+     * Two full resolution buffers reused by all steps of replay on save,
+     * accessed only from filter executor
+     */
+    private final BitmapPool mReplayPool = new BitmapPool();
 
     /**
      * View of loaded image
@@ -44,8 +70,27 @@ public class FilterImage extends AppCompatActivity {
     /**
      * Views to interact with buttons
      */
-    private Button mInvertFilter, mGrayscaleFilter, mBlurFilter,
-            mSharpFilter, mGbrFilter, mBrgFilter, mClear, mSave, mBack;
+    private Button mInvertFilter, mGrayscaleFilter, mBlurFilter, mSharpFilter,
+            mUnsharpFilter, mGammaFilter, mContrastFilter, mPosterizeFilter, mLevelsFilter,
+            mCurvesFilter, mAutoLevelsFilter, mAutoContrastFilter, mAutoWhiteBalanceFilter,
+            mGbrFilter, mBrgFilter, mUndo, mRedo, mClear, mSave, mBack;
+
+    /**
+     * Sliders adjusting parameters of last applied filter
+     */
+    private ParamSliders mParamSliders;
+
+    /**
+     * Number of clicks that changed steps, so that sliders of automatic step chosen in
+     * background aren't shown once other step was clicked meanwhile
+     */
+    private int mStepClicks;
+
+    /**
+     * Views to choose format and quality of saved image
+     */
+    private Spinner mSaveFormat;
+    private SeekBar mSaveQuality;
 
     /**
      * Write permission name in String[] format
@@ -57,13 +102,104 @@ public class FilterImage extends AppCompatActivity {
      */
     private final String TAG = "FilterImage";
 
+    /**
+     * Part of application memory class given to undo checkpoints
+     */
+    private static final int HISTORY_MEMORY_FRACTION = 8;
+
+    /**
+     * Directory in application cache for undo checkpoints evicted from memory
+     */
+    private static final String SPILL_DIR = "checkpoints";
+
+    /**
+     * Largest size of undo checkpoints evicted from memory, and part of free storage
+     * they may take at most
+     */
+    private static final long MAX_SPILL_BYTES = 256L * 1024 * 1024;
+    private static final int SPILL_SPACE_FRACTION = 4;
+
+    /**
+     * Part of application memory class given to images in flight in batch
+     */
+    private static final int BATCH_MEMORY_FRACTION = 4;
+
+    /**
+     * Number of images that can wait between two batch stages
+     */
+    private static final int BATCH_QUEUE_CAPACITY = 2;
+
+    /**
+     * Keys of saved instance state: recipe of shown image, name of file its pixels are
+     * written to and whether preview was saved apart from source
+     */
+    private static final String KEY_RECIPE = "recipe", KEY_FILTERED_PIXELS = "filtered_pixels",
+            KEY_SEPARATE_PREVIEW = "separate_preview";
+
+    /**
+     * Directory in application cache, names of files where pixels are kept for recreation
+     * of activity and start of names of filtered image files, one per saved state
+     */
+    private static final String SAVED_PIXELS_DIR = "filter_state", SOURCE_PIXELS = "source.raw",
+            PREVIEW_PIXELS = "preview.raw", FILTERED_PIXELS_PREFIX = "filtered-";
+
+    /**
+     * Longest time filter executor of recreated activity waits for filtered pixels still
+     * being written in milliseconds, filters are applied again from recipe if writing
+     * takes longer
+     */
+    private static final long MAX_PIXELS_WAIT_MS = 2000;
+
+    /**
+     * Counted down once pixels of the latest saved state are written, null if no state
+     * was saved. Set and read only on main thread
+     */
+    private static CountDownLatch sPixelsWritten;
+
+    /**
+     * Images picked together with first one, filtered with the same chain on save
+     */
+    private List<Uri> mBatchUris;
+
+    /**
+     * Running batch, null if no batch is running
+     */
+    private BatchPipeline<Uri, Bitmap, Bitmap> mBatch;
+
+    /**
+     * View of batch progress
+     */
+    private TextView mBatchProgress;
+
+    /**
+     * Debug overlay with filter timing, click exports metrics as JSON
+     */
+    private TextView mMetricsOverlay;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_filter_image);
+        MetricsRegistry.get().setMemoryProbe(new NativeMemoryProbe());
+
+        //Recipe and pixels kept by previous instance, e.g. before rotation
+        List<FilterOp> savedOps = savedInstanceState == null ? null
+                : FilterOp.parseRecipe(savedInstanceState.getString(KEY_RECIPE, ""));
+        String savedFiltered = savedInstanceState == null ? null
+                : savedInstanceState.getString(KEY_FILTERED_PIXELS);
+        boolean sourceRestored = false;
+        if(savedInstanceState == null) {
+            //Files left by instance that was killed are no longer needed
+            deleteSavedPixels();
+            deleteFiles(getSpillDir());
+        }
+        else if(savedFiltered != null)
+            sourceRestored = restoreSourcePixels(
+                    savedInstanceState.getBoolean(KEY_SEPARATE_PREVIEW));
 
-        //Check if MainActivity provided us with Intent
-        if(getIntent().getData()==null) {
+        if(sourceRestored)
+            Log.i(TAG, "Restored source of " + savedOps.size() + " filters without decoding");
+        else if(getIntent().getData()==null) {
             //Load default image (required for testing)
             mSourceImageBitmap = BitmapFactory
                     .decodeResource(this.getResources(), R.drawable.ducklings);
@@ -71,44 +207,110 @@ public class FilterImage extends AppCompatActivity {
         else {
             //Load image from URI provided by MainActivity
             mSourceImageBitmap = loadImage(getIntent().getData());
+            if(mSourceImageBitmap == null) {
+                Toast.makeText(this, getString(R.string.load_image_error),
+                        Toast.LENGTH_LONG).show();
+                finish();
+                return;
+            }
         }
 
-        mFilteredImageBitmap=mSourceImageBitmap;
+        mBatchUris = getPickedUris();
+        if(mPreviewBitmap == null)
+            mPreviewBitmap = createPreview(mSourceImageBitmap);
+        mFilterRuntime = new FilterRuntime(this);
+        FilterChain filterChain = new FilterChain(mPreviewBitmap);
+        FilterHistory history = new FilterHistory(mPreviewBitmap, getHistoryBudget(),
+                getSpillDir(), getSpillBudget());
+        mFilterExecutor = new FilterExecutor(filterChain, mFilterRuntime, history,
+                this::setFilteredImageView);
+        //Filtered pixels are taken on executor once written, main thread doesn't wait
+        //for them and without them steps are applied again from recipe
+        if(sourceRestored && !savedOps.isEmpty())
+            mFilterExecutor.resume(savedOps, savedImage(savedFiltered, sPixelsWritten));
+        else if(savedOps != null) {
+            for(FilterOp op : savedOps)
+                mFilterExecutor.submit(op);
+        }
+        if(!sourceRestored)
+            writeSourcePixels();
 
         setupViews();
+        //Slider changes are rendered at most once per display frame
+        Display display = DisplayManagerCompat.getInstance(this)
+                .getDisplay(Display.DEFAULT_DISPLAY);
+        if(display != null)
+            mFilterExecutor.setFrameRate(display.getRefreshRate());
 
-        mInvertFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=invertFilter(mFilteredImageBitmap);
-            setFilteredImageView();
-        });
+        //Filters are applied on background thread, clicks made while it is busy
+        //are applied together and only the latest result is shown
+        mInvertFilter.setOnClickListener(e -> applyFilter(new FilterOp(FilterOp.Type.INVERT)));
 
-        mGrayscaleFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=grayscaleFilter(mFilteredImageBitmap);
-            setFilteredImageView();
-        });
+        mGrayscaleFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.GRAYSCALE)));
 
-        mBlurFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=blurFilter(mFilteredImageBitmap, 25f);
-            setFilteredImageView();
-        });
+        mBlurFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.BLUR, 25f)));
 
-        mSharpFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=sharpFilter(mFilteredImageBitmap, 1);
-            setFilteredImageView();
-        });
+        mSharpFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.SHARPEN, 1)));
+
+        mUnsharpFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.UNSHARP, 1f, 5f, 2f)));
+
+        mGammaFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.GAMMA, 1.5f)));
+
+        mContrastFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.BRIGHTNESS_CONTRAST, 0f, 0.3f)));
 
-        mGbrFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=rgbToGbrFilter(mFilteredImageBitmap);
-            setFilteredImageView();
+        mPosterizeFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.POSTERIZE, 4f)));
+
+        mLevelsFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.LEVELS, 16f, 240f)));
+
+        mCurvesFilter.setOnClickListener(e ->
+                applyFilter(new FilterOp(FilterOp.Type.CURVES, 48f, 128f, 208f)));
+
+        //Automatic filters are chosen from statistics of image they are applied to
+        mAutoLevelsFilter.setOnClickListener(e -> applyAutoFilter(AutoAdjust.Kind.LEVELS));
+
+        mAutoContrastFilter.setOnClickListener(e -> applyAutoFilter(AutoAdjust.Kind.CONTRAST));
+
+        mAutoWhiteBalanceFilter.setOnClickListener(e ->
+                applyAutoFilter(AutoAdjust.Kind.WHITE_BALANCE));
+
+        mGbrFilter.setOnClickListener(e -> applyFilter(new FilterOp(FilterOp.Type.GBR)));
+
+        mBrgFilter.setOnClickListener(e -> applyFilter(new FilterOp(FilterOp.Type.BRG)));
+
+        //Slider may adjust only the step it was shown for
+        mUndo.setOnClickListener(e -> {
+            mStepClicks++;
+            mParamSliders.hide();
+            mFilterExecutor.undo();
         });
 
-        mBrgFilter.setOnClickListener(e -> {
-            mFilteredImageBitmap=rgbToBrgFilter(mFilteredImageBitmap);
-            setFilteredImageView();
+        mRedo.setOnClickListener(e -> {
+            mStepClicks++;
+            mParamSliders.hide();
+            mFilterExecutor.redo();
         });
 
         mClear.setOnClickListener(e -> clearFilters());
 
+        //Quality only matters for lossy formats
+        mSaveFormat.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                mSaveQuality.setEnabled(ImageSaver.Format.values()[position].usesQuality());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
         mSave.setOnClickListener(e -> {
             //Checking if we have permission to write to storage
             if(!MainActivity.hasPermission(this.getBaseContext(), WRITE_PERMISSION[0], TAG)) {
@@ -119,15 +321,38 @@ public class FilterImage extends AppCompatActivity {
                 Log.i(TAG, "Permission " + WRITE_PERMISSION[0] +
                         " granted, saving filtered image to storage");
 
-                //Save image to storage
-                if(saveImage(mFilteredImageBitmap)!=null) {
-                    Toast.makeText(FilterImage.this,
-                            getString(R.string.save_success), Toast.LENGTH_LONG).show();
+                //Save image to storage on filter executor once all clicked filters
+                //are applied, replaying them on full resolution image
+                ImageSaver.Format format =
+                        ImageSaver.Format.values()[mSaveFormat.getSelectedItemPosition()];
+                int quality = mSaveQuality.getProgress();
+                if(mBatchUris.size() > 1) {
+                    //All picked images go through batch pipeline with the same steps
+                    mFilterExecutor.execute(chain -> {
+                        List<FilterOp> ops = chain.getOps();
+                        runOnUiThread(() -> startBatch(ops, format, quality));
+                    });
                 }
                 else {
-                    Log.w(TAG, "Error saving image");
-                    Toast.makeText(FilterImage.this,
-                            getString(R.string.save_error), Toast.LENGTH_LONG).show();
+                    mFilterExecutor.execute(chain -> {
+                        //Image larger than working size is filtered in bands from original
+                        Uri saved = saveTiled(chain.getOps(), format);
+                        if(saved == null)
+                            saved = saveReplayed(chain, format, quality);
+                        final Uri result = saved;
+                        runOnUiThread(() -> {
+                            updateMetricsOverlay();
+                            if(result!=null) {
+                                Toast.makeText(FilterImage.this, getString(R.string.save_success),
+                                        Toast.LENGTH_LONG).show();
+                            }
+                            else {
+                                Log.w(TAG, "Error saving image");
+                                Toast.makeText(FilterImage.this, getString(R.string.save_error),
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        });
+                    });
                 }
             }
         });
@@ -138,6 +363,204 @@ public class FilterImage extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(mBatch != null)
+            mBatch.cancel();
+        //Executor isn't created if image failed to load
+        if(mFilterExecutor == null) {
+            if(isFinishing())
+                deleteSavedPixels();
+            return;
+        }
+        //Deleted after writes queued on worker, so that none of them leaves file behind
+        if(isFinishing())
+            mFilterExecutor.execute(chain -> deleteSavedPixels());
+        mFilterExecutor.shutdown();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        //Executor isn't created if image failed to load
+        if(mFilterExecutor == null)
+            return;
+
+        //Only recipe and file name are kept here, pixels are written on filter executor
+        List<FilterOp> ops = mFilterExecutor.getShownOps();
+        String name = FILTERED_PIXELS_PREFIX + System.nanoTime() + ".raw";
+        outState.putString(KEY_RECIPE, FilterOp.formatRecipe(ops));
+        outState.putString(KEY_FILTERED_PIXELS, name);
+        outState.putBoolean(KEY_SEPARATE_PREVIEW, mPreviewBitmap != mSourceImageBitmap);
+
+        CountDownLatch written = new CountDownLatch(1);
+        sPixelsWritten = written;
+        mFilterExecutor.execute(chain -> {
+            try {
+                writeFilteredPixels(chain, ops, name);
+            }
+            finally {
+                written.countDown();
+            }
+        });
+    }
+
+    /**
+     * Writes source and preview on filter executor, they don't change, so they are
+     * written once per image
+     */
+    private void writeSourcePixels() {
+        File dir = getSavedPixelsDir();
+        Bitmap source = mSourceImageBitmap, preview = mPreviewBitmap;
+        mFilterExecutor.execute(chain -> {
+            try {
+                dir.mkdirs();
+                PixelScratch.write(new File(dir, SOURCE_PIXELS), source);
+                if(preview != source)
+                    PixelScratch.write(new File(dir, PREVIEW_PIXELS), preview);
+            }
+            catch(IOException e) {
+                Log.w(TAG, "Error saving source pixels, image will be decoded on restore", e);
+            }
+        });
+    }
+
+    /**
+     * Writes filtered image of saved state and deletes ones of earlier states, called on
+     * filter executor
+     * @param chain Chain with all submitted steps applied
+     * @param ops Steps of shown image recorded in saved state
+     * @param name Name of file recorded in saved state
+     */
+    private void writeFilteredPixels(FilterChain chain, List<FilterOp> ops, String name) {
+        File dir = getSavedPixelsDir();
+        File[] earlier = dir.listFiles((file, fileName) ->
+                fileName.startsWith(FILTERED_PIXELS_PREFIX) && !fileName.equals(name));
+        if(earlier != null) {
+            for(File file : earlier)
+                file.delete();
+        }
+        //Steps submitted after state was saved aren't part of its recipe
+        if(!chain.getOps().equals(ops)) {
+            Log.i(TAG, "Shown image changed, filters will be applied again on restore");
+            return;
+        }
+
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("state.save");
+        Bitmap filtered = chain.render();
+        try {
+            dir.mkdirs();
+            PixelScratch.write(new File(dir, name), filtered);
+            timer.stop(filtered.getWidth(), filtered.getHeight());
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error saving pixels, filters will be applied again on restore", e);
+        }
+    }
+
+    /**
+     * Reads source and preview kept by previous instance, they are written once per
+     * image, so they are normally complete long before activity is recreated
+     * @param separatePreview True if preview was saved apart from source
+     * @return True if both images were read
+     */
+    private boolean restoreSourcePixels(boolean separatePreview) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("state.restore");
+        File dir = getSavedPixelsDir();
+        Bitmap source = PixelScratch.read(new File(dir, SOURCE_PIXELS));
+        Bitmap preview = separatePreview ? PixelScratch.read(new File(dir, PREVIEW_PIXELS))
+                : source;
+        if(source == null || preview == null)
+            return false;
+
+        timer.stop(source.getWidth(), source.getHeight());
+        mSourceImageBitmap = source;
+        mPreviewBitmap = preview;
+        return true;
+    }
+
+    /**
+     * Gets filtered image kept by previous instance, read on filter executor once it is
+     * written
+     * @param name Name of file of filtered image
+     * @param written Latch counted down once file is written, null if none is pending
+     * @return Saved image that gives null if file isn't written in time or doesn't fit
+     * preview
+     */
+    private FilterExecutor.SavedImage savedImage(String name, CountDownLatch written) {
+        File file = new File(getSavedPixelsDir(), name);
+        int width = mPreviewBitmap.getWidth(), height = mPreviewBitmap.getHeight();
+        return () -> {
+            try {
+                if(written != null && !written.await(MAX_PIXELS_WAIT_MS, TimeUnit.MILLISECONDS))
+                    Log.w(TAG, "Pixels are still being written, filters will be applied again");
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Bitmap filtered = PixelScratch.read(file);
+            if(filtered == null || filtered.getWidth() != width
+                    || filtered.getHeight() != height)
+                return null;
+            return filtered;
+        };
+    }
+
+    /**
+     * Deletes pixels kept for recreation of activity
+     */
+    private void deleteSavedPixels() {
+        deleteFiles(getSavedPixelsDir());
+    }
+
+    /**
+     * Deletes all files in directory
+     * @param dir Directory to empty
+     */
+    private static void deleteFiles(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File file : files)
+                file.delete();
+        }
+    }
+
+    /**
+     * @return Directory in application cache where pixels are kept for recreation
+     */
+    private File getSavedPixelsDir() {
+        return new File(getCacheDir(), SAVED_PIXELS_DIR);
+    }
+
+    /**
+     * Applies filter in background and shows sliders of its parameters
+     * @param op Filter step to apply
+     */
+    private void applyFilter(FilterOp op) {
+        mStepClicks++;
+        mFilterExecutor.submit(op);
+        mParamSliders.show(op);
+    }
+
+    /**
+     * Applies filter chosen from statistics of image in background and shows sliders
+     * of its parameters once it is chosen
+     * @param kind Kind of automatic filter
+     */
+    private void applyAutoFilter(AutoAdjust.Kind kind) {
+        int clicks = ++mStepClicks;
+        mParamSliders.hide();
+        mFilterExecutor.submit(image -> {
+            FilterOp op = AutoAdjust.create(kind, mFilterRuntime.statistics(image));
+            runOnUiThread(() -> {
+                if(clicks == mStepClicks)
+                    mParamSliders.show(op);
+            });
+            return op;
+        });
+    }
+
     /**
      * Sets up Views by unique ID
      */
@@ -147,74 +570,208 @@ public class FilterImage extends AppCompatActivity {
         mGrayscaleFilter = findViewById(R.id.grayscale_button);
         mBlurFilter = findViewById(R.id.blur_button);
         mSharpFilter = findViewById(R.id.sharp_button);
+        mUnsharpFilter = findViewById(R.id.unsharp_button);
+        mGammaFilter = findViewById(R.id.gamma_button);
+        mContrastFilter = findViewById(R.id.contrast_button);
+        mPosterizeFilter = findViewById(R.id.posterize_button);
+        mLevelsFilter = findViewById(R.id.levels_button);
+        mCurvesFilter = findViewById(R.id.curves_button);
+        mAutoLevelsFilter = findViewById(R.id.auto_levels_button);
+        mAutoContrastFilter = findViewById(R.id.auto_contrast_button);
+        mAutoWhiteBalanceFilter = findViewById(R.id.auto_white_balance_button);
         mGbrFilter = findViewById(R.id.change_gbr_button);
         mBrgFilter = findViewById(R.id.change_brg_button);
+        mUndo = findViewById(R.id.filter_undo_button);
+        mRedo = findViewById(R.id.filter_redo_button);
         mClear = findViewById(R.id.filter_clear_button);
+        mSaveFormat = findViewById(R.id.filter_save_format);
+        mSaveQuality = findViewById(R.id.filter_save_quality);
         mSave = findViewById(R.id.filter_save_button);
         mBack = findViewById(R.id.filter_back_button);
+        mParamSliders = new ParamSliders(findViewById(R.id.filter_params),
+                new TextView[] { findViewById(R.id.filter_param_label_1),
+                        findViewById(R.id.filter_param_label_2),
+                        findViewById(R.id.filter_param_label_3) },
+                new SeekBar[] { findViewById(R.id.filter_param_1),
+                        findViewById(R.id.filter_param_2), findViewById(R.id.filter_param_3) },
+                mFilterExecutor::editLast);
+
+        mBatchProgress = findViewById(R.id.filter_batch_progress);
+        if(mBatchUris.size() > 1) {
+            mBatchProgress.setVisibility(View.VISIBLE);
+            mBatchProgress.setText(getString(R.string.batch_selected, mBatchUris.size()));
+        }
 
         mSourceImageView = findViewById(R.id.filter_source);
-        setFilteredImageView();
+        mMetricsOverlay = findViewById(R.id.filter_metrics_overlay);
+        if(getResources().getBoolean(R.bool.show_metrics_overlay))
+            mMetricsOverlay.setVisibility(View.VISIBLE);
+        mSourceImageView.setOnLongClickListener(v -> {
+            mMetricsOverlay.setVisibility(mMetricsOverlay.getVisibility() == View.VISIBLE
+                    ? View.GONE : View.VISIBLE);
+            updateMetricsOverlay();
+            return true;
+        });
+        mMetricsOverlay.setOnClickListener(v -> exportMetrics());
+        setFilteredImageView(mFilterExecutor.getShown());
     }
 
     /**
      * Helper method that updates ImageView with currently filtered image
+     * @param filtered Bitmap of filtered image
      */
-    private void setFilteredImageView() {
-        mSourceImageView.setImageBitmap(mFilteredImageBitmap);
+    private void setFilteredImageView(Bitmap filtered) {
+        mSourceImageView.setImageBitmap(filtered);
+        updateMetricsOverlay();
     }
 
     /**
-     * Loads image from given URI
-     * @param imageSource URI of image to be loaded
-     * @return Bitmap of loaded image
+     * Shows current metrics in debug overlay if it is visible
      */
-    private Bitmap loadImage(Uri imageSource) {
-        Log.i(TAG, "Loading image from gallery");
-        String[] filePathColumn = { MediaStore.Images.Media.DATA };
+    private void updateMetricsOverlay() {
+        if(mMetricsOverlay.getVisibility() == View.VISIBLE)
+            mMetricsOverlay.setText(MetricsRegistry.get().toSummary());
+    }
 
-        Cursor cursor = getContentResolver().query(imageSource,
-                filePathColumn,null,
-                null, null);
+    /**
+     * Writes JSON snapshot of metrics in background to application directory on external
+     * storage, where it can be pulled without root, or to internal files directory if
+     * external storage isn't available
+     */
+    private void exportMetrics() {
+        String json = MetricsRegistry.get().toJson();
+        Log.i(TAG, "Metrics: " + json);
+        File dir = getExternalFilesDir(null);
+        if(dir == null)
+            dir = getFilesDir();
+        File file = new File(dir, "metrics-" + System.currentTimeMillis() + ".json");
+        mFilterExecutor.execute(chain -> {
+            try(Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                out.write(json);
+                runOnUiThread(() -> Toast.makeText(FilterImage.this,
+                        getString(R.string.metrics_exported, file.getPath()),
+                        Toast.LENGTH_LONG).show());
+            }
+            catch(IOException e) {
+                Log.w(TAG, "Error exporting metrics", e);
+            }
+        });
+    }
 
-        cursor.moveToFirst();
+    /**
+     * Checks if all clicked filters are applied and shown
+     * @return True if no filtering is in progress
+     */
+    public boolean isFilteringIdle() {
+        return mFilterExecutor.isIdle();
+    }
 
-        int columnIndex = cursor.getColumnIndex(filePathColumn[0]);
-        String picturePath = cursor.getString(columnIndex);
-        cursor.close();
+    /**
+     * Gets memory budget for undo checkpoints from application memory class
+     * @return Maximum size of all checkpoints in bytes
+     */
+    private int getHistoryBudget() {
+        ActivityManager manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        return manager.getMemoryClass() * 1024 * 1024 / HISTORY_MEMORY_FRACTION;
+    }
 
-        return BitmapFactory.decodeFile(picturePath);
+    /**
+     * @return Directory in application cache for undo checkpoints evicted from memory
+     */
+    private File getSpillDir() {
+        return new File(getCacheDir(), SPILL_DIR);
     }
 
     /**
-     * Inverts image
-     * @param src Bitmap of image to invert
-     * @return Bitmap of inverted image
+     * Gets storage budget for undo checkpoints evicted from memory from free space
+     * @return Maximum size of all spilled checkpoints in bytes
      */
-    public Bitmap invertFilter(Bitmap src) {
-        Log.i(TAG, "Inverting image");
+    private long getSpillBudget() {
+        return Math.min(MAX_SPILL_BYTES, getCacheDir().getUsableSpace() / SPILL_SPACE_FRACTION);
+    }
 
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
+    /**
+     * Downsamples image so that it fits into filtered image view
+     * @param source Bitmap of full resolution image
+     * @return Bitmap of downsampled image or source itself if it already fits
+     */
+    private Bitmap createPreview(Bitmap source) {
+        float maxWidth = getResources().getDisplayMetrics().widthPixels;
+        float maxHeight = getResources().getDimension(R.dimen.filter_preview_height);
+        float scale = Math.min(maxWidth / source.getWidth(), maxHeight / source.getHeight());
+        if(scale >= 1)
+            return source;
+
+        Log.i(TAG, "Filtering preview downsampled by " + (1 / scale));
+        return Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                Math.max(1, Math.round(source.getHeight() * scale)), true);
+    }
 
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height,
-                Bitmap.Config.ARGB_8888);
+    /**
+     * Loads image from given URI, downsampled to working size
+     * @param imageSource URI of image to be loaded
+     * @return Bitmap of loaded image or null if it can't be loaded
+     */
+    private Bitmap loadImage(Uri imageSource) {
+        Log.i(TAG, "Loading image from " + imageSource);
+        if(BitmapLoader.isRemote(imageSource)) {
+            //Fetched image is decoded by MainActivity while it downloads
+            Bitmap fetched = ImageHandoff.get(imageSource);
+            return fetched != null ? fetched : loadCachedImage(imageSource);
+        }
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("image.load");
+        try {
+            Bitmap loaded = BitmapLoader.load(getContentResolver(), imageSource,
+                    getResources().getInteger(R.integer.max_working_size));
+            timer.stop(loaded.getWidth(), loaded.getHeight());
+            return loaded;
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error loading image", e);
+            return null;
+        }
+    }
 
-        //Draw inverted image
-        ColorMatrix cm = new ColorMatrix(new float[] {
-                -1,  0,  0,  0, 255,
-                0,  -1,  0,  0, 255,
-                0,   0, -1,  0, 255,
-                0,   0,  0,  1,   0 });
+    /**
+     * Loads image fetched earlier from disk cache, e.g. when process was restarted
+     * @param imageSource URL of image
+     * @return Bitmap of loaded image or null if it isn't cached
+     */
+    private Bitmap loadCachedImage(Uri imageSource) {
+        //Fragment only tells apart images downloaded from the same URL
+        ImageDiskCache.Snapshot cached = ImageDiskCache.get(this)
+                .get(imageSource.buildUpon().fragment(null).build().toString());
+        if(cached == null)
+            return null;
+        try(InputStream in = cached.getBody()) {
+            return BitmapLoader.decodeStream(in,
+                    getResources().getInteger(R.integer.max_working_size));
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error loading cached image", e);
+            return null;
+        }
+    }
 
-        ColorFilter cf = new ColorMatrixColorFilter(cm);
-        Canvas canvas = new Canvas(resultBitmap);
-        Paint paint = new Paint();
-        paint.setColorFilter(cf);
-        canvas.drawBitmap(src, 0, 0, paint);
+    /**
+     * Inverts image
+     * @param src Bitmap of image to invert
+     * @return Bitmap of inverted image
+     */
+    public Bitmap invertFilter(Bitmap src) {
+        return invertFilter(src, createResult(src));
+    }
 
-        return resultBitmap;
+    /**
+     * Inverts image without allocating result
+     * @param src Bitmap of image to invert
+     * @param dst Bitmap of same size to write result to, may be src to invert in place
+     * @return dst
+     */
+    public Bitmap invertFilter(Bitmap src, Bitmap dst) {
+        Log.i(TAG, "Inverting image");
+        FilterChain.drawColorMatrix(src, dst, ColorMatrices.INVERT);
+        return dst;
     }
 
     /**
@@ -223,58 +780,43 @@ public class FilterImage extends AppCompatActivity {
      * @return Bitmap of filtered image
      */
     public Bitmap grayscaleFilter(Bitmap src) {
-        Log.i(TAG, "Applying grayscale filter");
-
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
-
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height,
-                Bitmap.Config.ARGB_8888);
-
-        //Draw image in gray paint
-        Canvas c = new Canvas(resultBitmap);
-        Paint paint = new Paint();
-        ColorMatrix cm = new ColorMatrix();
-        cm.setSaturation(0);
-        ColorMatrixColorFilter f = new ColorMatrixColorFilter(cm);
-        paint.setColorFilter(f);
-        c.drawBitmap(src, 0, 0, paint);
+        return grayscaleFilter(src, createResult(src));
+    }
 
-        return resultBitmap;
+    /**
+     * Applies grayscale filter to image without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, may be src to filter in place
+     * @return dst
+     */
+    public Bitmap grayscaleFilter(Bitmap src, Bitmap dst) {
+        Log.i(TAG, "Applying grayscale filter");
+        FilterChain.drawColorMatrix(src, dst, ColorMatrices.GRAYSCALE);
+        return dst;
     }
 
     /**
      * Applies Gaussian blur filter to image
      * @param src Bitmap of image to filter
-     * @param blurRadius Radius of blur (must be [0, 25])
+     * @param blurRadius Radius of blur, above 25 approximated by box passes
      * @return Bitmap of filtered image
      */
     public Bitmap blurFilter(Bitmap src,
-                             @FloatRange(from = 0.0f, to = 25.0f) float blurRadius) {
-        Log.i(TAG, "Applying Gaussian blur filter");
-
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
-
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height,
-            Bitmap.Config.ARGB_8888);
-
-        //Apply blur filter using RenderScript
-        RenderScript renderScriptBlur = RenderScript.create(getBaseContext());
-        ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(renderScriptBlur,
-            Element.U8_4(renderScriptBlur));
-        Allocation inAlloc = Allocation.createFromBitmap(renderScriptBlur, src);
-        Allocation outAlloc = Allocation.createFromBitmap(renderScriptBlur,
-            resultBitmap);
-        script.setRadius(blurRadius);
-        script.setInput(inAlloc);
-        script.forEach(outAlloc);
-        outAlloc.copyTo(resultBitmap);
-        renderScriptBlur.destroy();
+                             @FloatRange(from = 0.0f) float blurRadius) {
+        return blurFilter(src, createResult(src), blurRadius);
+    }
 
-        return resultBitmap;
+    /**
+     * Applies Gaussian blur filter to image without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to
+     * @param blurRadius Radius of blur, above 25 approximated by box passes
+     * @return dst
+     */
+    public Bitmap blurFilter(Bitmap src, Bitmap dst,
+                             @FloatRange(from = 0.0f) float blurRadius) {
+        Log.i(TAG, "Applying Gaussian blur filter");
+        return mFilterRuntime.blur(src, dst, blurRadius);
     }
 
     /**
@@ -284,31 +826,19 @@ public class FilterImage extends AppCompatActivity {
      * @return Bitmap of filtered image
      */
     public Bitmap sharpFilter(Bitmap src, float sharpRadius) {
-        Log.i(TAG, "Applying sharpening filter");
-
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
-
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height,
-            Bitmap.Config.ARGB_8888);
-
-        //Apply sharp filter using RenderScript
-        RenderScript renderScriptSharp = RenderScript.create(getBaseContext());
-        ScriptIntrinsicConvolve3x3 script = ScriptIntrinsicConvolve3x3.create(
-            renderScriptSharp, Element.U8_4(renderScriptSharp));
-        Allocation inAlloc = Allocation.createFromBitmap(renderScriptSharp, src);
-        Allocation outAlloc = Allocation.createFromBitmap(renderScriptSharp,
-            resultBitmap);
-        script.setInput(inAlloc);
-        float[] sharpCoefficients ={ 0, -sharpRadius, 0, -sharpRadius,
-            5f*sharpRadius, -sharpRadius, 0, -sharpRadius, 0};
-        script.setCoefficients(sharpCoefficients);
-        script.forEach(outAlloc);
-        outAlloc.copyTo(resultBitmap);
-        renderScriptSharp.destroy();
+        return sharpFilter(src, createResult(src), sharpRadius);
+    }
 
-        return resultBitmap;
+    /**
+     * Applies sharpening filter to image without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to
+     * @param sharpRadius Radius of sharpening
+     * @return dst
+     */
+    public Bitmap sharpFilter(Bitmap src, Bitmap dst, float sharpRadius) {
+        Log.i(TAG, "Applying sharpening filter");
+        return mFilterRuntime.sharpen(src, dst, sharpRadius);
     }
 
     /**
@@ -317,28 +847,19 @@ public class FilterImage extends AppCompatActivity {
      * @return Bitmap of filtered image
      */
     public Bitmap rgbToGbrFilter(Bitmap src) {
-        Log.i(TAG, "Applying GBR filter");
-
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
-
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height, src.getConfig());
-
-        //Draw image with switched colors: R->G, G->B, B->R
-        ColorMatrix cm = new ColorMatrix(new float[] {
-                0, 0, 1, 0, 0,
-                1, 0, 0, 0, 0,
-                0, 1, 0, 0, 0,
-                0, 0, 0, 1, 0 });
-
-        ColorFilter cf = new ColorMatrixColorFilter(cm);
-        Canvas canvas = new Canvas(resultBitmap);
-        Paint paint = new Paint();
-        paint.setColorFilter(cf);
-        canvas.drawBitmap(src, 0, 0, paint);
+        return rgbToGbrFilter(src, createResult(src));
+    }
 
-        return resultBitmap;
+    /**
+     * Applies GBR filter without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, may be src to filter in place
+     * @return dst
+     */
+    public Bitmap rgbToGbrFilter(Bitmap src, Bitmap dst) {
+        Log.i(TAG, "Applying GBR filter");
+        FilterChain.drawColorMatrix(src, dst, ColorMatrices.GBR);
+        return dst;
     }
 
     /**
@@ -347,51 +868,189 @@ public class FilterImage extends AppCompatActivity {
      * @return Bitmap of filtered image
      */
     public Bitmap rgbToBrgFilter(Bitmap src) {
+        return rgbToBrgFilter(src, createResult(src));
+    }
+
+    /**
+     * Applies BRG filter without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, may be src to filter in place
+     * @return dst
+     */
+    public Bitmap rgbToBrgFilter(Bitmap src, Bitmap dst) {
         Log.i(TAG, "Applying BRG filter");
+        FilterChain.drawColorMatrix(src, dst, ColorMatrices.BRG);
+        return dst;
+    }
 
-        //Get width and height of original bitmap
-        int height = src.getHeight(), width = src.getWidth();
+    /**
+     * Creates result bitmap with same parameters as original
+     * @param src Bitmap of image to filter
+     * @return New empty bitmap
+     */
+    private static Bitmap createResult(Bitmap src) {
+        return Bitmap.createBitmap(src.getWidth(), src.getHeight(), Bitmap.Config.ARGB_8888);
+    }
 
-        //Create new result bitmap with same parameters as original
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height, src.getConfig());
+    /**
+     * Clears all filters from image and resets it back to original
+     */
+    private void clearFilters() {
+        Log.i(TAG, "Clearing all filters from image");
+        mStepClicks++;
+        mParamSliders.hide();
+        mFilterExecutor.clear(mPreviewBitmap);
+    }
 
-        //Draw image with switched colors: R->B, G->R, B->G
-        ColorMatrix cm = new ColorMatrix(new float[] {
-                0, 1, 0, 0, 0,
-                0, 0, 1, 0, 0,
-                1, 0, 0, 0, 0,
-                0, 0, 0, 1, 0 });
+    /**
+     * Gets all images picked in gallery
+     * @return URIs of picked images, first one is the one being filtered
+     */
+    private List<Uri> getPickedUris() {
+        List<Uri> uris = new ArrayList<>();
+        Uri data = getIntent().getData();
+        if(data != null)
+            uris.add(data);
+        ClipData clip = getIntent().getClipData();
+        if(clip != null) {
+            for(int i = 0; i < clip.getItemCount(); i++) {
+                Uri uri = clip.getItemAt(i).getUri();
+                if(uri != null && !uris.contains(uri))
+                    uris.add(uri);
+            }
+        }
+        return uris;
+    }
 
-        ColorFilter cf = new ColorMatrixColorFilter(cm);
-        Canvas canvas = new Canvas(resultBitmap);
-        Paint paint = new Paint();
-        paint.setColorFilter(cf);
-        canvas.drawBitmap(src, 0, 0, paint);
+    /**
+     * Applies filter steps to all picked images in background and saves them
+     * @param ops Filter steps applied to preview
+     * @param format Encoded image format
+     * @param quality Quality of lossy formats
+     */
+    private void startBatch(List<FilterOp> ops, ImageSaver.Format format, int quality) {
+        if(mBatch != null || isFinishing())
+            return;
+
+        Log.i(TAG, "Starting batch of " + mBatchUris.size() + " images");
+        ActivityManager manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        long budget = (long)manager.getMemoryClass() * 1024 * 1024 / BATCH_MEMORY_FRACTION;
+        BatchProcessor processor = new BatchProcessor(this, ops, mPreviewBitmap.getWidth(),
+                getResources().getInteger(R.integer.max_working_size), format, quality);
+        mBatch = new BatchPipeline<>(processor, budget, BATCH_QUEUE_CAPACITY,
+                new BatchPipeline.Listener<Uri>() {
+                    @Override
+                    public void onProgress(BatchProgress progress) {
+                        runOnUiThread(() -> showBatchProgress(progress));
+                    }
+
+                    @Override
+                    public void onFailed(Uri item, Exception error) {
+                        Log.w(TAG, "Error processing " + item, error);
+                    }
+
+                    @Override
+                    public void onFinished(BatchProgress progress, boolean cancelled) {
+                        processor.release();
+                        Log.i(TAG, "Batch finished: " + progress);
+                        runOnUiThread(() -> {
+                            mBatch = null;
+                            mSave.setEnabled(true);
+                            showBatchProgress(progress);
+                            Toast.makeText(FilterImage.this, getString(R.string.batch_finished,
+                                    progress.getDone(), progress.getFailed()),
+                                    Toast.LENGTH_LONG).show();
+                        });
+                    }
+                });
+        mSave.setEnabled(false);
+        mBatch.start(mBatchUris);
+    }
 
-        return resultBitmap;
+    /**
+     * Shows batch progress and throughput
+     * @param progress Snapshot of progress
+     */
+    private void showBatchProgress(BatchProgress progress) {
+        mBatchProgress.setText(getString(R.string.batch_progress, progress.getDone(),
+                progress.getTotal(), progress.getFailed(), progress.getImagesPerSecond()));
     }
 
     /**
-     * Clears all filters from image and resets it back to original
+     * Replays filter steps on full resolution image and saves result
+     * @param chain Chain of filters applied to preview
+     * @param format Encoded image format
+     * @param quality Quality of lossy formats
+     * @return Uri of saved image, or null if it can't be saved
      */
-    private void clearFilters() {
-        Log.i(TAG, "Clearing all filters from image");
-        mFilteredImageBitmap=mSourceImageBitmap;
-        setFilteredImageView();
+    private Uri saveReplayed(FilterChain chain, ImageSaver.Format format, int quality) {
+        Bitmap result = chain.render();
+        if(mPreviewBitmap != mSourceImageBitmap) {
+            float scale = (float)mSourceImageBitmap.getWidth() / mPreviewBitmap.getWidth();
+            result = FilterChain.replay(mSourceImageBitmap, chain.getOps(),
+                    scale, mFilterRuntime, mReplayPool);
+        }
+        Uri saved = saveImage(result, format, quality);
+        mReplayPool.clear();
+        return saved;
+    }
+
+    /**
+     * Filters original image in bands and streams it to storage as PNG,
+     * if it is larger than loaded source image and PNG is the chosen format.
+     * Other formats can't be encoded in bands, so they are left to
+     * {@link #saveReplayed(FilterChain, ImageSaver.Format, int)}
+     * @param ops Filter steps applied to preview
+     * @param format Encoded image format chosen by user
+     * @return Uri of saved image, or null if image isn't larger, format isn't PNG
+     * or image can't be tiled
+     */
+    private Uri saveTiled(List<FilterOp> ops, ImageSaver.Format format) {
+        Uri source = getIntent().getData();
+        if(format != ImageSaver.Format.PNG || source == null || BitmapLoader.isRemote(source))
+            return null;
+
+        ContentResolver resolver = getContentResolver();
+        try {
+            BitmapFactory.Options bounds = BitmapLoader.readBounds(resolver, source);
+            if(bounds.outWidth <= mSourceImageBitmap.getWidth())
+                return null;
+
+            Log.i(TAG, "Saving " + bounds.outWidth + "x" + bounds.outHeight
+                    + " image in bands");
+            float scale = (float)bounds.outWidth / mPreviewBitmap.getWidth();
+            MetricsRegistry.Timer timer = MetricsRegistry.get().start("image.saveTiled");
+            Uri saved = ImageSaver.save(resolver, ImageSaver.Format.PNG, out ->
+                    TiledRenderer.render(resolver, source, ops, scale, mFilterRuntime,
+                            TiledRenderer.DEFAULT_TILE_PIXELS, out));
+            timer.stop(bounds.outWidth, bounds.outHeight);
+            return saved;
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error saving image in bands", e);
+            return null;
+        }
     }
 
     /**
-     * Saves given image to local storage
+     * Saves given image to local storage, encoding it once
      * @param toSave Bitmap of image to be saved
-     * @return Uri of saved image
-     */
-    private Uri saveImage(Bitmap toSave) {
-        Log.i(TAG, "Saving image to storage");
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        toSave.compress(Bitmap.CompressFormat.JPEG, 100, bytes);
-        String path = MediaStore.Images.Media.insertImage(this.getContentResolver(),
-                toSave, ((Long)System.currentTimeMillis()).toString(), null);
-        return Uri.parse(path);
+     * @param format Encoded image format
+     * @param quality Quality of lossy formats
+     * @return Uri of saved image, or null if it can't be saved
+     */
+    private Uri saveImage(Bitmap toSave, ImageSaver.Format format, int quality) {
+        Log.i(TAG, "Saving image to storage as " + format);
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("image.save");
+        try {
+            Uri saved = ImageSaver.save(getContentResolver(), toSave, format, quality);
+            timer.stop(toSave.getWidth(), toSave.getHeight());
+            return saved;
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error saving image", e);
+            return null;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.imagefilters;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Holds filter backend for lifetime of its owner (created in onCreate,
+ * released in onDestroy), so that compute context isn't set up on every filter
+ */
+public class FilterRuntime {
+    /**
+     * Factory used for new runtimes, tests may replace it before Activity starts
+     */
+    static FilterBackend.Factory sBackendFactory = RenderScriptBackend::new;
+
+    /**
+     * Backend that runs filters
+     */
+    private FilterBackend mBackend;
+
+    /**
+     * Backend that runs blur above maximum radius of backend and finishes unsharp mask,
+     * null until needed
+     */
+    private JavaBackend mJavaBackend;
+
+    /**
+     * Creates runtime with backend from current factory
+     * @param context Context of owner
+     */
+    public FilterRuntime(Context context) {
+        this(sBackendFactory.create(context));
+    }
+
+    /**
+     * Creates runtime with given backend
+     * @param backend Backend that runs filters
+     */
+    public FilterRuntime(FilterBackend backend) {
+        mBackend = backend;
+    }
+
+    /**
+     * Applies Gaussian blur
+     * @param src Bitmap of image to filter
+     * @param blurRadius Radius of blur
+     * @return New bitmap of filtered image
+     */
+    public Bitmap blur(Bitmap src, float blurRadius) {
+        return blur(src, createResult(src), blurRadius);
+    }
+
+    /**
+     * Applies Gaussian blur without allocating result. Radii above 25 are approximated
+     * by box passes, which take the same time for any radius
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, may be the same as src
+     * @param blurRadius Radius of blur
+     * @return dst
+     */
+    public Bitmap blur(Bitmap src, Bitmap dst, float blurRadius) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.blur");
+        if(blurRadius <= PixelEngine.MAX_BLUR_RADIUS)
+            getBackend().blur(src, dst, blurRadius);
+        else
+            getJavaBackend().boxBlur(src, dst, blurRadius);
+        timer.stop(dst.getWidth(), dst.getHeight());
+        return dst;
+    }
+
+    /**
+     * Applies sharpening
+     * @param src Bitmap of image to filter
+     * @param sharpRadius Radius of sharpening
+     * @return New bitmap of filtered image
+     */
+    public Bitmap sharpen(Bitmap src, float sharpRadius) {
+        return sharpen(src, createResult(src), sharpRadius);
+    }
+
+    /**
+     * Applies sharpening without allocating result
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, may be the same as src
+     * @param sharpRadius Radius of sharpening
+     * @return dst
+     */
+    public Bitmap sharpen(Bitmap src, Bitmap dst, float sharpRadius) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.sharpen");
+        getBackend().sharpen(src, dst, sharpRadius);
+        timer.stop(dst.getWidth(), dst.getHeight());
+        return dst;
+    }
+
+    /**
+     * Applies unsharp mask
+     * @param src Bitmap of image to filter
+     * @param amount Strength of sharpening, 1 doubles local contrast
+     * @param blurRadius Radius of blur that picks details to sharpen
+     * @param threshold Smallest difference of channel from blurred image that is sharpened
+     * @return New bitmap of filtered image
+     */
+    public Bitmap unsharpMask(Bitmap src, float amount, float blurRadius, float threshold) {
+        return unsharpMask(src, createResult(src), amount, blurRadius, threshold);
+    }
+
+    /**
+     * Applies unsharp mask without allocating result. Image is blurred the same way as
+     * by {@link #blur(Bitmap, Bitmap, float)}, then difference to blurred image is added
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size to write result to, must not be src
+     * @param amount Strength of sharpening, 1 doubles local contrast
+     * @param blurRadius Radius of blur that picks details to sharpen
+     * @param threshold Smallest difference of channel from blurred image that is sharpened
+     * @return dst
+     */
+    public Bitmap unsharpMask(Bitmap src, Bitmap dst, float amount, float blurRadius,
+                              float threshold) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.unsharp");
+        blur(src, dst, blurRadius);
+        getJavaBackend().unsharpCombine(src, dst, amount, threshold);
+        timer.stop(dst.getWidth(), dst.getHeight());
+        return dst;
+    }
+
+    /**
+     * Gathers statistics of image, e.g. to choose automatic adjustment
+     * @param src Bitmap of image
+     * @return Histograms of red, green, blue and luminance
+     */
+    public ImageStats statistics(Bitmap src) {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("filter.stats");
+        ImageStats stats = getJavaBackend().statistics(src);
+        timer.stop(src.getWidth(), src.getHeight());
+        return stats;
+    }
+
+    /**
+     * Frees backend resources, runtime can't be used afterwards
+     */
+    public void release() {
+        if(mBackend != null) {
+            mBackend.release();
+            mBackend = null;
+        }
+        if(mJavaBackend != null) {
+            mJavaBackend.release();
+            mJavaBackend = null;
+        }
+    }
+
+    /**
+     * Gets backend checking that runtime wasn't released
+     * @return Backend that runs filters
+     */
+    private FilterBackend getBackend() {
+        if(mBackend == null)
+            throw new IllegalStateException("FilterRuntime was released");
+        return mBackend;
+    }
+
+    /**
+     * Gets backend for filters only available in pure Java, reusing main backend if it
+     * is pure Java
+     * @return Backend that runs box blur, unsharp mask and statistics
+     */
+    private JavaBackend getJavaBackend() {
+        if(getBackend() instanceof JavaBackend)
+            return (JavaBackend) mBackend;
+        if(mJavaBackend == null)
+            mJavaBackend = new JavaBackend();
+        return mJavaBackend;
+    }
+
+    /**
+     * Creates result bitmap with same parameters as source
+     * @param src Bitmap of image to filter
+     * @return New empty bitmap
+     */
+    private static Bitmap createResult(Bitmap src) {
+        return Bitmap.createBitmap(src.getWidth(), src.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+}
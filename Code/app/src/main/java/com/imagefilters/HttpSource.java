@@ -0,0 +1,321 @@
+package com.imagefilters;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * Opens HTTP responses as streams that can be consumed while they download.
+ * Redirects between HTTP and HTTPS are followed, connecting and reading time out
+ * and progress is reported as bytes arrive. Responses can be kept in disk cache,
+ * which is used without request while fresh and revalidated with ETag and
+ * Last-Modified once stale
+ */
+public class HttpSource {
+    /**
+     * Maximum number of redirects followed for one request
+     */
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Minimum number of bytes between two progress reports
+     */
+    private static final int PROGRESS_STEP = 16 * 1024;
+
+    /**
+     * Time in milliseconds cached response stays fresh if server gives no expiry
+     */
+    private static final long DEFAULT_FRESHNESS = 60 * 60 * 1000L;
+
+    /**
+     * Longest time in milliseconds cached response stays fresh judging by its age
+     */
+    private static final long MAX_HEURISTIC_FRESHNESS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Timeouts in milliseconds
+     */
+    private final int mConnectTimeout, mReadTimeout;
+
+    /**
+     * Connection of running request, null if none is running
+     */
+    private volatile HttpURLConnection mConnection;
+
+    /**
+     * True once source was cancelled
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * Creates source
+     * @param connectTimeout Timeout of connecting in milliseconds
+     * @param readTimeout Timeout of waiting for next bytes in milliseconds
+     */
+    public HttpSource(int connectTimeout, int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Requests URL, following redirects
+     * @param url URL to request
+     * @param listener Receiver of download progress, called on reading thread
+     * @return Stream of response body, disconnects when closed
+     * @throws IOException If request fails or response isn't 200 OK
+     */
+    public InputStream open(URL url, ProgressListener listener) throws IOException {
+        return open(url, null, listener);
+    }
+
+    /**
+     * Requests URL through disk cache. Fresh cached response is read without request,
+     * stale one is used if server replies it wasn't modified
+     * @param url URL to request
+     * @param cache Cache to read and store response, null to always download
+     * @param listener Receiver of download progress, called on reading thread
+     * @return Stream of response body, disconnects when closed
+     * @throws IOException If request fails or response isn't 200 OK
+     */
+    public InputStream open(URL url, ImageDiskCache cache, ProgressListener listener)
+            throws IOException {
+        ImageDiskCache.Snapshot cached = cache == null ? null : cache.get(url.toString());
+        if(cached != null && cached.isFresh(System.currentTimeMillis()))
+            return new ProgressStream(cached.getBody(), cached.getLength(), listener, null);
+
+        HttpURLConnection connection;
+        try {
+            connection = connect(url, cached);
+        }
+        catch(IOException e) {
+            if(cached != null)
+                cached.close();
+            throw e;
+        }
+
+        if(connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.disconnect();
+            cache.refresh(cached, getExpiry(connection, System.currentTimeMillis()));
+            return new ProgressStream(cached.getBody(), cached.getLength(), listener, null);
+        }
+        if(cached != null)
+            cached.close();
+
+        InputStream body = new ProgressStream(connection.getInputStream(),
+                getContentLength(connection), listener, connection);
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if(cache == null || hasDirective(cacheControl, "no-store"))
+            return body;
+        try {
+            return cache.put(url.toString(), connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"),
+                    getExpiry(connection, System.currentTimeMillis()), body);
+        }
+        catch(IOException e) {
+            //Image is still shown if cache can't be written
+            return body;
+        }
+    }
+
+    /**
+     * Connects to URL, following redirects
+     * @param url URL to request
+     * @param cached Cached response to revalidate, null if none
+     * @return Connection with 200 OK response, or 304 Not Modified if cached response is
+     * still valid
+     * @throws IOException If request fails or response has other status
+     */
+    private HttpURLConnection connect(URL url, ImageDiskCache.Snapshot cached)
+            throws IOException {
+        for(int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            if(mCancelled)
+                throw new IOException("Request was cancelled");
+
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(mConnectTimeout);
+            connection.setReadTimeout(mReadTimeout);
+            //Redirects to other protocol aren't followed by connection itself
+            connection.setInstanceFollowRedirects(false);
+            if(cached != null && cached.getEtag() != null)
+                connection.setRequestProperty("If-None-Match", cached.getEtag());
+            if(cached != null && cached.getLastModified() != null)
+                connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            mConnection = connection;
+
+            int code = connection.getResponseCode();
+            if(code == HttpURLConnection.HTTP_OK
+                    || (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null))
+                return connection;
+
+            //Headers can't be read once connection is disconnected
+            String location = connection.getHeaderField("Location");
+            connection.disconnect();
+            if(code / 100 != 3 || code == HttpURLConnection.HTTP_NOT_MODIFIED
+                    || location == null)
+                throw new IOException("HTTP " + code + " from " + url);
+            url = new URL(url, location);
+        }
+        throw new IOException("Too many redirects");
+    }
+
+    /**
+     * Gets time until which response may be used without revalidation, following
+     * Cache-Control max-age, then Expires, then 10% of time since Last-Modified
+     * @param connection Connection with response
+     * @param now Current time in milliseconds
+     * @return Expiry time in milliseconds
+     */
+    static long getExpiry(HttpURLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if(hasDirective(cacheControl, "no-cache"))
+            return 0;
+        if(cacheControl != null) {
+            for(String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.ROOT);
+                if(directive.startsWith("max-age=")) {
+                    try {
+                        return now + Long.parseLong(directive.substring(8)) * 1000;
+                    }
+                    catch(NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+
+        long expires = connection.getHeaderFieldDate("Expires", -1);
+        if(expires >= 0)
+            return expires;
+        long lastModified = connection.getHeaderFieldDate("Last-Modified", -1);
+        if(lastModified >= 0 && lastModified < now)
+            return now + Math.min(MAX_HEURISTIC_FRESHNESS, (now - lastModified) / 10);
+        return now + DEFAULT_FRESHNESS;
+    }
+
+    /**
+     * Checks if Cache-Control header has directive
+     * @param cacheControl Value of header, may be null
+     * @param directive Directive without value, e.g. "no-store"
+     * @return True if header has directive
+     */
+    private static boolean hasDirective(String cacheControl, String directive) {
+        if(cacheControl == null)
+            return false;
+        for(String part : cacheControl.split(",")) {
+            if(part.trim().equalsIgnoreCase(directive))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets length of response body
+     * @param connection Connection with response
+     * @return Length in bytes, -1 if unknown
+     */
+    private static long getContentLength(HttpURLConnection connection) {
+        String length = connection.getHeaderField("Content-Length");
+        try {
+            return length == null ? -1 : Long.parseLong(length.trim());
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Aborts running request, its stream fails on next read. Source can't be used afterwards
+     */
+    public void cancel() {
+        mCancelled = true;
+        HttpURLConnection connection = mConnection;
+        if(connection != null)
+            connection.disconnect();
+    }
+
+    /**
+     * Receiver of download progress
+     */
+    public interface ProgressListener {
+        /**
+         * Called as bytes arrive and once at end of stream
+         * @param bytesRead Number of bytes read so far
+         * @param totalBytes Length of response, -1 if unknown
+         */
+        void onProgress(long bytesRead, long totalBytes);
+    }
+
+    /**
+     * Response body stream that counts read bytes
+     */
+    private static class ProgressStream extends FilterInputStream {
+        /**
+         * Connection stream belongs to, null for cached response
+         */
+        private final HttpURLConnection mConnection;
+
+        /**
+         * Receiver of download progress, may be null
+         */
+        private final ProgressListener mListener;
+
+        /**
+         * Length of response, -1 if unknown
+         */
+        private final long mTotal;
+
+        /**
+         * Bytes read so far and at last report
+         */
+        private long mRead, mReported;
+
+        ProgressStream(InputStream in, long total, ProgressListener listener,
+                       HttpURLConnection connection) {
+            super(in);
+            mTotal = total;
+            mListener = listener;
+            mConnection = connection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            count(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                if(mConnection != null)
+                    mConnection.disconnect();
+            }
+        }
+
+        /**
+         * Counts read bytes and reports progress every few kilobytes and at end
+         * @param read Number of bytes read, -1 at end of stream
+         */
+        private void count(int read) {
+            if(read > 0)
+                mRead += read;
+            if(mListener != null && (read < 0 || mRead - mReported >= PROGRESS_STEP)) {
+                mReported = mRead;
+                mListener.onProgress(mRead, mTotal);
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.imagefilters;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded disk cache of images loaded from URLs. Each entry is one file named by
+ * SHA-256 of its URL, holding validators and expiry time followed by response body.
+ * Entries are written to temporary file and renamed into place, so readers always see
+ * complete entry, and open readers keep their file when it is replaced or evicted.
+ * Least recently used entries are evicted first. Thread-safe
+ */
+public class ImageDiskCache {
+    /**
+     * Mark at start of every entry file
+     */
+    private static final int MAGIC = 0x49444331;
+
+    /**
+     * Offset of expiry time in entry file
+     */
+    private static final int EXPIRY_OFFSET = 4;
+
+    /**
+     * Cache used by application
+     */
+    private static ImageDiskCache sDefault;
+
+    /**
+     * Directory holding entry files
+     */
+    private final File mDir;
+
+    /**
+     * Maximum total size of entry files in bytes
+     */
+    private final long mMaxBytes;
+
+    /**
+     * Sizes of entries by key, least recently used first, null until directory is read
+     */
+    private LinkedHashMap<String, Long> mIndex;
+
+    /**
+     * Total size of entry files in bytes
+     */
+    private long mSize;
+
+    /**
+     * Creates cache
+     * @param dir Directory to keep entries in, created if missing
+     * @param maxBytes Maximum total size of entries in bytes
+     */
+    public ImageDiskCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets cache used by application, kept in its cache directory
+     * @param context Any Context of application
+     * @return Cache shared by all components of application
+     */
+    public static synchronized ImageDiskCache get(Context context) {
+        if(sDefault == null) {
+            long maxBytes = context.getResources().getInteger(R.integer.url_cache_size_mb)
+                    * 1024L * 1024L;
+            sDefault = new ImageDiskCache(new File(context.getCacheDir(), "images"), maxBytes);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Opens entry of URL for reading
+     * @param url URL image was loaded from
+     * @return Snapshot of entry that must be closed, or null if URL isn't cached
+     */
+    public Snapshot get(String url) {
+        String key = keyOf(url);
+        FileInputStream in;
+        synchronized(this) {
+            readIndex();
+            if(mIndex.get(key) == null)
+                return null;
+            File file = new File(mDir, key);
+            try {
+                in = new FileInputStream(file);
+            }
+            catch(IOException e) {
+                remove(key);
+                return null;
+            }
+            //Keeps recency across restarts, as index is rebuilt from modification times
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        try {
+            DataInputStream header = new DataInputStream(in);
+            if(header.readInt() != MAGIC)
+                throw new IOException("Not a cache entry");
+            long expiresAt = header.readLong();
+            if(!header.readUTF().equals(url))
+                throw new IOException("Entry belongs to other URL");
+            String etag = header.readUTF(), lastModified = header.readUTF();
+            long length = in.getChannel().size() - in.getChannel().position();
+            return new Snapshot(key, expiresAt, etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified, length, in);
+        }
+        catch(IOException e) {
+            try {
+                in.close();
+            }
+            catch(IOException ignored) {
+                //Entry is dropped anyway
+            }
+            synchronized(this) {
+                remove(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores response body as it is read. Entry is written when returned stream is closed,
+     * reading rest of body if it wasn't read to end, and dropped if body can't be read
+     * @param url URL image is loaded from
+     * @param etag ETag of response, null if none
+     * @param lastModified Last-Modified of response, null if none
+     * @param expiresAt Time in milliseconds until which entry is used without revalidation
+     * @param body Stream of response body
+     * @return Stream of the same body that writes entry as it is read
+     * @throws IOException If entry can't be created
+     */
+    public InputStream put(String url, String etag, String lastModified, long expiresAt,
+                           InputStream body) throws IOException {
+        String key = keyOf(url);
+        //Stale temporary files are cleaned up before this one is created
+        synchronized(this) {
+            readIndex();
+        }
+        if(!mDir.isDirectory() && !mDir.mkdirs())
+            throw new IOException("Can't create " + mDir);
+        File temp = File.createTempFile(key, ".tmp", mDir);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(expiresAt);
+            out.writeUTF(url);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+        }
+        catch(IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        return new WritingStream(body, key, temp, out);
+    }
+
+    /**
+     * Extends validity of entry after server confirmed it is unchanged
+     * @param snapshot Snapshot of entry
+     * @param expiresAt New time in milliseconds until which entry is used without revalidation
+     */
+    public synchronized void refresh(Snapshot snapshot, long expiresAt) {
+        File file = new File(mDir, snapshot.mKey);
+        //Entry evicted meanwhile is fetched again next time
+        if(!file.isFile())
+            return;
+        try(RandomAccessFile entry = new RandomAccessFile(file, "rw")) {
+            entry.seek(EXPIRY_OFFSET);
+            entry.writeLong(expiresAt);
+        }
+        catch(IOException e) {
+            remove(snapshot.mKey);
+        }
+    }
+
+    /**
+     * @return Total size of entries in bytes
+     */
+    public synchronized long size() {
+        readIndex();
+        return mSize;
+    }
+
+    /**
+     * Moves written entry into place and evicts least recently used entries over size limit
+     * @param key Key of entry
+     * @param temp Written entry file
+     */
+    private synchronized void commit(String key, File temp) {
+        readIndex();
+        File file = new File(mDir, key);
+        if(!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        Long old = mIndex.remove(key);
+        if(old != null)
+            mSize -= old;
+        mIndex.put(key, file.length());
+        mSize += file.length();
+
+        Iterator<Map.Entry<String, Long>> eldest = mIndex.entrySet().iterator();
+        while(mSize > mMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(mDir, entry.getKey()).delete();
+            mSize -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops entry
+     * @param key Key of entry
+     */
+    private void remove(String key) {
+        Long size = mIndex.remove(key);
+        if(size != null)
+            mSize -= size;
+        new File(mDir, key).delete();
+    }
+
+    /**
+     * Builds index from entry files once, ordered by their modification times.
+     * Temporary files left by interrupted writes are deleted
+     */
+    private void readIndex() {
+        if(mIndex != null)
+            return;
+        mIndex = new LinkedHashMap<>(16, 0.75f, true);
+        File[] files = mDir.listFiles();
+        if(files == null)
+            return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for(File file : files) {
+            if(file.getName().endsWith(".tmp"))
+                file.delete();
+            else {
+                mIndex.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+    }
+
+    /**
+     * Gets name of entry file of URL
+     * @param url URL image is loaded from
+     * @return Hex SHA-256 of URL
+     */
+    static String keyOf(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for(byte b : hash)
+                key.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            return key.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Cached entry opened for reading. Its body stays readable when entry is replaced
+     * or evicted meanwhile
+     */
+    public static class Snapshot {
+        /**
+         * Key of entry
+         */
+        private final String mKey;
+
+        /**
+         * Time in milliseconds until which entry is used without revalidation
+         */
+        private final long mExpiresAt;
+
+        /**
+         * Validators of cached response, null if server sent none
+         */
+        private final String mEtag, mLastModified;
+
+        /**
+         * Length of body in bytes
+         */
+        private final long mLength;
+
+        /**
+         * Stream of body
+         */
+        private final InputStream mBody;
+
+        private Snapshot(String key, long expiresAt, String etag, String lastModified,
+                         long length, InputStream body) {
+            mKey = key;
+            mExpiresAt = expiresAt;
+            mEtag = etag;
+            mLastModified = lastModified;
+            mLength = length;
+            mBody = body;
+        }
+
+        /**
+         * Checks if entry can be used without asking server
+         * @param now Current time in milliseconds
+         * @return True if entry hasn't expired
+         */
+        public boolean isFresh(long now) {
+            return now < mExpiresAt;
+        }
+
+        /**
+         * @return ETag of cached response, null if none
+         */
+        public String getEtag() {
+            return mEtag;
+        }
+
+        /**
+         * @return Last-Modified of cached response, null if none
+         */
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * @return Length of body in bytes
+         */
+        public long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return Stream of body, closing it closes snapshot
+         */
+        public InputStream getBody() {
+            return mBody;
+        }
+
+        /**
+         * Releases snapshot without reading body
+         */
+        public void close() {
+            try {
+                mBody.close();
+            }
+            catch(IOException e) {
+                //Nothing to release
+            }
+        }
+    }
+
+    /**
+     * Response body stream that copies read bytes to entry file
+     */
+    private class WritingStream extends FilterInputStream {
+        /**
+         * Key of entry
+         */
+        private final String mKey;
+
+        /**
+         * Entry file being written
+         */
+        private final File mTemp;
+
+        /**
+         * Stream to entry file, null once writing failed
+         */
+        private DataOutputStream mOut;
+
+        WritingStream(InputStream body, String key, File temp, DataOutputStream out) {
+            super(body);
+            mKey = key;
+            mTemp = temp;
+            mOut = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0)
+                write(new byte[] { (byte)b }, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0)
+                write(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            //Skipped bytes are read, so that entry stays complete
+            byte[] skipped = new byte[(int)Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(0, read);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                //Decoders may stop before end of body, entry must hold all of it
+                byte[] rest = new byte[8192];
+                while(mOut != null && read(rest, 0, rest.length) >= 0) {
+                    //Bytes are copied to entry by read
+                }
+                if(mOut != null) {
+                    mOut.close();
+                    commit(mKey, mTemp);
+                    mOut = null;
+                }
+            }
+            catch(IOException e) {
+                abandon();
+            }
+            finally {
+                super.close();
+            }
+        }
+
+        /**
+         * Copies bytes to entry file, abandoning entry if it can't be written
+         * @param b Bytes read
+         * @param off Offset of read bytes
+         * @param len Number of read bytes
+         */
+        private void write(byte[] b, int off, int len) {
+            if(mOut == null)
+                return;
+            try {
+                mOut.write(b, off, len);
+            }
+            catch(IOException e) {
+                abandon();
+            }
+        }
+
+        /**
+         * Drops entry file
+         */
+        private void abandon() {
+            if(mOut == null)
+                return;
+            try {
+                mOut.close();
+            }
+            catch(IOException ignored) {
+                //File is deleted anyway
+            }
+            mOut = null;
+            mTemp.delete();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Passes images fetched in memory from one Activity to the next, as bitmaps are too
+ * large for Intent extras. Holds only the latest handed off images, so they stay
+ * available when receiving Activity is recreated, e.g. on rotation
+ */
+public final class ImageHandoff {
+    /**
+     * Held images by address they were loaded from
+     */
+    private static Map<Uri, Bitmap> sImages = Collections.emptyMap();
+
+    private ImageHandoff() {
+    }
+
+    /**
+     * Holds image, replacing previously held ones
+     * @param uri Address image was loaded from
+     * @param bitmap Loaded image
+     */
+    public static void put(Uri uri, Bitmap bitmap) {
+        put(Collections.singletonMap(uri, bitmap));
+    }
+
+    /**
+     * Holds images, replacing previously held ones
+     * @param images Loaded images by address they were loaded from
+     */
+    public static synchronized void put(Map<Uri, Bitmap> images) {
+        sImages = new LinkedHashMap<>(images);
+    }
+
+    /**
+     * Gets held image
+     * @param uri Address image was loaded from
+     * @return Held image, or null if image of that address isn't held,
+     * e.g. after process was restarted
+     */
+    public static synchronized Bitmap get(Uri uri) {
+        return sImages.get(uri);
+    }
+}
@@ -0,0 +1,181 @@
+package com.imagefilters;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Saves images to MediaStore by encoding them once straight into stream of new row.
+ * Row stays pending (hidden from other apps) until encoding is finished
+ */
+public final class ImageSaver {
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = "ImageSaver";
+
+    /**
+     * Encoded image format, in same order as save_formats string array
+     */
+    public enum Format {
+        JPEG("image/jpeg", "jpg"),
+        PNG("image/png", "png"),
+        WEBP_LOSSY("image/webp", "webp"),
+        WEBP_LOSSLESS("image/webp", "webp");
+
+        /**
+         * MIME type of encoded image
+         */
+        private final String mMimeType;
+
+        /**
+         * File name extension of encoded image
+         */
+        private final String mExtension;
+
+        Format(String mimeType, String extension) {
+            mMimeType = mimeType;
+            mExtension = extension;
+        }
+
+        /**
+         * Gets MIME type of encoded image
+         * @return MIME type
+         */
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        /**
+         * Gets file name extension of encoded image
+         * @return Extension without dot
+         */
+        public String getExtension() {
+            return mExtension;
+        }
+
+        /**
+         * Checks if quality changes result of encoding
+         * @return True for lossy formats
+         */
+        public boolean usesQuality() {
+            return this == JPEG || this == WEBP_LOSSY;
+        }
+
+        /**
+         * Gets format to pass to Bitmap.compress
+         * @return Compress format for current API level
+         */
+        @SuppressWarnings("deprecation")
+        Bitmap.CompressFormat getCompressFormat() {
+            switch(this) {
+                case PNG:
+                    return Bitmap.CompressFormat.PNG;
+                case WEBP_LOSSY:
+                    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                            ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+                case WEBP_LOSSLESS:
+                    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                            ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP;
+                default:
+                    return Bitmap.CompressFormat.JPEG;
+            }
+        }
+
+        /**
+         * Gets quality to pass to Bitmap.compress
+         * @param quality Quality chosen by user (must be [0, 100])
+         * @return Quality for current API level
+         */
+        int getCompressQuality(int quality) {
+            //Legacy WEBP format is lossless only at quality 100
+            if(this == WEBP_LOSSLESS && Build.VERSION.SDK_INT < Build.VERSION_CODES.R)
+                return 100;
+            return quality;
+        }
+    }
+
+    private ImageSaver() {}
+
+    /**
+     * Encodes image once into new MediaStore row, must not be called on main thread
+     * @param resolver Resolver to insert row with
+     * @param image Bitmap of image to save
+     * @param format Encoded image format
+     * @param quality Quality of lossy formats (must be [0, 100])
+     * @return Uri of saved image
+     * @throws IOException If row can't be created or written
+     */
+    public static Uri save(ContentResolver resolver, Bitmap image, Format format,
+                           int quality) throws IOException {
+        return save(resolver, format, out -> {
+            if(!image.compress(format.getCompressFormat(),
+                    format.getCompressQuality(quality), out))
+                throw new IOException("Can't encode image as " + format);
+        });
+    }
+
+    /**
+     * Writes encoded image into new MediaStore row, publishing it only if writing succeeds
+     * @param resolver Resolver to insert row with
+     * @param format Format image is encoded in
+     * @param encoder Code that writes encoded image
+     * @return Uri of saved image
+     * @throws IOException If row can't be created or written
+     */
+    public static Uri save(ContentResolver resolver, Format format,
+                           Encoder encoder) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME,
+                System.currentTimeMillis() + "." + format.getExtension());
+        values.put(MediaStore.Images.Media.MIME_TYPE, format.getMimeType());
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+        }
+
+        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if(uri == null)
+            throw new IOException("Can't create MediaStore row");
+
+        try {
+            try(OutputStream out = resolver.openOutputStream(uri)) {
+                if(out == null)
+                    throw new IOException("Can't open " + uri);
+                encoder.encode(out);
+            }
+
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                values.clear();
+                values.put(MediaStore.Images.Media.IS_PENDING, 0);
+                resolver.update(uri, values, null, null);
+            }
+            Log.i(TAG, "Saved image to " + uri);
+            return uri;
+        }
+        catch(IOException | RuntimeException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+    }
+
+    /**
+     * Code that encodes image into stream
+     */
+    public interface Encoder {
+        /**
+         * Writes encoded image
+         * @param out Stream of MediaStore row, closed by caller
+         * @throws IOException If image can't be encoded or written
+         */
+        void encode(OutputStream out) throws IOException;
+    }
+}
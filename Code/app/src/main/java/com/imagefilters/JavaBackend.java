@@ -0,0 +1,95 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+
+/**
+ * Backend that runs filters with pure Java {@link PixelEngine}, usable where
+ * RenderScript isn't available (e.g. in tests). Pixel buffers are reused while
+ * image size stays the same
+ */
+public class JavaBackend implements FilterBackend {
+    /**
+     * Engine that applies filters
+     */
+    private final PixelEngine mEngine = new PixelEngine();
+
+    /**
+     * Pixels of source and result image of last used size
+     */
+    private int[] mSrcPixels, mDstPixels;
+
+    @Override
+    public void blur(Bitmap src, Bitmap dst, float blurRadius) {
+        int width = src.getWidth(), height = src.getHeight();
+        readPixels(src);
+        mEngine.blur(mSrcPixels, mDstPixels, width, height, blurRadius);
+        dst.setPixels(mDstPixels, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Applies blur of any radius in time independent of radius, approximating
+     * Gaussian by box passes
+     * @param src Bitmap of image to filter
+     * @param dst Bitmap of same size as src to write result to, may be src
+     * @param blurRadius Radius of blur
+     */
+    public void boxBlur(Bitmap src, Bitmap dst, float blurRadius) {
+        int width = src.getWidth(), height = src.getHeight();
+        readPixels(src);
+        mEngine.boxBlur(mSrcPixels, mSrcPixels, width, height, blurRadius);
+        dst.setPixels(mSrcPixels, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Finishes unsharp mask, adding difference between image and its blurred copy
+     * @param src Bitmap of image to filter
+     * @param blurred Bitmap of same size holding blurred image, receives result
+     * @param amount Strength of sharpening, 1 doubles local contrast
+     * @param threshold Smallest difference of channel from blurred image that is sharpened
+     */
+    public void unsharpCombine(Bitmap src, Bitmap blurred, float amount, float threshold) {
+        int width = src.getWidth(), height = src.getHeight();
+        readPixels(src);
+        blurred.getPixels(mDstPixels, 0, width, 0, 0, width, height);
+        mEngine.unsharpCombine(mSrcPixels, mDstPixels, mDstPixels, width, height,
+                amount, threshold);
+        blurred.setPixels(mDstPixels, 0, width, 0, 0, width, height);
+    }
+
+    @Override
+    public void sharpen(Bitmap src, Bitmap dst, float sharpRadius) {
+        int width = src.getWidth(), height = src.getHeight();
+        readPixels(src);
+        mEngine.sharpen(mSrcPixels, mDstPixels, width, height, sharpRadius);
+        dst.setPixels(mDstPixels, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Gathers histograms of image in one parallel pass
+     * @param src Bitmap of image
+     * @return Statistics of image
+     */
+    public ImageStats statistics(Bitmap src) {
+        readPixels(src);
+        return mEngine.statistics(mSrcPixels, src.getWidth(), src.getHeight());
+    }
+
+    @Override
+    public void release() {
+        mEngine.shutdown();
+        mSrcPixels = mDstPixels = null;
+    }
+
+    /**
+     * Reads pixels of source, recreating buffers if size changed
+     * @param src Bitmap of image to filter
+     */
+    private void readPixels(Bitmap src) {
+        int width = src.getWidth(), height = src.getHeight();
+        if(mSrcPixels == null || mSrcPixels.length != width * height) {
+            mSrcPixels = new int[width * height];
+            mDstPixels = new int[width * height];
+        }
+        src.getPixels(mSrcPixels, 0, width, 0, 0, width, height);
+    }
+}
@@ -0,0 +1,110 @@
+package com.imagefilters;
+
+/**
+ * Histogram of latencies with fixed memory. Values are counted in log-linear buckets of
+ * microseconds (16 buckets per power of two), so percentiles are exact below 16 us
+ * and within 1/16 of true value above. Not thread-safe
+ */
+public class LatencyHistogram {
+    /**
+     * Number of buckets per power of two, as power of two
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * Number of buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Counts of values per bucket, enough for any positive long
+     */
+    private final long[] mCounts = new long[SUB_BUCKETS * (64 - SUB_BITS)];
+
+    /**
+     * Number of recorded values
+     */
+    private long mCount;
+
+    /**
+     * Sum and maximum of recorded values in nanoseconds
+     */
+    private long mTotalNanos, mMaxNanos;
+
+    /**
+     * Records one latency
+     * @param nanos Latency in nanoseconds, negative is counted as 0
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        mCounts[bucketOf(nanos / 1000)]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return Largest recorded latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * @return Mean latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    /**
+     * Gets latency below which given part of recorded values lie
+     * @param percentile Percentile (must be (0, 100])
+     * @return Upper bound of bucket holding percentile in nanoseconds,
+     * at most the maximum, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if(mCount == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * mCount)), seen = 0;
+        for(int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if(seen >= rank)
+                return Math.min(mMaxNanos, upperBoundOf(i) * 1000 + 999);
+        }
+        return mMaxNanos;
+    }
+
+    /**
+     * Finds bucket of value
+     * @param micros Value in microseconds, not negative
+     * @return Index of bucket
+     */
+    static int bucketOf(long micros) {
+        if(micros < SUB_BUCKETS)
+            return (int)micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int)(micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets largest value counted in bucket
+     * @param bucket Index of bucket
+     * @return Value in microseconds
+     */
+    static long upperBoundOf(int bucket) {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lower = (long)(SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -9,25 +9,36 @@ import androidx.core.content.ContextCompat;
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.util.Patterns;
+import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Activity to choose image to filter
@@ -62,13 +73,17 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Permission names in String[] format
      */
-    private final String[] READ_PERMISSION = { Manifest.permission.READ_EXTERNAL_STORAGE },
-        WRITE_PERMISSION = { Manifest.permission.WRITE_EXTERNAL_STORAGE };
+    private final String[] READ_PERMISSION = { Manifest.permission.READ_EXTERNAL_STORAGE };
 
     /**
-     * Download ID to check if DownloadManager finished loading our image
+     * Timeouts of connecting and of waiting for next bytes in milliseconds
      */
-    private long mResultCode;
+    private static final int CONNECT_TIMEOUT = 10000, READ_TIMEOUT = 15000;
+
+    /**
+     * Resolution of determinate progress bar
+     */
+    private static final int PROGRESS_MAX = 1000;
 
     /**
      * Tag for logging
@@ -76,51 +91,56 @@ public class MainActivity extends AppCompatActivity {
     private final String TAG = "MainActivity";
 
     /**
-     * Manager that downloads images from URL
+     * Maximum number of images downloaded at once
      */
-    private DownloadManager mDownloadManager;
+    private static final int MAX_PARALLEL_DOWNLOADS = 3;
 
     /**
-     * Callback to pass downloaded image from gallery to FilterImage Activity
+     * Runs downloads from URLs, several at once
      */
-    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            Log.i(TAG, "Processing finished download");
-            if(mResultCode==intent
-                    .getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1)) {
-                Intent data = new Intent();
-                Uri path = mDownloadManager.getUriForDownloadedFile(mResultCode);
-                if(path!=null) {
-                    data.setData(path);
-                    data.setClass(MainActivity.this, FilterImage.class);
-                    startActivity(data);
-                }
-                else {
-                    Log.w(TAG, getString(R.string.load_url_error));
-                    Toast.makeText(MainActivity.this,
-                            getString(R.string.load_url_error),
-                            Toast.LENGTH_LONG).show();
-                    changeLoadMode(false);
-                }
-            }
-        }
-    };
+    private DownloadCoordinator<Bitmap> mDownloader;
+
+    /**
+     * Running downloads by id, used only on main thread
+     */
+    private final Map<Long, UrlDownload> mDownloads = new HashMap<>();
+
+    /**
+     * Downloaded images waiting to be filtered one by one in order they finished, used
+     * only on main thread
+     */
+    private final ArrayDeque<Map.Entry<Uri, Bitmap>> mDownloaded = new ArrayDeque<>();
+
+    /**
+     * True while Activity is in foreground, used only on main thread
+     */
+    private boolean mResumed;
+
+    /**
+     * View to interact with number of running downloads
+     */
+    private TextView mDownloadStatus;
+
+    /**
+     * Images of default URL fetched ahead, so that one is shown without waiting
+     */
+    private PrefetchBuffer<Bitmap> mDefaultPrefetch;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        MetricsRegistry.get().setMemoryProbe(new NativeMemoryProbe());
 
         setupViews();
 
         //Getting default URL to use for third load option
         DEFAULT_URL = getString(R.string.default_url);
 
-        //Registering BroadcastReceiver to process finished download from URL
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(DownloadManager.ACTION_DOWNLOAD_COMPLETE);
-        registerReceiver(mReceiver, filter);
+        mDownloader = new DownloadCoordinator<>(MAX_PARALLEL_DOWNLOADS, this::runOnUiThread);
+        int maxSize = getResources().getInteger(R.integer.max_working_size);
+        mDefaultPrefetch = new PrefetchBuffer<>(() -> fetchDefaultImage(maxSize),
+                this::allowsPrefetch, getResources().getInteger(R.integer.prefetch_count));
 
         mDownloadGalleryButton.setOnClickListener(e -> {
             //Checking if we have permission to read storage
@@ -142,32 +162,15 @@ public class MainActivity extends AppCompatActivity {
                         getString(R.string.invalid_url), Toast.LENGTH_LONG).show();
             }
             else {
-                //Checking if we have permission to write to storage
-                if(hasPermission(this, WRITE_PERMISSION[0], TAG)) {
-                    Log.i(TAG, "Permission granted, starting download from user URL");
-
-                    //Start DownloadService to download image
-                    downloadImageByUrl(Uri.parse(mUrlText.getText().toString()));
-                }
-                else {
-                    Log.i(TAG, "Permission denied, asking for permission");
-                    requestPermissions(this, WRITE_PERMISSION, TAG);
-                }
+                //Image is kept in memory only, so no storage permission is needed
+                Log.i(TAG, "Starting download from user URL");
+                downloadImageByUrl(Uri.parse(mUrlText.getText().toString()));
             }
         });
 
         nDownloadDefaultUrlButton.setOnClickListener(e -> {
-            //Checking if we have permission to write to storage
-            if(hasPermission(this, WRITE_PERMISSION[0], TAG)) {
-                Log.i(TAG, "Permission granted, starting download from default URL");
-
-                //Start DownloadService to download image
-                downloadImageByUrl(Uri.parse(DEFAULT_URL));
-            }
-            else {
-                Log.i(TAG, "Permission denied, asking for permission");
-                requestPermissions(this, WRITE_PERMISSION, TAG);
-            }
+            Log.i(TAG, "Starting download from default URL");
+            downloadImageByUrl(Uri.parse(DEFAULT_URL));
         });
     }
 
@@ -175,12 +178,25 @@ public class MainActivity extends AppCompatActivity {
     public void onResume() {
         super.onResume();
         changeLoadMode(false);
+        showDownloads();
+        mDefaultPrefetch.resume();
+        mResumed = true;
+        //Images that finished while another one was filtered are passed on return
+        startFilteringNext();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mResumed = false;
+        mDefaultPrefetch.pause();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        unregisterReceiver(mReceiver);
+        mDownloader.shutdown();
+        mDefaultPrefetch.shutdown();
     }
 
     /**
@@ -193,6 +209,7 @@ public class MainActivity extends AppCompatActivity {
         nDownloadDefaultUrlButton = findViewById(R.id.download_url_default_button);
         mUrlText = findViewById(R.id.download_url_value);
         mProgressBar = findViewById(R.id.progress_loader);
+        mDownloadStatus = findViewById(R.id.download_status);
         setButtonsMode(true);
         setProgressBarMode(false);
     }
@@ -276,6 +293,8 @@ public class MainActivity extends AppCompatActivity {
         Intent in = new Intent(
                 Intent.ACTION_PICK,
                 MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        //Several images can be picked to apply the same filters to all of them
+        in.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         getImage.launch(in);
     }
 
@@ -289,6 +308,11 @@ public class MainActivity extends AppCompatActivity {
                     Log.i(TAG, "Passing image URI from gallery to FilterImage Activity");
                     Intent dataToPass = result.getData();
                     assert dataToPass != null;
+                    //Multiple selection may come only as clip data
+                    ClipData clip = dataToPass.getClipData();
+                    if(dataToPass.getData() == null && clip != null && clip.getItemCount() > 0)
+                        dataToPass.setData(clip.getItemAt(0).getUri());
+                    dataToPass.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
                     dataToPass.setClass(MainActivity.this, FilterImage.class);
                     startActivity(dataToPass);
                 }
@@ -302,34 +326,234 @@ public class MainActivity extends AppCompatActivity {
     );
 
     /**
-     * Starts download from URL
-     * @param source URL from where to download image
+     * Enqueues download from URL, several downloads run at once and buttons stay enabled
+     * to enqueue more. Images are decoded while they download and each one is passed to
+     * FilterImage Activity in memory as soon as it finishes, or once user comes back from
+     * filtering image that finished earlier. Only gallery selection filters batch. Images of
+     * other than default URL are kept in disk cache, so repeated loads don't download again
+     * @param source URL from where to download image, "http://" is assumed if it has no scheme
      */
     private void downloadImageByUrl(Uri source) {
-        //Disabling buttons and showing progress bar
+        Uri url = source.getScheme() == null ? Uri.parse("http://" + source) : source;
+        if(source.toString().equals(DEFAULT_URL)) {
+            Bitmap prefetched = mDefaultPrefetch.take();
+            if(prefetched != null) {
+                Log.i(TAG, "Using prefetched image of default URL");
+                onImageDownloaded(url, prefetched);
+                return;
+            }
+        }
+
+        //Default URL gives random image on every request, so it is never cached
+        ImageDiskCache cache = source.toString().equals(DEFAULT_URL)
+                ? null : ImageDiskCache.get(this);
+        UrlDownload download = new UrlDownload(url, cache,
+                getResources().getInteger(R.integer.max_working_size));
+        long id = mDownloader.enqueue(download, new DownloadCoordinator.Consumer<Bitmap>() {
+            @Override
+            public void onDownloaded(long id, Bitmap result) {
+                mDownloads.remove(id);
+                onImageDownloaded(url, result);
+            }
+
+            @Override
+            public void onFailed(long id, Exception error) {
+                mDownloads.remove(id);
+                Log.w(TAG, "Error downloading " + url, error);
+                Toast.makeText(MainActivity.this,
+                        getString(R.string.load_url_error),
+                        Toast.LENGTH_LONG).show();
+                showDownloads();
+            }
+        });
+        mDownloads.put(id, download);
+        Log.i(TAG, "Enqueued download " + id + " from " + url);
+        showDownloads();
+    }
+
+    /**
+     * Queues downloaded image and passes it to filtering unless another image is filtered.
+     * Same URL may give other image each time, e.g. default one, so every image is queued
+     * on its own even if its URL is already waiting. Package-private for tests
+     * @param url URL image was downloaded from
+     * @param image Decoded image
+     */
+    void onImageDownloaded(Uri url, Bitmap image) {
+        mDownloaded.add(new AbstractMap.SimpleImmutableEntry<>(url, image));
+        startFilteringNext();
+    }
+
+    /**
+     * Gets images waiting to be filtered, used by tests
+     * @return Images in order they will be filtered
+     */
+    List<Bitmap> getQueuedImages() {
+        List<Bitmap> images = new ArrayList<>();
+        for(Map.Entry<Uri, Bitmap> entry : mDownloaded)
+            images.add(entry.getValue());
+        return images;
+    }
+
+    /**
+     * Passes the earliest downloaded image alone to FilterImage Activity. Images stay
+     * queued while this Activity isn't in foreground, so that each one is filtered on its
+     * own after user comes back instead of piling up screens or forming batch
+     */
+    private void startFilteringNext() {
+        showDownloads();
+        if(mDownloaded.isEmpty() || !mResumed)
+            return;
+
+        //Handoff holds only this image, so its URL alone identifies it
+        Map.Entry<Uri, Bitmap> next = mDownloaded.poll();
+        ImageHandoff.put(next.getKey(), next.getValue());
+        Intent data = new Intent();
+        data.setData(next.getKey());
         changeLoadMode(true);
+        data.setClass(MainActivity.this, FilterImage.class);
+        startActivity(data);
+    }
+
+    /**
+     * Shows number of running downloads and their combined progress
+     */
+    private void showDownloads() {
+        int running = mDownloader.getInFlightCount();
+        mDownloadStatus.setVisibility(running > 0 ? View.VISIBLE : View.GONE);
+        mDownloadStatus.setText(getString(R.string.downloads_running, running,
+                mDownloaded.size()));
+        setProgressBarMode(running > 0);
+        if(running == 0)
+            return;
+
+        long read = 0, total = 0;
+        for(UrlDownload download : mDownloads.values()) {
+            if(download.mTotal <= 0) {
+                //Length of some image is unknown
+                total = 0;
+                break;
+            }
+            read += download.mRead;
+            total += download.mTotal;
+        }
+        mProgressBar.setIndeterminate(total <= 0);
+        if(total > 0) {
+            mProgressBar.setMax(PROGRESS_MAX);
+            mProgressBar.setProgress((int)Math.min(PROGRESS_MAX, read * PROGRESS_MAX / total));
+        }
+    }
+
+    /**
+     * Downloads image of default URL ahead, called on prefetching thread
+     * @param maxSize Maximum longest side in pixels
+     * @return Decoded image
+     * @throws IOException If image can't be downloaded or decoded
+     */
+    private Bitmap fetchDefaultImage(int maxSize) throws IOException {
+        MetricsRegistry.Timer timer = MetricsRegistry.get().start("image.prefetch");
+        try(InputStream in = new HttpSource(CONNECT_TIMEOUT, READ_TIMEOUT)
+                .open(new URL(DEFAULT_URL), null)) {
+            Bitmap fetched = BitmapLoader.decodeStream(in, maxSize);
+            timer.stop(fetched.getWidth(), fetched.getHeight());
+            return fetched;
+        }
+        catch(IOException e) {
+            Log.w(TAG, "Error prefetching " + DEFAULT_URL, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if images may be fetched ahead on current network,
+     * following prefetch_network_policy
+     * @return True if connected network is allowed by policy
+     */
+    private boolean allowsPrefetch() {
+        ConnectivityManager manager =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if(!isConnected(manager))
+            return false;
+        switch(getString(R.string.prefetch_network_policy)) {
+            case "any":
+                return true;
+            case "unmetered":
+                return !manager.isActiveNetworkMetered();
+            default:
+                return false;
+        }
+    }
 
-        //Setting up DownloadManager that will do the download
-        mDownloadManager = (DownloadManager) getSystemService(Context.DOWNLOAD_SERVICE);
-
-        //Setting up filename of result image
-        String filename = ((Long)System.currentTimeMillis()).toString() + ".jpg";
-
-        //Formulating request to download
-        DownloadManager.Request request =
-                new DownloadManager.Request(source);
-        request.setAllowedNetworkTypes(DownloadManager.Request.NETWORK_WIFI |
-                DownloadManager.Request.NETWORK_MOBILE)
-                .setAllowedOverRoaming(false)
-                .setTitle(filename)
-                .setMimeType("image/jpeg")
-                .setNotificationVisibility(
-                        DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED)
-                .setDestinationInExternalPublicDir(Environment.DIRECTORY_DOWNLOADS,
-                        File.separator + filename)
-                .allowScanningByMediaScanner();
-
-        //Starting download
-        mResultCode = mDownloadManager.enqueue(request);
+    /**
+     * Checks if device has connected network
+     * @param manager Connectivity service
+     * @return True if active network can reach Internet
+     */
+    @SuppressWarnings("deprecation")
+    private static boolean isConnected(ConnectivityManager manager) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            NetworkCapabilities capabilities =
+                    manager.getNetworkCapabilities(manager.getActiveNetwork());
+            return capabilities != null
+                    && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        }
+        //Network capabilities of active network aren't available before Android 6.0
+        android.net.NetworkInfo network = manager.getActiveNetworkInfo();
+        return network != null && network.isConnected();
+    }
+
+    /**
+     * Download of one image from URL, decoded while it streams
+     */
+    private class UrlDownload implements DownloadCoordinator.Task<Bitmap> {
+        /**
+         * URL to download
+         */
+        private final Uri mUrl;
+
+        /**
+         * Cache to read and store image, null to always download
+         */
+        private final ImageDiskCache mCache;
+
+        /**
+         * Maximum longest side of decoded image in pixels
+         */
+        private final int mMaxSize;
+
+        /**
+         * Connection to server
+         */
+        private final HttpSource mSource = new HttpSource(CONNECT_TIMEOUT, READ_TIMEOUT);
+
+        /**
+         * Bytes downloaded so far and length of image, -1 until known
+         */
+        volatile long mRead, mTotal = -1;
+
+        UrlDownload(Uri url, ImageDiskCache cache, int maxSize) {
+            mUrl = url;
+            mCache = cache;
+            mMaxSize = maxSize;
+        }
+
+        @Override
+        public Bitmap run() throws IOException {
+            MetricsRegistry.Timer timer = MetricsRegistry.get().start("image.fetch");
+            try(InputStream in = mSource.open(new URL(mUrl.toString()), mCache,
+                    (read, total) -> {
+                        mRead = read;
+                        mTotal = total;
+                        runOnUiThread(MainActivity.this::showDownloads);
+                    })) {
+                Bitmap fetched = BitmapLoader.decodeStream(in, mMaxSize);
+                timer.stop(fetched.getWidth(), fetched.getHeight());
+                return fetched;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mSource.cancel();
+        }
     }
-}
\ No newline at end of file
+}
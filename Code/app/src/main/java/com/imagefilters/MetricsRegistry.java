@@ -0,0 +1,228 @@
+package com.imagefilters;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide registry of timing and memory metrics of filters, loading, saving
+ * and downloading. Each named operation keeps latency histogram, bytes allocated
+ * and dimensions of images it processed. Thread-safe
+ */
+public class MetricsRegistry {
+    /**
+     * Registry used by application
+     */
+    private static final MetricsRegistry sDefault = new MetricsRegistry(System::nanoTime,
+            () -> Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+
+    /**
+     * Source of time
+     */
+    private final Clock mClock;
+
+    /**
+     * Source of memory usage, replaceable to include native heap
+     */
+    private volatile MemoryProbe mMemoryProbe;
+
+    /**
+     * Metrics by operation name, sorted for stable output
+     */
+    private final Map<String, Metric> mMetrics = new TreeMap<>();
+
+    /**
+     * Creates registry
+     * @param clock Source of time
+     * @param memoryProbe Source of memory usage
+     */
+    MetricsRegistry(Clock clock, MemoryProbe memoryProbe) {
+        mClock = clock;
+        mMemoryProbe = memoryProbe;
+    }
+
+    /**
+     * @return Registry used by application
+     */
+    public static MetricsRegistry get() {
+        return sDefault;
+    }
+
+    /**
+     * Replaces source of memory usage, e.g. to count native bitmap memory
+     * @param memoryProbe Source of memory usage
+     */
+    public void setMemoryProbe(MemoryProbe memoryProbe) {
+        mMemoryProbe = memoryProbe;
+    }
+
+    /**
+     * Starts measuring operation
+     * @param name Name of operation, e.g. "filter.blur"
+     * @return Timer to stop when operation finishes
+     */
+    public Timer start(String name) {
+        return new Timer(name, mClock.nanoTime(), mMemoryProbe.usedBytes());
+    }
+
+    /**
+     * Records finished operation
+     * @param name Name of operation
+     * @param nanos Duration in nanoseconds
+     * @param bytes Bytes allocated by operation
+     * @param width Width of processed image, 0 if unknown
+     * @param height Height of processed image, 0 if unknown
+     */
+    public synchronized void record(String name, long nanos, long bytes, int width, int height) {
+        Metric metric = mMetrics.get(name);
+        if(metric == null) {
+            metric = new Metric();
+            mMetrics.put(name, metric);
+        }
+        metric.mLatency.record(nanos);
+        metric.mBytes += Math.max(0, bytes);
+        if(width > 0 && height > 0) {
+            metric.mWidth = width;
+            metric.mHeight = height;
+        }
+    }
+
+    /**
+     * Drops all recorded metrics
+     */
+    public synchronized void reset() {
+        mMetrics.clear();
+    }
+
+    /**
+     * Gets short summary of all operations for on-screen display
+     * @return One line per operation with count and latency percentiles in ms
+     */
+    public synchronized String toSummary() {
+        StringBuilder summary = new StringBuilder();
+        for(Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            LatencyHistogram latency = entry.getValue().mLatency;
+            if(summary.length() > 0)
+                summary.append('\n');
+            summary.append(String.format(Locale.ROOT,
+                    "%s x%d p50 %.1f p95 %.1f p99 %.1f ms, %d KB, %dx%d", entry.getKey(),
+                    latency.getCount(), latency.getPercentileNanos(50) / 1e6,
+                    latency.getPercentileNanos(95) / 1e6, latency.getPercentileNanos(99) / 1e6,
+                    entry.getValue().mBytes / 1024, entry.getValue().mWidth,
+                    entry.getValue().mHeight));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Gets snapshot of all operations as JSON object keyed by operation name
+     * @return JSON text
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for(Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            Metric metric = entry.getValue();
+            LatencyHistogram latency = metric.mLatency;
+            if(json.length() > 1)
+                json.append(',');
+            json.append('"').append(escape(entry.getKey())).append("\":{")
+                    .append("\"count\":").append(latency.getCount())
+                    .append(",\"meanNanos\":").append(latency.getMeanNanos())
+                    .append(",\"p50Nanos\":").append(latency.getPercentileNanos(50))
+                    .append(",\"p95Nanos\":").append(latency.getPercentileNanos(95))
+                    .append(",\"p99Nanos\":").append(latency.getPercentileNanos(99))
+                    .append(",\"maxNanos\":").append(latency.getMaxNanos())
+                    .append(",\"bytesAllocated\":").append(metric.mBytes)
+                    .append(",\"width\":").append(metric.mWidth)
+                    .append(",\"height\":").append(metric.mHeight)
+                    .append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Escapes text for JSON string
+     * @param text Text to escape
+     * @return Escaped text without quotes
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\')
+                escaped.append('\\').append(c);
+            else if(c < 0x20)
+                escaped.append(String.format(Locale.ROOT, "\\u%04x", (int)c));
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Measurement of one running operation
+     */
+    public class Timer {
+        /**
+         * Name of operation
+         */
+        private final String mName;
+
+        /**
+         * Time and memory usage at start
+         */
+        private final long mStartNanos, mStartBytes;
+
+        private Timer(String name, long startNanos, long startBytes) {
+            mName = name;
+            mStartNanos = startNanos;
+            mStartBytes = startBytes;
+        }
+
+        /**
+         * Records operation that processed no image
+         */
+        public void stop() {
+            stop(0, 0);
+        }
+
+        /**
+         * Records operation with growth of memory usage as bytes allocated
+         * @param width Width of processed image
+         * @param height Height of processed image
+         */
+        public void stop(int width, int height) {
+            record(mName, mClock.nanoTime() - mStartNanos,
+                    mMemoryProbe.usedBytes() - mStartBytes, width, height);
+        }
+    }
+
+    /**
+     * Accumulated measurements of one operation
+     */
+    private static class Metric {
+        final LatencyHistogram mLatency = new LatencyHistogram();
+        long mBytes;
+        int mWidth, mHeight;
+    }
+
+    /**
+     * Source of time
+     */
+    interface Clock {
+        /**
+         * @return Monotonic time in nanoseconds
+         */
+        long nanoTime();
+    }
+
+    /**
+     * Source of memory usage
+     */
+    public interface MemoryProbe {
+        /**
+         * @return Bytes currently in use
+         */
+        long usedBytes();
+    }
+}
@@ -0,0 +1,15 @@
+package com.imagefilters;
+
+import android.os.Debug;
+
+/**
+ * Memory probe that counts both Java heap and native heap, where bitmap
+ * pixels live since Android 8.0
+ */
+public class NativeMemoryProbe implements MetricsRegistry.MemoryProbe {
+    @Override
+    public long usedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+}
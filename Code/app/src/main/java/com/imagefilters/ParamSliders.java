@@ -0,0 +1,243 @@
+package com.imagefilters;
+
+import android.view.View;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+/**
+ * Panel of sliders that adjust parameters of filter step just applied. Each slider maps
+ * its integer progress to range of one parameter, and every change builds new step
+ * that is reported to listener while slider is dragged
+ */
+public class ParamSliders {
+    /**
+     * Receives steps with changed parameters
+     */
+    public interface Listener {
+        /**
+         * Called on every change of slider
+         * @param op Step with new parameters
+         */
+        void onParamsChanged(FilterOp op);
+    }
+
+    /**
+     * View holding all sliders
+     */
+    private final View mPanel;
+
+    /**
+     * Labels showing name and value of each parameter
+     */
+    private final TextView[] mLabels;
+
+    /**
+     * Slider of each parameter, unused ones are hidden
+     */
+    private final SeekBar[] mSliders;
+
+    /**
+     * Receiver of changed steps
+     */
+    private final Listener mListener;
+
+    /**
+     * Step being adjusted, null while panel is hidden
+     */
+    private FilterOp mOp;
+
+    /**
+     * Ranges of parameters of step being adjusted
+     */
+    private Param[] mParams;
+
+    /**
+     * True while sliders are set up, so that their changes aren't reported
+     */
+    private boolean mBinding;
+
+    /**
+     * Creates hidden panel
+     * @param panel View holding all sliders
+     * @param labels Label of each slider
+     * @param sliders Sliders, as many as most parameters of any filter
+     * @param listener Receiver of changed steps
+     */
+    public ParamSliders(View panel, TextView[] labels, SeekBar[] sliders, Listener listener) {
+        mPanel = panel;
+        mLabels = labels;
+        mSliders = sliders;
+        mListener = listener;
+        for(int i = 0; i < sliders.length; i++) {
+            int index = i;
+            sliders[i].setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+                @Override
+                public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                    onSliderChanged(index, progress);
+                }
+
+                @Override
+                public void onStartTrackingTouch(SeekBar seekBar) {}
+
+                @Override
+                public void onStopTrackingTouch(SeekBar seekBar) {}
+            });
+        }
+        hide();
+    }
+
+    /**
+     * Shows sliders of step, or hides panel if step has no adjustable parameters
+     * @param op Step just applied
+     */
+    public void show(FilterOp op) {
+        Param[] params = getParams(op.getType());
+        if(params == null) {
+            hide();
+            return;
+        }
+
+        mBinding = true;
+        mOp = op;
+        mParams = params;
+        for(int i = 0; i < mSliders.length; i++) {
+            int visibility = i < params.length ? View.VISIBLE : View.GONE;
+            mSliders[i].setVisibility(visibility);
+            mLabels[i].setVisibility(visibility);
+            if(i < params.length) {
+                mSliders[i].setMax(params[i].getSteps());
+                mSliders[i].setProgress(params[i].toProgress(op.getParam(i)));
+                updateLabel(i);
+            }
+        }
+        mPanel.setVisibility(View.VISIBLE);
+        mBinding = false;
+    }
+
+    /**
+     * Hides panel, e.g. when step it adjusts is undone
+     */
+    public void hide() {
+        mOp = null;
+        mParams = null;
+        mPanel.setVisibility(View.GONE);
+    }
+
+    /**
+     * @return Step with current values of sliders, null while panel is hidden
+     */
+    public FilterOp getOp() {
+        return mOp;
+    }
+
+    /**
+     * Builds step with new value of parameter and reports it
+     * @param index Index of parameter
+     * @param progress Progress of its slider
+     */
+    private void onSliderChanged(int index, int progress) {
+        if(mBinding || mOp == null)
+            return;
+        float[] values = new float[mParams.length];
+        for(int i = 0; i < values.length; i++)
+            values[i] = mOp.getParam(i);
+        values[index] = mParams[index].fromProgress(progress);
+        mOp = new FilterOp(mOp.getType(), values);
+        updateLabel(index);
+        mListener.onParamsChanged(mOp);
+    }
+
+    /**
+     * Shows name and current value of parameter
+     * @param index Index of parameter
+     */
+    private void updateLabel(int index) {
+        mLabels[index].setText(mPanel.getContext().getString(R.string.filter_param_value,
+                mPanel.getContext().getString(mParams[index].mLabel), mOp.getParam(index)));
+    }
+
+    /**
+     * Gets ranges of adjustable parameters of filter, in order of its parameters
+     * @param type Kind of filter
+     * @return Ranges, or null if filter has no adjustable parameters
+     */
+    static Param[] getParams(FilterOp.Type type) {
+        switch(type) {
+            case BLUR:
+                return new Param[] { new Param(R.string.param_radius, 0f, 100f, 0.5f) };
+            case SHARPEN:
+                return new Param[] { new Param(R.string.param_strength, 0f, 3f, 0.05f) };
+            case UNSHARP:
+                return new Param[] { new Param(R.string.param_amount, 0f, 3f, 0.05f),
+                        new Param(R.string.param_radius, 0.5f, 50f, 0.5f),
+                        new Param(R.string.param_threshold, 0f, 50f, 1f) };
+            case GAMMA:
+                return new Param[] { new Param(R.string.param_gamma, 0.2f, 3f, 0.05f) };
+            case LEVELS:
+                return new Param[] { new Param(R.string.param_black, 0f, 127f, 1f),
+                        new Param(R.string.param_white, 128f, 255f, 1f) };
+            case POSTERIZE:
+                return new Param[] { new Param(R.string.param_levels, 2f, 16f, 1f) };
+            case BRIGHTNESS_CONTRAST:
+                return new Param[] { new Param(R.string.param_brightness, -1f, 1f, 0.02f),
+                        new Param(R.string.param_contrast, -0.9f, 0.9f, 0.02f) };
+            case COLOR_BALANCE:
+                return new Param[] { new Param(R.string.param_red_gain, 0f, 3f, 0.01f),
+                        new Param(R.string.param_green_gain, 0f, 3f, 0.01f),
+                        new Param(R.string.param_blue_gain, 0f, 3f, 0.01f) };
+            case CURVES:
+                return new Param[] { new Param(R.string.param_shadows, 0f, 255f, 1f),
+                        new Param(R.string.param_midtones, 0f, 255f, 1f),
+                        new Param(R.string.param_highlights, 0f, 255f, 1f) };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Range of one parameter split into equal steps of slider
+     */
+    static class Param {
+        /**
+         * String resource of parameter name
+         */
+        final int mLabel;
+
+        /**
+         * Smallest value, largest value and difference between neighbouring values
+         */
+        final float mMin, mMax, mStep;
+
+        Param(int label, float min, float max, float step) {
+            mLabel = label;
+            mMin = min;
+            mMax = max;
+            mStep = step;
+        }
+
+        /**
+         * @return Number of steps of slider
+         */
+        int getSteps() {
+            return Math.round((mMax - mMin) / mStep);
+        }
+
+        /**
+         * Converts value to progress of slider
+         * @param value Value of parameter, clamped to range
+         * @return Progress of slider
+         */
+        int toProgress(float value) {
+            return Math.max(0, Math.min(getSteps(), Math.round((value - mMin) / mStep)));
+        }
+
+        /**
+         * Converts progress of slider to value
+         * @param progress Progress of slider
+         * @return Value of parameter
+         */
+        float fromProgress(int progress) {
+            return Math.min(mMax, mMin + progress * mStep);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Pixels of image kept outside of Java heap and bitmap memory, either in direct buffer
+ * or in memory-mapped file, so that operating system can page them out under memory
+ * pressure. Pixels are laid out exactly as in bitmap of the same size and format, so
+ * they move between buffer and bitmap in one copy. Filters run on bitmaps, so buffer
+ * is source of step when copied into bitmap and destination when result is copied
+ * back. Not thread-safe
+ */
+public final class PixelBuffer {
+    /**
+     * Size of image
+     */
+    private final int mWidth, mHeight;
+
+    /**
+     * Pixel format of image
+     */
+    private final Bitmap.Config mConfig;
+
+    /**
+     * Pixels, null once buffer is released
+     */
+    private ByteBuffer mBuffer;
+
+    /**
+     * Mapped file holding pixels, null for direct buffer
+     */
+    private final File mFile;
+
+    private PixelBuffer(int width, int height, Bitmap.Config config, ByteBuffer buffer,
+                        File file) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mBuffer = buffer;
+        mFile = file;
+    }
+
+    /**
+     * Creates buffer in native memory for images of the same size and format as bitmap
+     * @param like Bitmap whose size and format buffer takes, its pixels aren't copied
+     * @return New buffer with undefined contents
+     */
+    public static PixelBuffer allocate(Bitmap like) {
+        return new PixelBuffer(like.getWidth(), like.getHeight(), getConfig(like),
+                ByteBuffer.allocateDirect(like.getByteCount()), null);
+    }
+
+    /**
+     * Creates buffer backed by memory-mapped file for images of the same size and
+     * format as bitmap
+     * @param file File to map, created or resized as needed, deleted on release
+     * @param like Bitmap whose size and format buffer takes, its pixels aren't copied
+     * @return New buffer with undefined contents
+     * @throws IOException If file can't be created or mapped
+     */
+    public static PixelBuffer map(File file, Bitmap like) throws IOException {
+        Bitmap.Config config = getConfig(like);
+        try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(like.getByteCount());
+            //Mapping stays valid after file is closed
+            ByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    like.getByteCount());
+            return new PixelBuffer(like.getWidth(), like.getHeight(), config, buffer, file);
+        }
+        catch(IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Width of image
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return Height of image
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return Size of pixels in bytes
+     */
+    public int getByteCount() {
+        return mBuffer.capacity();
+    }
+
+    /**
+     * @return True if pixels are kept in memory-mapped file
+     */
+    public boolean isMapped() {
+        return mFile != null;
+    }
+
+    /**
+     * Copies pixels of bitmap into buffer, e.g. to keep result of filter step
+     * @param bitmap Bitmap of the same size and format as buffer
+     * @throws IllegalArgumentException If bitmap doesn't fit buffer
+     */
+    public void copyFrom(Bitmap bitmap) {
+        checkFits(bitmap);
+        mBuffer.rewind();
+        bitmap.copyPixelsToBuffer(mBuffer);
+    }
+
+    /**
+     * Copies pixels of buffer into bitmap, e.g. to use them as source of filter step
+     * @param bitmap Mutable bitmap of the same size and format as buffer
+     * @return bitmap
+     * @throws IllegalArgumentException If bitmap doesn't fit buffer
+     */
+    public Bitmap copyTo(Bitmap bitmap) {
+        checkFits(bitmap);
+        mBuffer.rewind();
+        bitmap.copyPixelsFromBuffer(mBuffer);
+        return bitmap;
+    }
+
+    /**
+     * Copies pixels of buffer into new bitmap
+     * @return New mutable bitmap
+     */
+    public Bitmap toBitmap() {
+        return copyTo(Bitmap.createBitmap(mWidth, mHeight, mConfig));
+    }
+
+    /**
+     * Drops pixels and deletes mapped file, buffer must not be used afterwards. Mapping
+     * itself is unmapped once buffer is garbage collected
+     */
+    public void release() {
+        mBuffer = null;
+        if(mFile != null)
+            mFile.delete();
+    }
+
+    /**
+     * Checks that bitmap has the same size and format as buffer
+     * @param bitmap Bitmap to check
+     * @throws IllegalArgumentException If bitmap doesn't fit buffer
+     */
+    private void checkFits(Bitmap bitmap) {
+        if(bitmap.getWidth() != mWidth || bitmap.getHeight() != mHeight
+                || bitmap.getConfig() != mConfig || bitmap.getByteCount() != getByteCount())
+            throw new IllegalArgumentException(bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + " " + bitmap.getConfig() + " bitmap doesn't fit " + mWidth + "x"
+                    + mHeight + " " + mConfig + " buffer");
+    }
+
+    /**
+     * Gets pixel format of bitmap that can be kept in buffer
+     * @param bitmap Bitmap to check
+     * @return Pixel format
+     * @throws IllegalArgumentException If bitmap has no plain pixel format
+     */
+    private static Bitmap.Config getConfig(Bitmap bitmap) {
+        if(bitmap.getConfig() == null)
+            throw new IllegalArgumentException("Bitmap without pixel format can't be buffered");
+        return bitmap.getConfig();
+    }
+}
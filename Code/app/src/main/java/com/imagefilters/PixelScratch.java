@@ -0,0 +1,120 @@
+package com.imagefilters;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Raw pixels of bitmap kept in scratch file, so that image can be brought back without
+ * decoding or filtering it again. File holds small header followed by pixels exactly as
+ * they are laid out in bitmap memory, and both writing and reading copy them through
+ * memory-mapped file in one call. Files are meant only for the device that wrote them
+ */
+public final class PixelScratch {
+    /**
+     * Mark at start of every scratch file
+     */
+    private static final int MAGIC = 0x50495831;
+
+    /**
+     * Size of header with mark, width, height and pixel format in bytes
+     */
+    private static final int HEADER_SIZE = 16;
+
+    private PixelScratch() {}
+
+    /**
+     * Writes pixels of bitmap to file. Pixels are written to temporary file that is
+     * renamed into place, so file is either complete or keeps its previous content
+     * @param file File to write, replaced if it exists
+     * @param bitmap Bitmap to write
+     * @throws IOException If file can't be written or bitmap has no plain pixel format
+     */
+    public static void write(File file, Bitmap bitmap) throws IOException {
+        Bitmap.Config config = bitmap.getConfig();
+        if(config == null)
+            throw new IOException("Bitmap without pixel format can't be written");
+
+        File temp = new File(file.getPath() + ".tmp");
+        try(RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            int size = HEADER_SIZE + bitmap.getByteCount();
+            out.setLength(size);
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            bitmap.copyPixelsToBuffer(buffer);
+            //Mark goes last, so that file cut short by crash isn't taken as valid
+            buffer.putInt(4, bitmap.getWidth())
+                    .putInt(8, bitmap.getHeight())
+                    .putInt(12, config.ordinal())
+                    .putInt(0, MAGIC);
+            buffer.force();
+        }
+        if(!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't move scratch file to " + file);
+        }
+    }
+
+    /**
+     * Reads bitmap written by {@link #write(File, Bitmap)}
+     * @param file File to read
+     * @return New mutable bitmap, or null if file is missing or isn't valid scratch file
+     */
+    public static Bitmap read(File file) {
+        if(!file.isFile() || file.length() < HEADER_SIZE)
+            return null;
+        try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    in.length());
+            Bitmap.Config[] configs = Bitmap.Config.values();
+            int width = buffer.getInt(4), height = buffer.getInt(8), config = buffer.getInt(12);
+            if(buffer.getInt(0) != MAGIC || width <= 0 || height <= 0
+                    || config < 0 || config >= configs.length)
+                return null;
+            //Size is checked before allocation, so that corrupt header can't ask for
+            //huge bitmap
+            if((long)width * height * getBytesPerPixel(configs[config])
+                    != buffer.capacity() - HEADER_SIZE)
+                return null;
+
+            Bitmap bitmap = Bitmap.createBitmap(width, height, configs[config]);
+            if(bitmap.getByteCount() != buffer.capacity() - HEADER_SIZE) {
+                bitmap.recycle();
+                return null;
+            }
+            buffer.position(HEADER_SIZE);
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        }
+        catch(IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets size of one pixel in bitmap memory
+     * @param config Pixel format
+     * @return Number of bytes, 0 for formats without pixels in memory, which are never
+     * written
+     */
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch(config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+                return 4;
+            default:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                        && config == Bitmap.Config.RGBA_F16 ? 8 : 0;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.imagefilters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes PNG image row by row, so that image never has to be held in memory whole.
+ * Rows are written as 8-bit RGBA with Sub filter
+ */
+public class PngBandWriter {
+    /**
+     * PNG file signature
+     */
+    private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    /**
+     * Maximum size of one IDAT chunk
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Stream to write encoded image to
+     */
+    private final OutputStream mOut;
+
+    /**
+     * Size of image
+     */
+    private final int mWidth, mHeight;
+
+    /**
+     * Compressor of image data
+     */
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * Stream compressing rows into IDAT chunks
+     */
+    private final DeflaterOutputStream mData;
+
+    /**
+     * Filtered bytes of one row, prefixed with filter type
+     */
+    private final byte[] mRow;
+
+    /**
+     * Number of rows written so far
+     */
+    private int mRowsWritten;
+
+    /**
+     * Writes PNG header
+     * @param out Stream to write encoded image to, not closed by writer
+     * @param width Width of image
+     * @param height Height of image
+     * @throws IOException If stream can't be written
+     */
+    public PngBandWriter(OutputStream out, int width, int height) throws IOException {
+        mOut = out;
+        mWidth = width;
+        mHeight = height;
+        mRow = new byte[1 + width * 4];
+        mData = new DeflaterOutputStream(new ChunkStream(), mDeflater, CHUNK_SIZE);
+
+        mOut.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; //Bit depth
+        header[9] = 6; //Color type RGBA
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Encodes next rows of image
+     * @param pixels ARGB pixels as returned by Bitmap.getPixels
+     * @param offset Index of first pixel of first row
+     * @param stride Number of pixels between starts of rows
+     * @param rows Number of rows to write
+     * @throws IOException If stream can't be written
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if(mRowsWritten + rows > mHeight)
+            throw new IllegalStateException("Image has only " + mHeight + " rows");
+
+        for(int y = 0; y < rows; y++) {
+            int start = offset + y * stride;
+            mRow[0] = 1; //Sub filter: each byte minus byte of previous pixel
+            int previous = 0;
+            for(int x = 0; x < mWidth; x++) {
+                int p = pixels[start + x];
+                int i = 1 + x * 4;
+                mRow[i] = (byte)((p >> 16) - (previous >> 16));
+                mRow[i + 1] = (byte)((p >> 8) - (previous >> 8));
+                mRow[i + 2] = (byte)(p - previous);
+                mRow[i + 3] = (byte)((p >>> 24) - (previous >>> 24));
+                previous = p;
+            }
+            mData.write(mRow);
+        }
+        mRowsWritten += rows;
+    }
+
+    /**
+     * Flushes image data and writes PNG end, all rows must be written before
+     * @throws IOException If stream can't be written
+     */
+    public void finish() throws IOException {
+        if(mRowsWritten != mHeight)
+            throw new IllegalStateException("Only " + mRowsWritten + " of "
+                    + mHeight + " rows were written");
+        mData.finish();
+        mDeflater.end();
+        writeChunk("IEND", new byte[0], 0);
+        mOut.flush();
+    }
+
+    /**
+     * Writes PNG chunk with its length and checksum
+     * @param type Four letter chunk type
+     * @param data Chunk data
+     * @param length Number of bytes of data to write
+     * @throws IOException If stream can't be written
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(Charset.forName("US-ASCII"));
+        byte[] number = new byte[4];
+        putInt(number, 0, length);
+        mOut.write(number);
+        mOut.write(typeBytes);
+        mOut.write(data, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(number, 0, (int)crc.getValue());
+        mOut.write(number);
+    }
+
+    /**
+     * Stores big-endian integer
+     * @param dst Array to store into
+     * @param offset Index of first byte
+     * @param value Value to store
+     */
+    private static void putInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte)(value >>> 24);
+        dst[offset + 1] = (byte)(value >>> 16);
+        dst[offset + 2] = (byte)(value >>> 8);
+        dst[offset + 3] = (byte)value;
+    }
+
+    /**
+     * Stream that packs compressed data into IDAT chunks
+     */
+    private class ChunkStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(len == 0)
+                return;
+            byte[] chunk = off == 0 ? b : Arrays.copyOfRange(b, off, off + len);
+            writeChunk("IDAT", chunk, len);
+        }
+    }
+}
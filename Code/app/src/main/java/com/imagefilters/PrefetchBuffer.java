@@ -0,0 +1,165 @@
+package com.imagefilters;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps up to given number of items fetched ahead on background thread, so that
+ * next one can be handed out without waiting. Taken items are refilled at once.
+ * Fetching runs only while buffer is resumed and its policy allows it, and stops
+ * after failure until next item is taken or buffer is resumed again. Thread-safe
+ * @param <T> Type of fetched items
+ */
+public class PrefetchBuffer<T> {
+    /**
+     * Source of items
+     */
+    private final Fetcher<T> mFetcher;
+
+    /**
+     * Decides if fetching is allowed at the moment, e.g. on current network
+     */
+    private final Policy mPolicy;
+
+    /**
+     * Maximum number of items kept
+     */
+    private final int mCapacity;
+
+    /**
+     * Thread that fetches items one after another
+     */
+    private final ExecutorService mWorker = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "Prefetch"));
+
+    /**
+     * Fetched items, oldest first
+     */
+    private final ArrayDeque<T> mReady = new ArrayDeque<>();
+
+    /**
+     * Number of fetches submitted and not finished
+     */
+    private int mPending;
+
+    /**
+     * True while buffer may fetch
+     */
+    private boolean mResumed;
+
+    /**
+     * Creates paused buffer
+     * @param fetcher Source of items, called on background thread
+     * @param policy Decides if fetching is allowed at the moment
+     * @param capacity Maximum number of items kept, 0 disables prefetching
+     */
+    public PrefetchBuffer(Fetcher<T> fetcher, Policy policy, int capacity) {
+        mFetcher = fetcher;
+        mPolicy = policy;
+        mCapacity = capacity;
+    }
+
+    /**
+     * Starts filling buffer
+     */
+    public synchronized void resume() {
+        mResumed = true;
+        refill();
+    }
+
+    /**
+     * Stops fetching new items, running fetch still adds its item. Kept items stay
+     */
+    public synchronized void pause() {
+        mResumed = false;
+    }
+
+    /**
+     * Takes oldest fetched item and starts fetching replacement
+     * @return Fetched item, or null if none is ready
+     */
+    public synchronized T take() {
+        T item = mReady.poll();
+        refill();
+        return item;
+    }
+
+    /**
+     * @return Number of items ready to be taken
+     */
+    public synchronized int available() {
+        return mReady.size();
+    }
+
+    /**
+     * Stops fetching and drops kept items. Buffer can't be used afterwards
+     */
+    public synchronized void shutdown() {
+        mResumed = false;
+        mReady.clear();
+        mWorker.shutdownNow();
+    }
+
+    /**
+     * Submits fetches until buffer would be full
+     */
+    private void refill() {
+        if(!mResumed || mWorker.isShutdown())
+            return;
+        while(mReady.size() + mPending < mCapacity && mPolicy.allowsFetch()) {
+            mPending++;
+            mWorker.execute(this::fetchOne);
+        }
+    }
+
+    /**
+     * Fetches one item on background thread
+     */
+    private void fetchOne() {
+        T item = null;
+        try {
+            if(isResumed())
+                item = mFetcher.fetch();
+        }
+        catch(Exception e) {
+            //Fetching is retried when next item is taken or buffer is resumed
+        }
+
+        synchronized(this) {
+            mPending--;
+            if(item != null && !mWorker.isShutdown())
+                mReady.add(item);
+        }
+    }
+
+    /**
+     * @return True while buffer may fetch
+     */
+    private synchronized boolean isResumed() {
+        return mResumed;
+    }
+
+    /**
+     * Source of items
+     * @param <T> Type of items
+     */
+    public interface Fetcher<T> {
+        /**
+         * Fetches one item, called on background thread
+         * @return Fetched item
+         * @throws Exception If item can't be fetched, fetcher logs it if needed
+         */
+        T fetch() throws Exception;
+    }
+
+    /**
+     * Decides if fetching is allowed
+     */
+    public interface Policy {
+        /**
+         * @return True if items may be fetched at the moment
+         */
+        boolean allowsFetch();
+    }
+}
@@ -0,0 +1,106 @@
+package com.imagefilters;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.ScriptIntrinsicConvolve3x3;
+import android.renderscript.Type;
+
+/**
+ * Backend that runs filters with RenderScript intrinsics. Context and scripts
+ * are created once, allocations are reused while image size stays the same
+ */
+public class RenderScriptBackend implements FilterBackend {
+    /**
+     * RenderScript context
+     */
+    private final RenderScript mRenderScript;
+
+    /**
+     * Script that applies blur
+     */
+    private final ScriptIntrinsicBlur mBlurScript;
+
+    /**
+     * Script that applies sharpening
+     */
+    private final ScriptIntrinsicConvolve3x3 mSharpScript;
+
+    /**
+     * Input and output allocations of last used size
+     */
+    private Allocation mInAlloc, mOutAlloc;
+
+    /**
+     * Creates RenderScript context and scripts
+     * @param context Context to create RenderScript in
+     */
+    public RenderScriptBackend(Context context) {
+        mRenderScript = RenderScript.create(context);
+        mBlurScript = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+        mSharpScript = ScriptIntrinsicConvolve3x3.create(mRenderScript,
+                Element.U8_4(mRenderScript));
+    }
+
+    @Override
+    public void blur(Bitmap src, Bitmap dst, float blurRadius) {
+        prepareAllocations(src);
+        if(blurRadius <= 0) {
+            //ScriptIntrinsicBlur doesn't accept zero radius
+            mInAlloc.copyTo(dst);
+            return;
+        }
+        mBlurScript.setRadius(blurRadius);
+        mBlurScript.setInput(mInAlloc);
+        mBlurScript.forEach(mOutAlloc);
+        mOutAlloc.copyTo(dst);
+    }
+
+    @Override
+    public void sharpen(Bitmap src, Bitmap dst, float sharpRadius) {
+        prepareAllocations(src);
+        mSharpScript.setInput(mInAlloc);
+        mSharpScript.setCoefficients(PixelEngine.sharpenKernel(sharpRadius));
+        mSharpScript.forEach(mOutAlloc);
+        mOutAlloc.copyTo(dst);
+    }
+
+    @Override
+    public void release() {
+        destroyAllocations();
+        mBlurScript.destroy();
+        mSharpScript.destroy();
+        mRenderScript.destroy();
+    }
+
+    /**
+     * Copies source into input allocation, recreating allocations if size changed
+     * @param src Bitmap of image to filter
+     */
+    private void prepareAllocations(Bitmap src) {
+        int width = src.getWidth(), height = src.getHeight();
+        if(mInAlloc == null || mInAlloc.getType().getX() != width
+                || mInAlloc.getType().getY() != height) {
+            destroyAllocations();
+            Type type = Type.createXY(mRenderScript, Element.RGBA_8888(mRenderScript),
+                    width, height);
+            mInAlloc = Allocation.createTyped(mRenderScript, type, Allocation.USAGE_SCRIPT);
+            mOutAlloc = Allocation.createTyped(mRenderScript, type, Allocation.USAGE_SCRIPT);
+        }
+        mInAlloc.copyFrom(src);
+    }
+
+    /**
+     * Frees allocations of last used size
+     */
+    private void destroyAllocations() {
+        if(mInAlloc != null) {
+            mInAlloc.destroy();
+            mOutAlloc.destroy();
+            mInAlloc = mOutAlloc = null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.imagefilters;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Applies filter steps to images larger than available memory. Image is decoded in
+ * full-width bands, each band is filtered together with halo of neighbouring rows
+ * wide enough for all steps and streamed to PNG encoder without halo. Band is never
+ * shorter than halo, so steps with wide neighbourhood grow decoded region beyond tile
+ * size instead of splitting image into many bands that each decode mostly halo
+ */
+public final class TiledRenderer {
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = "TiledRenderer";
+
+    /**
+     * Default number of pixels in one band including halo
+     */
+    public static final int DEFAULT_TILE_PIXELS = 1 << 22;
+
+    private TiledRenderer() {}
+
+    /**
+     * Filters image at its original resolution and encodes result as PNG
+     * @param resolver Resolver to open URI with
+     * @param source URI of encoded image
+     * @param ops Steps to apply
+     * @param scale Ratio of original image size to size steps were chosen for
+     * @param runtime Runtime that applies blur and sharpening
+     * @param tilePixels Number of pixels in one band including halo, exceeded when halo
+     *                   takes up most of it
+     * @param out Stream to write PNG to, not closed
+     * @throws IOException If image can't be decoded or result can't be written
+     */
+    public static void render(ContentResolver resolver, Uri source, List<FilterOp> ops,
+                              float scale, FilterRuntime runtime, int tilePixels,
+                              OutputStream out) throws IOException {
+        BitmapRegionDecoder decoder;
+        try(InputStream in = BitmapLoader.openStream(resolver, source)) {
+            decoder = newDecoder(in);
+        }
+        if(decoder == null)
+            throw new IOException("Can't decode regions of " + source);
+
+        BitmapPool pool = new BitmapPool();
+        try {
+            int width = decoder.getWidth(), height = decoder.getHeight();
+            int halo = getHaloRadius(ops, scale);
+            int bandRows = getBandRows(width, halo, tilePixels);
+            Log.i(TAG, "Rendering " + width + "x" + height + " image in bands of "
+                    + bandRows + " rows with halo of " + halo);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            PngBandWriter writer = new PngBandWriter(out, width, height);
+            int[] band = new int[width * Math.min(bandRows, height)];
+            for(int y = 0; y < height; y += bandRows) {
+                int rows = Math.min(bandRows, height - y);
+                int top = Math.max(0, y - halo), bottom = Math.min(height, y + rows + halo);
+                Bitmap region = decoder.decodeRegion(new Rect(0, top, width, bottom), options);
+                if(region == null)
+                    throw new IOException("Can't decode rows " + top + "-" + bottom);
+
+                //Halo rows only feed neighbourhood of band, they are written by other bands
+                Bitmap filtered = FilterChain.replay(region, ops, scale, runtime, pool);
+                filtered.getPixels(band, 0, width, 0, y - top, width, rows);
+                writer.writeRows(band, 0, width, rows);
+                region.recycle();
+            }
+            writer.finish();
+        }
+        finally {
+            pool.clear();
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Creates decoder of image regions
+     * @param in Stream of encoded image
+     * @return New decoder, or null if image can't be decoded in regions
+     * @throws IOException If image can't be read
+     */
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newDecoder(InputStream in) throws IOException {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+            return BitmapRegionDecoder.newInstance(in);
+        //Overload without sharing flag exists only since Android 12, flag is ignored anyway
+        return BitmapRegionDecoder.newInstance(in, false);
+    }
+
+    /**
+     * Gets number of rows filtered and written at once
+     * @param width Width of image
+     * @param halo Number of rows beyond band that affect filtered band
+     * @param tilePixels Number of pixels in one band including halo
+     * @return Rows left in tile once halo above and below is taken, but at least halo
+     * rows, so that number of decoded regions stays proportional to height / halo
+     */
+    static int getBandRows(int width, int halo, int tilePixels) {
+        return Math.max(Math.max(1, halo), tilePixels / width - 2 * halo);
+    }
+
+    /**
+     * Gets number of rows beyond band that affect filtered band
+     * @param ops Steps to apply
+     * @param scale Ratio of image size to size steps were chosen for
+     * @return Sum of halo radii of all scaled steps
+     */
+    static int getHaloRadius(List<FilterOp> ops, float scale) {
+        int halo = 0;
+        for(FilterOp op : ops)
+            halo += op.scaled(scale).getHaloRadius();
+        return halo;
+    }
+}
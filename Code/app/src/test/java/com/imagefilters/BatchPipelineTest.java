@@ -0,0 +1,111 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of batch pipeline
+ */
+public class BatchPipelineTest {
+    /**
+     * Stages that turn numbers into strings, tracking bytes held by items in flight
+     */
+    private static class CountingStages implements BatchPipeline.Stages<Integer, int[], String> {
+        final AtomicInteger mInFlight = new AtomicInteger(), mMaxInFlight = new AtomicInteger();
+        final List<String> mEncoded = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public long estimateBytes(Integer item) {
+            return 1024;
+        }
+
+        @Override
+        public int[] decode(Integer item) throws Exception {
+            if(item < 0)
+                throw new Exception("Can't decode " + item);
+            int inFlight = mInFlight.incrementAndGet();
+            mMaxInFlight.accumulateAndGet(inFlight, Math::max);
+            return new int[] { item };
+        }
+
+        @Override
+        public String filter(Integer item, int[] decoded) {
+            return "#" + decoded[0];
+        }
+
+        @Override
+        public void encode(Integer item, String filtered) throws Exception {
+            Thread.sleep(2);
+            mEncoded.add(filtered);
+            mInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Listener that records last progress
+     */
+    private static class RecordingListener implements BatchPipeline.Listener<Integer> {
+        final List<Integer> mFailed = Collections.synchronizedList(new ArrayList<>());
+        volatile BatchProgress mFinal;
+
+        @Override
+        public void onProgress(BatchProgress progress) {}
+
+        @Override
+        public void onFailed(Integer item, Exception error) {
+            mFailed.add(item);
+        }
+
+        @Override
+        public void onFinished(BatchProgress progress, boolean cancelled) {
+            mFinal = progress;
+        }
+    }
+
+    /**
+     * Tests if all items are processed in order and failed ones are reported
+     */
+    @Test
+    public void start_processesAllItems() throws InterruptedException {
+        CountingStages stages = new CountingStages();
+        RecordingListener listener = new RecordingListener();
+        BatchPipeline<Integer, int[], String> pipeline =
+                new BatchPipeline<>(stages, 1 << 20, 2, listener);
+        pipeline.start(Arrays.asList(1, 2, -3, 4));
+        pipeline.await();
+
+        assertEquals(Arrays.asList("#1", "#2", "#4"), stages.mEncoded);
+        assertEquals(Collections.singletonList(-3), listener.mFailed);
+        assertEquals(3, listener.mFinal.getDone());
+        assertEquals(1, listener.mFinal.getFailed());
+        assertEquals(4, listener.mFinal.getTotal());
+    }
+
+    /**
+     * Tests if memory budget limits number of items in flight
+     */
+    @Test
+    public void start_respectsMemoryBudget() throws InterruptedException {
+        CountingStages stages = new CountingStages();
+        RecordingListener listener = new RecordingListener();
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < 50; i++)
+            items.add(i);
+
+        //Budget of two items
+        BatchPipeline<Integer, int[], String> pipeline =
+                new BatchPipeline<>(stages, 2048, 8, listener);
+        pipeline.start(items);
+        pipeline.await();
+
+        assertEquals(50, stages.mEncoded.size());
+        assertTrue(stages.mMaxInFlight.get() <= 2);
+    }
+}
@@ -0,0 +1,31 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of decode downsampling
+ */
+public class BitmapLoaderTest {
+    /**
+     * Tests if images that fit aren't sampled
+     */
+    @Test
+    public void inSampleSize_smallImage() {
+        assertEquals(1, BitmapLoader.calculateInSampleSize(500, 500, 4096));
+        assertEquals(1, BitmapLoader.calculateInSampleSize(4096, 3072, 4096));
+    }
+
+    /**
+     * Tests if sampled image never gets smaller than maximum size
+     */
+    @Test
+    public void inSampleSize_largeImages() {
+        //48 MP: 8000 / 2 is already below 4096
+        assertEquals(1, BitmapLoader.calculateInSampleSize(8000, 6000, 4096));
+        assertEquals(2, BitmapLoader.calculateInSampleSize(8192, 6144, 4096));
+        assertEquals(4, BitmapLoader.calculateInSampleSize(3000, 20000, 4096));
+        assertEquals(8, BitmapLoader.calculateInSampleSize(12000, 9000, 1024));
+    }
+}
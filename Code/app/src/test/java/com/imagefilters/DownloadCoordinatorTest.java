@@ -0,0 +1,123 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of download coordinator
+ */
+public class DownloadCoordinatorTest {
+    /**
+     * Task that returns given value after short delay, tracking parallel runs
+     */
+    private static class SlowTask implements DownloadCoordinator.Task<String> {
+        final String mValue;
+        final AtomicInteger mRunning, mMaxRunning;
+        final AtomicBoolean mStarted = new AtomicBoolean(), mCancelled = new AtomicBoolean();
+
+        SlowTask(String value, AtomicInteger running, AtomicInteger maxRunning) {
+            mValue = value;
+            mRunning = running;
+            mMaxRunning = maxRunning;
+        }
+
+        @Override
+        public String run() throws Exception {
+            mStarted.set(true);
+            mMaxRunning.accumulateAndGet(mRunning.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            }
+            finally {
+                mRunning.decrementAndGet();
+            }
+            if(mValue == null)
+                throw new Exception("Not found");
+            return mValue;
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled.set(true);
+        }
+    }
+
+    /**
+     * Consumer that records results by id
+     */
+    private static class RecordingConsumer implements DownloadCoordinator.Consumer<String> {
+        final Map<Long, String> mResults = new ConcurrentHashMap<>();
+        final CountDownLatch mDone;
+
+        RecordingConsumer(int expected) {
+            mDone = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onDownloaded(long id, String result) {
+            mResults.put(id, result);
+            mDone.countDown();
+        }
+
+        @Override
+        public void onFailed(long id, Exception error) {
+            mResults.put(id, "failed: " + error.getMessage());
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * Tests that downloads run in parallel up to limit and each result reaches its consumer
+     */
+    @Test
+    public void enqueue_limitsConcurrencyAndRoutesResults() throws InterruptedException {
+        DownloadCoordinator<String> coordinator = new DownloadCoordinator<>(3, Runnable::run);
+        AtomicInteger running = new AtomicInteger(), maxRunning = new AtomicInteger();
+        RecordingConsumer consumer = new RecordingConsumer(10);
+        long[] ids = new long[10];
+        for(int i = 0; i < ids.length; i++) {
+            String value = i == 4 ? null : "image" + i;
+            ids[i] = coordinator.enqueue(new SlowTask(value, running, maxRunning), consumer);
+        }
+
+        assertTrue(consumer.mDone.await(5, TimeUnit.SECONDS));
+        for(int i = 0; i < ids.length; i++)
+            assertEquals(i == 4 ? "failed: Not found" : "image" + i, consumer.mResults.get(ids[i]));
+        assertEquals(3, maxRunning.get());
+        assertEquals(0, coordinator.getInFlightCount());
+        coordinator.shutdown();
+    }
+
+    /**
+     * Tests that cancelled download aborts its task and isn't delivered
+     */
+    @Test
+    public void cancel_preventsDelivery() throws InterruptedException {
+        DownloadCoordinator<String> coordinator = new DownloadCoordinator<>(1, Runnable::run);
+        AtomicInteger running = new AtomicInteger(), maxRunning = new AtomicInteger();
+        RecordingConsumer consumer = new RecordingConsumer(2);
+        SlowTask cancelled = new SlowTask("cancelled", running, maxRunning);
+        long first = coordinator.enqueue(new SlowTask("first", running, maxRunning), consumer);
+        long second = coordinator.enqueue(cancelled, consumer);
+        long third = coordinator.enqueue(new SlowTask("third", running, maxRunning), consumer);
+
+        assertTrue(coordinator.cancel(second));
+        assertFalse(coordinator.cancel(second));
+        assertTrue(cancelled.mCancelled.get());
+        assertTrue(consumer.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals("first", consumer.mResults.get(first));
+        assertEquals("third", consumer.mResults.get(third));
+        assertFalse(consumer.mResults.containsKey(second));
+        //Download cancelled while waiting never runs
+        assertFalse(cancelled.mStarted.get());
+        coordinator.shutdown();
+    }
+}
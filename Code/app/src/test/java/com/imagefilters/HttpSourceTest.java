@@ -0,0 +1,226 @@
+package com.imagefilters;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of HTTP source against server on loopback
+ */
+public class HttpSourceTest {
+    /**
+     * Body served as image
+     */
+    private static final byte[] BODY = new byte[100 * 1024];
+
+    /**
+     * Local stand-in server
+     */
+    private HttpServer mServer;
+
+    /**
+     * Released to let stalled response finish
+     */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    /**
+     * Number of requests and of full responses served by cacheable resources
+     */
+    private final AtomicInteger mRequests = new AtomicInteger(),
+            mFullResponses = new AtomicInteger();
+
+    /**
+     * Directory of disk cache, deleted after each test
+     */
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void startServer() throws IOException {
+        for(int i = 0; i < BODY.length; i++)
+            BODY[i] = (byte)i;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/image", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        mServer.createContext("/moved", exchange -> {
+            exchange.getResponseHeaders().set("Location", "/image");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        mServer.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        mServer.createContext("/stalled", exchange -> {
+            exchange.sendResponseHeaders(200, BODY.length);
+            try {
+                mRelease.await(5, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        mServer.createContext("/cached", exchange -> {
+            mRequests.incrementAndGet();
+            String maxAge = exchange.getRequestURI().getQuery();
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            exchange.getResponseHeaders().set("Cache-Control", maxAge);
+            if("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            mFullResponses.incrementAndGet();
+            exchange.sendResponseHeaders(200, BODY.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mRelease.countDown();
+        mServer.stop(0);
+    }
+
+    /**
+     * Tests that body is streamed whole and progress reaches its length
+     */
+    @Test
+    public void open_streamsBodyWithProgress() throws IOException {
+        long[] progress = { 0, 0 };
+        HttpSource source = new HttpSource(1000, 1000);
+        try(InputStream in = source.open(url("/image"), (read, total) -> {
+            progress[0] = read;
+            progress[1] = total;
+        })) {
+            assertArrayEquals(BODY, readAll(in));
+        }
+        assertEquals(BODY.length, progress[0]);
+        assertEquals(BODY.length, progress[1]);
+    }
+
+    /**
+     * Tests that redirect is followed
+     */
+    @Test
+    public void open_followsRedirect() throws IOException {
+        try(InputStream in = new HttpSource(1000, 1000).open(url("/moved"), null)) {
+            assertArrayEquals(BODY, readAll(in));
+        }
+    }
+
+    /**
+     * Tests that error status fails request
+     */
+    @Test(expected = IOException.class)
+    public void open_failsOnErrorStatus() throws IOException {
+        new HttpSource(1000, 1000).open(url("/missing"), null);
+    }
+
+    /**
+     * Tests that reading times out when server stops sending
+     */
+    @Test(expected = SocketTimeoutException.class)
+    public void read_timesOutWhenStalled() throws IOException {
+        try(InputStream in = new HttpSource(1000, 200).open(url("/stalled"), null)) {
+            readAll(in);
+        }
+    }
+
+    /**
+     * Tests that fresh cached response is read without request
+     */
+    @Test
+    public void open_readsFreshResponseFromCache() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 1 << 20);
+        for(int i = 0; i < 3; i++) {
+            try(InputStream in = new HttpSource(1000, 1000).open(url("/cached?max-age=60"),
+                    cache, null)) {
+                assertArrayEquals(BODY, readAll(in));
+            }
+        }
+        assertEquals(1, mRequests.get());
+    }
+
+    /**
+     * Tests that stale cached response is revalidated with its ETag instead of downloaded
+     */
+    @Test
+    public void open_revalidatesStaleResponse() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 1 << 20);
+        for(int i = 0; i < 3; i++) {
+            try(InputStream in = new HttpSource(1000, 1000).open(url("/cached?no-cache"),
+                    cache, null)) {
+                assertArrayEquals(BODY, readAll(in));
+            }
+        }
+        assertEquals(3, mRequests.get());
+        assertEquals(1, mFullResponses.get());
+    }
+
+    /**
+     * Tests that response forbidden to store isn't cached
+     */
+    @Test
+    public void open_doesNotStoreNoStoreResponse() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 1 << 20);
+        for(int i = 0; i < 2; i++) {
+            try(InputStream in = new HttpSource(1000, 1000).open(url("/cached?no-store"),
+                    cache, null)) {
+                assertArrayEquals(BODY, readAll(in));
+            }
+        }
+        assertEquals(2, mFullResponses.get());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Builds URL of local server
+     * @param path Path of resource
+     * @return URL of resource
+     */
+    private URL url(String path) throws IOException {
+        return new URL("http", mServer.getAddress().getHostString(),
+                mServer.getAddress().getPort(), path);
+    }
+
+    /**
+     * Reads stream to its end
+     * @param in Stream to read
+     * @return Read bytes
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) >= 0)
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,139 @@
+package com.imagefilters;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of disk cache of URL images
+ */
+public class ImageDiskCacheTest {
+    /**
+     * Directory of cache, deleted after each test
+     */
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Tests that stored body and validators are read back, also when body wasn't read to end
+     */
+    @Test
+    public void get_returnsStoredEntry() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 1 << 20);
+        byte[] body = body(5000, 7);
+        try(InputStream in = cache.put("http://a/1.jpg", "\"v1\"", null, 1234, stream(body))) {
+            assertEquals(body[0], (byte)in.read());
+        }
+
+        ImageDiskCache.Snapshot cached = cache.get("http://a/1.jpg");
+        assertNotNull(cached);
+        assertEquals("\"v1\"", cached.getEtag());
+        assertNull(cached.getLastModified());
+        assertTrue(cached.isFresh(1233));
+        assertFalse(cached.isFresh(1234));
+        assertEquals(body.length, cached.getLength());
+        assertArrayEquals(body, readAll(cached.getBody()));
+        assertNull(cache.get("http://a/2.jpg"));
+    }
+
+    /**
+     * Tests that least recently used entries are evicted first and index survives restart
+     */
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws IOException {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 3500);
+        store(cache, "http://a/1", body(1000, 1));
+        store(cache, "http://a/2", body(1000, 2));
+        store(cache, "http://a/3", body(1000, 3));
+        cache.get("http://a/1").close();
+        store(cache, "http://a/4", body(1000, 4));
+
+        assertNotNull(cache.get("http://a/1"));
+        assertNull(cache.get("http://a/2"));
+        assertTrue(cache.size() <= 3500);
+        assertEquals(cache.size(), new ImageDiskCache(mFolder.getRoot(), 3500).size());
+    }
+
+    /**
+     * Tests that readers see complete entries while same URL is rewritten concurrently
+     */
+    @Test
+    public void get_readsCompleteEntriesWhileRewritten() throws Exception {
+        ImageDiskCache cache = new ImageDiskCache(mFolder.getRoot(), 1 << 20);
+        store(cache, "http://a/1", body(20000, 0));
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < 50; i++) {
+                        if(seed == 0) {
+                            store(cache, "http://a/1", body(20000, i));
+                            continue;
+                        }
+                        ImageDiskCache.Snapshot cached = cache.get("http://a/1");
+                        byte[] read = readAll(cached.getBody());
+                        assertArrayEquals(body(20000, read[0]), read);
+                    }
+                }
+                catch(Throwable e) {
+                    error.set(e);
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join();
+        assertNull(error.get());
+    }
+
+    /**
+     * Stores body in cache
+     */
+    private static void store(ImageDiskCache cache, String url, byte[] body) throws IOException {
+        cache.put(url, null, null, Long.MAX_VALUE, stream(body)).close();
+    }
+
+    /**
+     * Builds body whose first byte identifies it
+     */
+    private static byte[] body(int length, int seed) {
+        byte[] body = new byte[length];
+        for(int i = 0; i < length; i++)
+            body[i] = (byte)(seed + i * 31);
+        return body;
+    }
+
+    /**
+     * Wraps bytes as response body
+     */
+    private static InputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Reads stream to its end and closes it
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try(InputStream body = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = body.read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of metrics registry and latency histogram
+ */
+public class MetricsRegistryTest {
+    /**
+     * Tests if percentiles are within bucket precision of exact values
+     */
+    @Test
+    public void histogram_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int ms = 1; ms <= 100; ms++)
+            histogram.record(ms * 1_000_000L);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMaxNanos());
+        assertEquals(50.0, histogram.getPercentileNanos(50) / 1e6, 50.0 / 16);
+        assertEquals(95.0, histogram.getPercentileNanos(95) / 1e6, 95.0 / 16);
+        assertEquals(99.0, histogram.getPercentileNanos(99) / 1e6, 99.0 / 16);
+        assertTrue(histogram.getPercentileNanos(50) >= 50_000_000L);
+    }
+
+    /**
+     * Tests if every bucket bound maps back to its bucket
+     */
+    @Test
+    public void histogram_bucketBounds() {
+        for(int bucket = 0; bucket < 500; bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+    }
+
+    /**
+     * Tests if timer records duration, memory growth and dimensions into JSON
+     */
+    @Test
+    public void timer_recordsIntoJson() {
+        long[] now = { 0 }, used = { 1000 };
+        MetricsRegistry registry = new MetricsRegistry(() -> now[0], () -> used[0]);
+
+        MetricsRegistry.Timer timer = registry.start("filter.blur");
+        now[0] = 2_000_000;
+        used[0] = 5096;
+        timer.stop(640, 480);
+
+        String json = registry.toJson();
+        assertTrue(json, json.startsWith("{\"filter.blur\":{\"count\":1,"));
+        assertTrue(json, json.contains("\"maxNanos\":2000000"));
+        assertTrue(json, json.contains("\"bytesAllocated\":4096"));
+        assertTrue(json, json.contains("\"width\":640,\"height\":480"));
+        assertTrue(registry.toSummary().startsWith("filter.blur x1"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of streaming PNG encoder
+ */
+public class PngBandWriterTest {
+    /**
+     * Tests if image written in uneven bands decodes to same pixels
+     */
+    @Test
+    public void writeRows_decodesToSamePixels() throws IOException {
+        int width = 37, height = 23;
+        int[] pixels = new int[width * height];
+        Random random = new Random(1);
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngBandWriter writer = new PngBandWriter(out, width, height);
+        for(int y = 0; y < height; y += 5)
+            writer.writeRows(pixels, y * width, width, Math.min(5, height - y));
+        writer.finish();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++)
+                assertEquals(pixels[y * width + x], image.getRGB(x, y));
+        }
+    }
+
+    /**
+     * Tests if finishing before all rows are written fails
+     */
+    @Test(expected = IllegalStateException.class)
+    public void finish_failsOnMissingRows() throws IOException {
+        PngBandWriter writer = new PngBandWriter(new ByteArrayOutputStream(), 4, 4);
+        writer.writeRows(new int[16], 0, 4, 2);
+        writer.finish();
+    }
+}
@@ -0,0 +1,82 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of prefetch buffer
+ */
+public class PrefetchBufferTest {
+    /**
+     * Tests that buffer fills to capacity and refills taken items
+     */
+    @Test
+    public void take_handsOutReadyItemAndRefills() throws InterruptedException {
+        AtomicInteger fetched = new AtomicInteger();
+        PrefetchBuffer<Integer> buffer =
+                new PrefetchBuffer<>(fetched::incrementAndGet, () -> true, 2);
+        assertNull(buffer.take());
+
+        buffer.resume();
+        awaitAvailable(buffer, 2);
+        assertEquals(Integer.valueOf(1), buffer.take());
+        awaitAvailable(buffer, 2);
+        assertEquals(3, fetched.get());
+        buffer.shutdown();
+        assertEquals(0, buffer.available());
+    }
+
+    /**
+     * Tests that nothing is fetched while policy forbids it or buffer is paused
+     */
+    @Test
+    public void resume_fetchesOnlyWhenAllowed() throws InterruptedException {
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicBoolean allowed = new AtomicBoolean(false);
+        PrefetchBuffer<Integer> buffer =
+                new PrefetchBuffer<>(fetched::incrementAndGet, allowed::get, 3);
+        buffer.resume();
+        buffer.pause();
+        allowed.set(true);
+        assertNull(buffer.take());
+        Thread.sleep(50);
+        assertEquals(0, fetched.get());
+
+        buffer.resume();
+        awaitAvailable(buffer, 3);
+        buffer.shutdown();
+    }
+
+    /**
+     * Tests that failed fetches aren't retried until next item is taken
+     */
+    @Test
+    public void resume_stopsAfterFailure() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        PrefetchBuffer<Integer> buffer = new PrefetchBuffer<>(() -> {
+            attempts.incrementAndGet();
+            throw new Exception("Offline");
+        }, () -> true, 2);
+        buffer.resume();
+        Thread.sleep(100);
+        assertEquals(2, attempts.get());
+        assertNull(buffer.take());
+        Thread.sleep(100);
+        assertEquals(4, attempts.get());
+        buffer.shutdown();
+    }
+
+    /**
+     * Waits until buffer holds given number of items
+     */
+    private static void awaitAvailable(PrefetchBuffer<?> buffer, int count)
+            throws InterruptedException {
+        for(int i = 0; i < 200 && buffer.available() < count; i++)
+            Thread.sleep(10);
+        assertEquals(count, buffer.available());
+    }
+}
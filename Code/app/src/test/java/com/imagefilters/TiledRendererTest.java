@@ -0,0 +1,49 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of band sizing of tiled renderer
+ */
+public class TiledRendererTest {
+    /**
+     * Tests if band takes tile pixels left once halo is taken
+     */
+    @Test
+    public void getBandRows_fillsTile() {
+        assertEquals(1000 - 2 * 10, TiledRenderer.getBandRows(4000, 10, 4000 * 1000));
+        assertEquals(1000, TiledRenderer.getBandRows(4000, 0, 4000 * 1000));
+    }
+
+    /**
+     * Tests if halo wider than tile keeps number of decoded regions proportional to
+     * height / halo instead of decoding one region per row
+     */
+    @Test
+    public void getBandRows_largeHalo_decodesFewRegions() {
+        int width = 4000, height = 30000, halo = 2000;
+        int bandRows = TiledRenderer.getBandRows(width, halo, TiledRenderer.DEFAULT_TILE_PIXELS);
+        assertTrue(bandRows >= halo);
+
+        int regions = 0;
+        long decodedRows = 0;
+        for(int y = 0; y < height; y += bandRows) {
+            int rows = Math.min(bandRows, height - y);
+            decodedRows += Math.min(height, y + rows + halo) - Math.max(0, y - halo);
+            regions++;
+        }
+        assertTrue(regions <= (height + halo - 1) / halo);
+        //Each row is decoded at most as part of its band and halos of two neighbours
+        assertTrue(decodedRows <= 3L * height);
+    }
+
+    /**
+     * Tests if band has at least one row for image wider than tile
+     */
+    @Test
+    public void getBandRows_wideImage_hasOneRow() {
+        assertEquals(1, TiledRenderer.getBandRows(10000, 0, 100));
+    }
+}
@@ -0,0 +1,80 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs benchmarks with GC profiler and prints throughput in MP/s and allocation rate
+ * of each of them. Arguments: benchmark regexp, comma-separated sizes in megapixels
+ * (empty for all) and path of JSON results
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : ".*")
+                .addProfiler(GCProfiler.class);
+        if(args.length > 1 && !args[1].isEmpty())
+            options.param("megapixels", args[1].split(","));
+        if(args.length > 2) {
+            File results = new File(args[2]);
+            if(results.getParentFile() != null)
+                results.getParentFile().mkdirs();
+            options.resultFormat(ResultFormatType.JSON).result(results.getPath());
+        }
+
+        Collection<RunResult> results = new Runner(options.build()).run();
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-70s %10s %10s %12s",
+                "Benchmark", "ops/s", "MP/s", "alloc MB/s"));
+        for(RunResult result : results) {
+            float megapixels = Float.parseFloat(result.getParams().getParam("megapixels"));
+            double opsPerSecond = result.getPrimaryResult().getScore();
+            System.out.println(String.format(Locale.ROOT, "%-70s %10.2f %10.1f %12.1f",
+                    getLabel(result), opsPerSecond, opsPerSecond * megapixels,
+                    getAllocationRate(result.getAggregatedResult())));
+        }
+    }
+
+    /**
+     * Gets name of benchmark with all its parameters
+     * @param result Result of benchmark
+     * @return Short name followed by parameters
+     */
+    private static String getLabel(RunResult result) {
+        String benchmark = result.getParams().getBenchmark();
+        //Class and method name without package
+        int start = benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1;
+        StringBuilder label = new StringBuilder(benchmark.substring(start));
+        for(String key : result.getParams().getParamsKeys())
+            label.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+        return label.toString();
+    }
+
+    /**
+     * Gets allocation rate measured by GC profiler
+     * @param result Aggregated result of benchmark
+     * @return Allocation rate in MB/s, NaN if profiler didn't report it
+     */
+    private static double getAllocationRate(BenchmarkResult result) {
+        for(Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            //Key is prefixed with separator that differs between JMH versions
+            if(entry.getKey().endsWith("gc.alloc.rate"))
+                return entry.getValue().getScore();
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,37 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of box blur at several radii, cost of which stays the same for any radius
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BoxBlurBenchmark {
+    /**
+     * Radius of blur
+     */
+    @Param({ "5", "25", "100", "200" })
+    public float radius;
+
+    @Benchmark
+    public int[] boxBlur(ImageState image) {
+        image.engine.boxBlur(image.src, image.dst, image.width, image.height, radius);
+        return image.dst;
+    }
+}
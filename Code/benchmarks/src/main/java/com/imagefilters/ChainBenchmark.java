@@ -0,0 +1,62 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of filter chains as applied on save, including color matrix fusion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ChainBenchmark {
+    /**
+     * Chain of steps, see {@link FilterOp#parseRecipe(String)}
+     */
+    @Param({ "INVERT,GRAYSCALE,GBR,BRG", "GRAYSCALE,BLUR(10.0),SHARPEN(1.0)",
+            "INVERT,BLUR(25.0),GBR,SHARPEN(1.0),BRG",
+            "GAMMA(1.5),INVERT,POSTERIZE(4.0),LEVELS(10.0,240.0)",
+            "CURVES(80.0,140.0,200.0),GRAYSCALE,BRIGHTNESS_CONTRAST(0.1,0.3)" })
+    public String recipe;
+
+    /**
+     * Parsed steps of recipe
+     */
+    private List<FilterOp> mOps;
+
+    /**
+     * Filters running on engine of image
+     */
+    private PixelFilters mFilters;
+
+    @Setup(Level.Trial)
+    public void setUp(ImageState image) {
+        mOps = FilterOp.parseRecipe(recipe);
+        mFilters = new PixelFilters(image.engine);
+    }
+
+    /**
+     * Applies chain to result buffer in place, contents drift between calls
+     * but cost of all steps doesn't depend on pixel values
+     */
+    @Benchmark
+    public int[] chain(ImageState image) {
+        return mFilters.apply(image.dst, image.width, image.height, mOps, 1f);
+    }
+}
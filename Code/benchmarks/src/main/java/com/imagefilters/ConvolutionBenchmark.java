@@ -0,0 +1,65 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of convolution with Gaussian kernels of several sizes, applied as two
+ * separable passes and by summing all taps
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConvolutionBenchmark {
+    /**
+     * Number of coefficients in each row and column of kernel
+     */
+    @Param({ "3", "9", "31" })
+    public int size;
+
+    /**
+     * Gaussian kernel of given size
+     */
+    private ConvolutionKernel mKernel;
+
+    @Setup
+    public void setUp() {
+        float[] weights = PixelEngine.gaussianWeights(size / 2);
+        mKernel = ConvolutionKernel.separable(weights, weights);
+    }
+
+    @Benchmark
+    public int[] separable(ImageState image) {
+        image.engine.convolve(image.src, image.dst, image.width, image.height, mKernel,
+                PixelEngine.EdgeMode.CLAMP);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] direct(ImageState image) {
+        image.engine.convolveDirect(image.src, image.dst, image.width, image.height, mKernel,
+                PixelEngine.EdgeMode.CLAMP);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] unsharpMask(ImageState image) {
+        image.engine.unsharpMask(image.src, image.dst, image.width, image.height,
+                1f, size / 2, 2f);
+        return image.dst;
+    }
+}
@@ -0,0 +1,55 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of single filters offered by FilterImage
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterBenchmark {
+    @Benchmark
+    public int[] invert(ImageState image) {
+        image.engine.colorMatrix(image.src, image.dst, image.width, image.height,
+                ColorMatrices.INVERT);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] grayscale(ImageState image) {
+        image.engine.colorMatrix(image.src, image.dst, image.width, image.height,
+                ColorMatrices.GRAYSCALE);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] gbr(ImageState image) {
+        image.engine.colorMatrix(image.src, image.dst, image.width, image.height,
+                ColorMatrices.GBR);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] brg(ImageState image) {
+        image.engine.colorMatrix(image.src, image.dst, image.width, image.height,
+                ColorMatrices.BRG);
+        return image.dst;
+    }
+
+    @Benchmark
+    public int[] sharpen(ImageState image) {
+        image.engine.sharpen(image.src, image.dst, image.width, image.height, 1f);
+        return image.dst;
+    }
+}
@@ -0,0 +1,56 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * Square image of random opaque pixels with result buffer and engine, shared by all
+ * benchmark threads
+ */
+@State(Scope.Benchmark)
+public class ImageState {
+    /**
+     * Size of image in megapixels
+     */
+    @Param({ "0.25", "1", "12", "48" })
+    public float megapixels;
+
+    /**
+     * Size of image in pixels
+     */
+    public int width, height;
+
+    /**
+     * Pixels of image and buffer to write results to
+     */
+    public int[] src, dst;
+
+    /**
+     * Engine that runs filters on all cores
+     */
+    public PixelEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = height = (int)Math.round(Math.sqrt(megapixels * 1e6));
+        src = new int[width * height];
+        dst = new int[width * height];
+        Random random = new Random(42);
+        for(int i = 0; i < src.length; i++)
+            src[i] = random.nextInt() | 0xFF000000;
+        System.arraycopy(src, 0, dst, 0, src.length);
+        engine = new PixelEngine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+        src = dst = null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.imagefilters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of statistics pass with per-thread histograms, compared with counting on
+ * one thread, and of automatic adjustment applied through lookup table
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatisticsBenchmark {
+    @Benchmark
+    public ImageStats parallel(ImageState image) {
+        return image.engine.statistics(image.src, image.width, image.height);
+    }
+
+    @Benchmark
+    public int[] sequential(ImageState image) {
+        int[] histograms = new int[ImageStats.CHANNELS * ColorLuts.CHANNEL_SIZE];
+        PixelEngine.histogramRange(image.src, 0, image.src.length, histograms);
+        return histograms;
+    }
+
+    @Benchmark
+    public int[] autoContrast(ImageState image) {
+        PointChain chain = new PointChain();
+        chain.add(AutoAdjust.contrastStretch(
+                image.engine.statistics(image.src, image.width, image.height),
+                AutoAdjust.DEFAULT_CLIP));
+        image.engine.pointFilter(image.src, image.dst, image.width, image.height, chain);
+        return image.dst;
+    }
+}
@@ -0,0 +1,128 @@
+package com.imagefilters;
+
+/**
+ * Adjustments chosen from statistics of image. Each one resolves to ordinary point
+ * filter step with fixed parameters, so it is combined with neighbouring matrices and
+ * lookup tables, can be edited like any step and replays the same on image of other
+ * resolution or in tiles
+ */
+public final class AutoAdjust {
+    /**
+     * Kinds of adjustments
+     */
+    public enum Kind {
+        /**
+         * Stretches luminance range to full range, keeping hues
+         */
+        LEVELS,
+
+        /**
+         * Stretches range of every color channel to full range, also removing color cast
+         */
+        CONTRAST,
+
+        /**
+         * Scales color channels so that average color is gray
+         */
+        WHITE_BALANCE
+    }
+
+    /**
+     * Part of pixels clipped at each end of range by levels and contrast stretch, so
+     * that few outliers don't prevent stretching
+     */
+    public static final float DEFAULT_CLIP = 0.005f;
+
+    /**
+     * Largest gain white balance gives to any channel
+     */
+    private static final float MAX_GAIN = 4f;
+
+    private AutoAdjust() {}
+
+    /**
+     * Chooses step for image
+     * @param kind Kind of adjustment
+     * @param stats Statistics of image the step is applied to
+     * @return Point filter step
+     */
+    public static FilterOp create(Kind kind, ImageStats stats) {
+        switch(kind) {
+            case LEVELS:
+                return levels(stats, DEFAULT_CLIP);
+            case CONTRAST:
+                return contrastStretch(stats, DEFAULT_CLIP);
+            default:
+                return whiteBalance(stats);
+        }
+    }
+
+    /**
+     * Chooses levels that stretch luminance to full range
+     * @param stats Statistics of image
+     * @param clip Part of pixels clipped at each end of range
+     * @return Levels step
+     */
+    public static FilterOp levels(ImageStats stats, float clip) {
+        float[] range = range(stats, ImageStats.LUMA, clip);
+        return new FilterOp(FilterOp.Type.LEVELS, range[0], range[1]);
+    }
+
+    /**
+     * Chooses levels of every color channel that stretch it to full range
+     * @param stats Statistics of image
+     * @param clip Part of pixels clipped at each end of range
+     * @return Channel levels step
+     */
+    public static FilterOp contrastStretch(ImageStats stats, float clip) {
+        float[] red = range(stats, ImageStats.RED, clip),
+                green = range(stats, ImageStats.GREEN, clip),
+                blue = range(stats, ImageStats.BLUE, clip);
+        return new FilterOp(FilterOp.Type.CHANNEL_LEVELS, red[0], red[1], green[0], green[1],
+                blue[0], blue[1]);
+    }
+
+    /**
+     * Chooses gains of color channels that make average color gray while keeping
+     * average luminance (gray world assumption)
+     * @param stats Statistics of image
+     * @return Color balance step
+     */
+    public static FilterOp whiteBalance(ImageStats stats) {
+        double luma = stats.getMean(ImageStats.LUMA);
+        return new FilterOp(FilterOp.Type.COLOR_BALANCE,
+                gain(luma, stats.getMean(ImageStats.RED)),
+                gain(luma, stats.getMean(ImageStats.GREEN)),
+                gain(luma, stats.getMean(ImageStats.BLUE)));
+    }
+
+    /**
+     * Gets input range of channel without clipped pixels
+     * @param stats Statistics of image
+     * @param channel Channel of statistics
+     * @param clip Part of pixels clipped at each end of range
+     * @return Black and white point, white always above black
+     */
+    private static float[] range(ImageStats stats, int channel, float clip) {
+        int black = stats.getPercentile(channel, clip);
+        int white = Math.max(stats.getPercentile(channel, 1 - clip), black + 1);
+        //Flat channel at white is moved down rather than past the end of range
+        if(white > 255) {
+            white = 255;
+            black = 254;
+        }
+        return new float[] { black, white };
+    }
+
+    /**
+     * Gets gain that brings channel mean to target
+     * @param target Mean that channel should get
+     * @param mean Current mean of channel
+     * @return Gain, 1 for empty channel
+     */
+    private static float gain(double target, double mean) {
+        if(mean <= 0 || target <= 0)
+            return 1f;
+        return (float)Math.min(MAX_GAIN, target / mean);
+    }
+}
@@ -0,0 +1,260 @@
+package com.imagefilters;
+
+/**
+ * Per-channel lookup tables used by nonlinear point filters and helpers to combine them.
+ * Table holds 256 output values for each channel, stored as R, G, B and A tables one
+ * after another in the same order as rows of {@link ColorMatrices}
+ */
+public final class ColorLuts {
+    /**
+     * Number of entries in table of one channel
+     */
+    public static final int CHANNEL_SIZE = 256;
+
+    /**
+     * Number of entries in table of all four channels
+     */
+    public static final int SIZE = 4 * CHANNEL_SIZE;
+
+    /**
+     * Offset of alpha table
+     */
+    private static final int ALPHA = 3 * CHANNEL_SIZE;
+
+    /**
+     * Input values of middle points of curves
+     */
+    private static final float[] CURVE_INPUTS = { 0, 64, 128, 192, 255 };
+
+    private ColorLuts() {}
+
+    /**
+     * @return New table that leaves colors untouched
+     */
+    public static int[] identity() {
+        return fromColorTable(index -> index);
+    }
+
+    /**
+     * Builds gamma correction
+     * @param gamma Gamma above 1 brightens midtones, below 1 darkens them
+     * @return New table
+     * @throws IllegalArgumentException If gamma isn't positive
+     */
+    public static int[] gamma(float gamma) {
+        if(!(gamma > 0))
+            throw new IllegalArgumentException("Gamma must be positive, was " + gamma);
+        double exponent = 1.0 / gamma;
+        return fromColorTable(v -> toChannel(255 * Math.pow(v / 255.0, exponent)));
+    }
+
+    /**
+     * Builds levels that stretch given input range to full range
+     * @param black Input value that becomes 0, lower values are clipped
+     * @param white Input value that becomes 255, higher values are clipped
+     * @return New table
+     * @throws IllegalArgumentException If white isn't above black
+     */
+    public static int[] levels(float black, float white) {
+        if(!(white > black))
+            throw new IllegalArgumentException("White point " + white
+                    + " must be above black point " + black);
+        double scale = 255.0 / (white - black);
+        return fromColorTable(v -> toChannel((v - black) * scale));
+    }
+
+    /**
+     * Builds levels with own input range of each color channel, e.g. to stretch
+     * contrast of every channel to full range
+     * @param redBlack Red input value that becomes 0
+     * @param redWhite Red input value that becomes 255
+     * @param greenBlack Green input value that becomes 0
+     * @param greenWhite Green input value that becomes 255
+     * @param blueBlack Blue input value that becomes 0
+     * @param blueWhite Blue input value that becomes 255
+     * @return New table, keeping alpha
+     * @throws IllegalArgumentException If white isn't above black in any channel
+     */
+    public static int[] channelLevels(float redBlack, float redWhite, float greenBlack,
+                                      float greenWhite, float blueBlack, float blueWhite) {
+        int[] red = levels(redBlack, redWhite), green = levels(greenBlack, greenWhite),
+                blue = levels(blueBlack, blueWhite);
+        int[] lut = identity();
+        System.arraycopy(red, 0, lut, 0, CHANNEL_SIZE);
+        System.arraycopy(green, CHANNEL_SIZE, lut, CHANNEL_SIZE, CHANNEL_SIZE);
+        System.arraycopy(blue, 2 * CHANNEL_SIZE, lut, 2 * CHANNEL_SIZE, CHANNEL_SIZE);
+        return lut;
+    }
+
+    /**
+     * Builds posterization that reduces each channel to given number of evenly spaced values
+     * @param levels Number of values kept, between 2 and 256
+     * @return New table
+     * @throws IllegalArgumentException If levels is out of range
+     */
+    public static int[] posterize(float levels) {
+        int count = Math.round(levels);
+        if(count < 2 || count > CHANNEL_SIZE)
+            throw new IllegalArgumentException("Posterize needs 2 to 256 levels, was " + levels);
+        double step = 255.0 / (count - 1);
+        return fromColorTable(v -> toChannel(Math.round(v / step) * step));
+    }
+
+    /**
+     * Builds brightness and contrast adjustment
+     * @param brightness Shift of all values in [-1, 1], 1 adds 255
+     * @param contrast Change of contrast around middle gray in (-1, 1), 0 keeps contrast,
+     *                 -1 flattens image and values near 1 make it black and white
+     * @return New table
+     * @throws IllegalArgumentException If contrast is out of range
+     */
+    public static int[] brightnessContrast(float brightness, float contrast) {
+        if(!(contrast > -1 && contrast < 1))
+            throw new IllegalArgumentException("Contrast must be in (-1, 1), was " + contrast);
+        double slope = Math.tan((contrast + 1) * Math.PI / 4);
+        return fromColorTable(v -> toChannel((v - 127.5) * slope + 127.5 + brightness * 255));
+    }
+
+    /**
+     * Builds smooth tone curve through black, white and three middle points. Curve is
+     * monotone cubic, so it doesn't overshoot between points
+     * @param shadows Output value of input 64
+     * @param midtones Output value of input 128
+     * @param highlights Output value of input 192
+     * @return New table
+     */
+    public static int[] curves(float shadows, float midtones, float highlights) {
+        float[] x = CURVE_INPUTS, y = { 0, shadows, midtones, highlights, 255 };
+        int n = x.length;
+
+        //Fritsch-Carlson tangents: zero at local extrema, limited elsewhere
+        double[] secants = new double[n - 1], tangents = new double[n];
+        for(int i = 0; i < n - 1; i++)
+            secants[i] = (y[i + 1] - y[i]) / (x[i + 1] - x[i]);
+        tangents[0] = secants[0];
+        tangents[n - 1] = secants[n - 2];
+        for(int i = 1; i < n - 1; i++)
+            tangents[i] = secants[i - 1] * secants[i] <= 0
+                    ? 0 : (secants[i - 1] + secants[i]) / 2;
+        for(int i = 0; i < n - 1; i++) {
+            if(secants[i] == 0) {
+                tangents[i] = tangents[i + 1] = 0;
+                continue;
+            }
+            double a = tangents[i] / secants[i], b = tangents[i + 1] / secants[i];
+            double length = a * a + b * b;
+            if(length > 9) {
+                double t = 3 / Math.sqrt(length);
+                tangents[i] = t * a * secants[i];
+                tangents[i + 1] = t * b * secants[i];
+            }
+        }
+
+        return fromColorTable(v -> {
+            int i = 0;
+            while(i < n - 2 && v > x[i + 1])
+                i++;
+            double h = x[i + 1] - x[i], t = (v - x[i]) / h, t2 = t * t, t3 = t2 * t;
+            return toChannel((2 * t3 - 3 * t2 + 1) * y[i] + (t3 - 2 * t2 + t) * h * tangents[i]
+                    + (-2 * t3 + 3 * t2) * y[i + 1] + (t3 - t2) * h * tangents[i + 1]);
+        });
+    }
+
+    /**
+     * Builds table with the same effect as color matrix that maps every channel only from
+     * itself, e.g. inversion
+     * @param matrix 4x5 color matrix from {@link ColorMatrices}
+     * @return New table, or null if matrix mixes channels
+     */
+    public static int[] fromMatrix(float[] matrix) {
+        if(!isPerChannel(matrix))
+            return null;
+        int[] lut = new int[SIZE];
+        for(int channel = 0; channel < 4; channel++) {
+            float scale = matrix[channel * 5 + channel], offset = matrix[channel * 5 + 4];
+            for(int v = 0; v < CHANNEL_SIZE; v++)
+                lut[channel * CHANNEL_SIZE + v] = PixelEngine.toChannel(scale * v + offset);
+        }
+        return lut;
+    }
+
+    /**
+     * Checks if color matrix maps every channel only from itself
+     * @param matrix 4x5 color matrix from {@link ColorMatrices}
+     * @return True if all elements mixing channels are zero
+     */
+    public static boolean isPerChannel(float[] matrix) {
+        for(int row = 0; row < 4; row++) {
+            for(int col = 0; col < 4; col++) {
+                if(row != col && matrix[row * 5 + col] != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combines two tables into one that has the same effect as applying first and
+     * then second. Result is exact, as tables map integers to integers
+     * @param first Table applied first
+     * @param second Table applied second
+     * @return New combined table
+     */
+    public static int[] compose(int[] first, int[] second) {
+        int[] result = new int[SIZE];
+        for(int channel = 0; channel < SIZE; channel += CHANNEL_SIZE) {
+            for(int v = 0; v < CHANNEL_SIZE; v++)
+                result[channel + v] = second[channel + first[channel + v]];
+        }
+        return result;
+    }
+
+    /**
+     * Checks if table leaves colors untouched
+     * @param lut Table to check
+     * @return True if every entry maps to its own index
+     */
+    public static boolean isIdentity(int[] lut) {
+        for(int i = 0; i < SIZE; i++) {
+            if(lut[i] != i % CHANNEL_SIZE)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds table that maps R, G and B the same way and keeps alpha
+     * @param mapping Mapping of channel value
+     * @return New table
+     */
+    private static int[] fromColorTable(ChannelMapping mapping) {
+        int[] lut = new int[SIZE];
+        for(int v = 0; v < CHANNEL_SIZE; v++) {
+            int mapped = mapping.map(v);
+            lut[v] = lut[CHANNEL_SIZE + v] = lut[2 * CHANNEL_SIZE + v] = mapped;
+            lut[ALPHA + v] = v;
+        }
+        return lut;
+    }
+
+    /**
+     * Rounds and clamps channel value to [0, 255]
+     * @param value Channel value
+     * @return Channel value as integer
+     */
+    private static int toChannel(double value) {
+        return PixelEngine.toChannel((float)value);
+    }
+
+    /**
+     * Mapping of one channel value
+     */
+    private interface ChannelMapping {
+        /**
+         * Maps value
+         * @param value Channel value in [0, 255]
+         * @return Mapped value in [0, 255]
+         */
+        int map(int value);
+    }
+}
@@ -0,0 +1,132 @@
+package com.imagefilters;
+
+/**
+ * 4x5 color matrices used by point filters and helpers to combine them.
+ * Matrices are stored row-major in the same layout as android.graphics.ColorMatrix:
+ * rows are R, G, B, A and fifth column is translation in [0, 255] units
+ */
+public final class ColorMatrices {
+    /**
+     * Number of elements in 4x5 color matrix
+     */
+    public static final int SIZE = 20;
+
+    /**
+     * Matrix that leaves colors untouched
+     */
+    public static final float[] IDENTITY = {
+            1, 0, 0, 0, 0,
+            0, 1, 0, 0, 0,
+            0, 0, 1, 0, 0,
+            0, 0, 0, 1, 0 };
+
+    /**
+     * Matrix that inverts colors
+     */
+    public static final float[] INVERT = {
+            -1,  0,  0,  0, 255,
+            0,  -1,  0,  0, 255,
+            0,   0, -1,  0, 255,
+            0,   0,  0,  1,   0 };
+
+    /**
+     * Matrix that removes saturation (same as ColorMatrix.setSaturation(0))
+     */
+    public static final float[] GRAYSCALE = {
+            0.213f, 0.715f, 0.072f, 0, 0,
+            0.213f, 0.715f, 0.072f, 0, 0,
+            0.213f, 0.715f, 0.072f, 0, 0,
+            0,      0,      0,      1, 0 };
+
+    /**
+     * Matrix that switches colors: R->G, G->B, B->R
+     */
+    public static final float[] GBR = {
+            0, 0, 1, 0, 0,
+            1, 0, 0, 0, 0,
+            0, 1, 0, 0, 0,
+            0, 0, 0, 1, 0 };
+
+    /**
+     * Matrix that switches colors: R->B, G->R, B->G
+     */
+    public static final float[] BRG = {
+            0, 1, 0, 0, 0,
+            0, 0, 1, 0, 0,
+            1, 0, 0, 0, 0,
+            0, 0, 0, 1, 0 };
+
+    /**
+     * Maximum difference from integer value for matrix element to be snapped to it
+     */
+    private static final float SNAP_EPSILON = 1e-4f;
+
+    private ColorMatrices() {}
+
+    /**
+     * Builds matrix that multiplies each color channel by its own gain, e.g. to
+     * balance white
+     * @param red Gain of red
+     * @param green Gain of green
+     * @param blue Gain of blue
+     * @return New matrix, keeping alpha
+     */
+    public static float[] scale(float red, float green, float blue) {
+        return new float[] {
+                red, 0,     0,    0, 0,
+                0,   green, 0,    0, 0,
+                0,   0,     blue, 0, 0,
+                0,   0,     0,    1, 0 };
+    }
+
+    /**
+     * Combines two matrices into one that has the same effect as
+     * applying first and then second
+     * @param first Matrix applied first
+     * @param second Matrix applied second
+     * @return New combined matrix
+     */
+    public static float[] concat(float[] first, float[] second) {
+        float[] result = new float[SIZE];
+        for(int row = 0; row < 4; row++) {
+            for(int col = 0; col < 5; col++) {
+                float sum = 0;
+                for(int k = 0; k < 4; k++)
+                    sum += second[row * 5 + k] * first[k * 5 + col];
+
+                //Translation of first matrix passes through second matrix, own is added
+                if(col == 4)
+                    sum += second[row * 5 + 4];
+                result[row * 5 + col] = sum;
+            }
+        }
+        snap(result);
+        return result;
+    }
+
+    /**
+     * Checks if matrix leaves colors untouched
+     * @param matrix Matrix to check
+     * @return True if matrix equals identity
+     */
+    public static boolean isIdentity(float[] matrix) {
+        for(int i = 0; i < SIZE; i++) {
+            if(Math.abs(matrix[i] - IDENTITY[i]) > SNAP_EPSILON)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rounds elements that are float error away from integer value, so that
+     * chains like invert twice or GBR three times reduce to exact identity
+     * @param matrix Matrix to modify in place
+     */
+    private static void snap(float[] matrix) {
+        for(int i = 0; i < SIZE; i++) {
+            float rounded = Math.round(matrix[i]);
+            if(Math.abs(matrix[i] - rounded) <= SNAP_EPSILON)
+                matrix[i] = rounded;
+        }
+    }
+}
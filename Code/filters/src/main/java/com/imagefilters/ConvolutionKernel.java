@@ -0,0 +1,154 @@
+package com.imagefilters;
+
+/**
+ * Square convolution kernel of odd size, immutable. Kernels of rank one are factored
+ * into column and row vectors on creation, so that {@link PixelEngine#convolve} can
+ * apply them as two 1D passes with 2N instead of N * N multiplications per pixel
+ */
+public final class ConvolutionKernel {
+    /**
+     * Largest difference between kernel and product of its factors, relative to
+     * largest coefficient, at which kernel is still treated as separable
+     */
+    private static final float SEPARABLE_TOLERANCE = 1e-5f;
+
+    /**
+     * Number of coefficients in each row and column
+     */
+    private final int mSize;
+
+    /**
+     * Coefficients in row-major order
+     */
+    private final float[] mWeights;
+
+    /**
+     * Factors of separable kernel, weight of row y and column x is
+     * mColumn[y] * mRow[x], null if kernel isn't separable
+     */
+    private final float[] mColumn, mRow;
+
+    /**
+     * Creates kernel
+     * @param size Number of coefficients in each row and column, must be odd
+     * @param weights size * size coefficients in row-major order
+     * @throws IllegalArgumentException If size is even or doesn't match weights
+     */
+    public ConvolutionKernel(int size, float... weights) {
+        if(size <= 0 || size % 2 == 0)
+            throw new IllegalArgumentException("Kernel size must be odd, was " + size);
+        if(weights.length != size * size)
+            throw new IllegalArgumentException("Kernel of size " + size + " needs "
+                    + size * size + " weights, got " + weights.length);
+        mSize = size;
+        mWeights = weights.clone();
+
+        float[][] factors = factor(size, mWeights);
+        mColumn = factors == null ? null : factors[0];
+        mRow = factors == null ? null : factors[1];
+    }
+
+    /**
+     * Creates separable kernel from its factors
+     * @param column Weights of rows, odd length
+     * @param row Weights of columns, same length as column
+     * @return Kernel whose weight of row y and column x is column[y] * row[x]
+     */
+    public static ConvolutionKernel separable(float[] column, float[] row) {
+        if(column.length != row.length)
+            throw new IllegalArgumentException("Factors must have the same length");
+        float[] weights = new float[column.length * row.length];
+        for(int y = 0; y < column.length; y++) {
+            for(int x = 0; x < row.length; x++)
+                weights[y * row.length + x] = column[y] * row[x];
+        }
+        return new ConvolutionKernel(column.length, weights);
+    }
+
+    /**
+     * @return Number of coefficients in each row and column
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return Number of pixels kernel reaches in each direction
+     */
+    public int getRadius() {
+        return mSize / 2;
+    }
+
+    /**
+     * Gets coefficient
+     * @param x Column of coefficient
+     * @param y Row of coefficient
+     * @return Coefficient
+     */
+    public float getWeight(int x, int y) {
+        return mWeights[y * mSize + x];
+    }
+
+    /**
+     * @return True if kernel is product of column and row vector
+     */
+    public boolean isSeparable() {
+        return mColumn != null;
+    }
+
+    /**
+     * @return Copy of coefficients in row-major order
+     */
+    float[] getWeights() {
+        return mWeights.clone();
+    }
+
+    /**
+     * @return Weights of rows of separable kernel, null if kernel isn't separable
+     */
+    float[] getColumn() {
+        return mColumn == null ? null : mColumn.clone();
+    }
+
+    /**
+     * @return Weights of columns of separable kernel, null if kernel isn't separable
+     */
+    float[] getRow() {
+        return mRow == null ? null : mRow.clone();
+    }
+
+    /**
+     * Factors kernel of rank one into column and row vector. Row and column through
+     * largest coefficient are taken as factors, then every coefficient is checked
+     * against their product
+     * @param size Number of coefficients in each row and column
+     * @param weights Coefficients in row-major order
+     * @return Column and row vector, or null if kernel has higher rank
+     */
+    private static float[][] factor(int size, float[] weights) {
+        int pivot = 0;
+        for(int i = 1; i < weights.length; i++) {
+            if(Math.abs(weights[i]) > Math.abs(weights[pivot]))
+                pivot = i;
+        }
+        float max = Math.abs(weights[pivot]);
+        float[] column = new float[size], row = new float[size];
+        //All-zero kernel is trivially separable
+        if(max == 0)
+            return new float[][] { column, row };
+
+        int pivotRow = pivot / size, pivotColumn = pivot % size;
+        for(int i = 0; i < size; i++) {
+            column[i] = weights[i * size + pivotColumn];
+            row[i] = weights[pivotRow * size + i] / weights[pivot];
+        }
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(Math.abs(weights[y * size + x] - column[y] * row[x])
+                        > SEPARABLE_TOLERANCE * max)
+                    return null;
+            }
+        }
+        return new float[][] { column, row };
+    }
+}
@@ -0,0 +1,256 @@
+package com.imagefilters;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Command line runner that applies filter recipe to every image in directory tree.
+ * Files are processed in parallel on all cores and written to mirrored tree in
+ * output directory, JPEG as JPEG and other formats as PNG. Usage:
+ * <pre>filter-cli [--threads N] [--scale S] RECIPE INPUT_DIR OUTPUT_DIR</pre>
+ * where RECIPE is e.g. "GRAYSCALE,BLUR(25.0),SHARPEN(1.0)" and unsharp mask is written
+ * as UNSHARP(amount,radius,threshold)
+ */
+public final class FilterCli {
+    /**
+     * Extensions of files that are read as images
+     */
+    private static final String[] IMAGE_EXTENSIONS = { "png", "jpg", "jpeg", "bmp", "gif" };
+
+    /**
+     * Steps to apply to every image
+     */
+    private final List<FilterOp> mOps;
+
+    /**
+     * Ratio of image size to size steps were chosen for
+     */
+    private final float mScale;
+
+    /**
+     * Filters shared by all workers
+     */
+    private final PixelFilters mFilters;
+
+    /**
+     * Stream to print timing to
+     */
+    private final PrintStream mOut;
+
+    /**
+     * Creates runner
+     * @param ops Steps to apply to every image
+     * @param scale Ratio of image size to size steps were chosen for
+     * @param engine Engine that runs filters
+     * @param out Stream to print timing to
+     */
+    FilterCli(List<FilterOp> ops, float scale, PixelEngine engine, PrintStream out) {
+        mOps = ops;
+        mScale = scale;
+        mFilters = new PixelFilters(engine);
+        mOut = out;
+    }
+
+    /**
+     * Runs command line
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        float scale = 1f;
+        List<String> positional = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; i++) {
+                if(args[i].equals("--threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if(args[i].equals("--scale"))
+                    scale = Float.parseFloat(args[++i]);
+                else
+                    positional.add(args[i]);
+            }
+            if(positional.size() != 3 || threads < 1 || scale <= 0)
+                throw new IllegalArgumentException("Expected recipe, input and output");
+
+            List<FilterOp> ops = FilterOp.parseRecipe(positional.get(0));
+            PixelEngine engine = new PixelEngine();
+            int failed;
+            try {
+                FilterCli cli = new FilterCli(ops, scale, engine, System.out);
+                failed = cli.run(new File(positional.get(1)),
+                        new File(positional.get(2)), threads);
+            }
+            finally {
+                engine.shutdown();
+            }
+            System.exit(failed == 0 ? 0 : 1);
+        }
+        catch(IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: filter-cli [--threads N] [--scale S] RECIPE INPUT_DIR"
+                    + " OUTPUT_DIR\n  RECIPE: steps separated by commas, e.g."
+                    + " GRAYSCALE,BLUR(25.0),SHARPEN(1.0),UNSHARP(1.0,5.0,2.0)\n  Steps: "
+                    + Arrays.toString(FilterOp.Type.values()));
+            System.exit(2);
+        }
+        catch(IOException | InterruptedException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Filters all images in directory tree
+     * @param input Directory to read images from
+     * @param output Directory to write images to, created if missing
+     * @param threads Number of files processed at once
+     * @return Number of files that failed
+     * @throws IOException If input isn't directory
+     * @throws InterruptedException If interrupted while waiting for workers
+     */
+    int run(File input, File output, int threads) throws IOException, InterruptedException {
+        if(!input.isDirectory())
+            throw new IOException(input + " isn't a directory");
+        List<File> files = new ArrayList<>();
+        collectImages(input, files);
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<FileTiming>> results = new ArrayList<>();
+        for(File file : files) {
+            File target = new File(output, input.toURI().relativize(file.toURI()).getPath());
+            results.add(workers.submit(() -> process(file, target)));
+        }
+        workers.shutdown();
+
+        int failed = 0;
+        long pixels = 0, readNanos = 0, filterNanos = 0, writeNanos = 0;
+        for(int i = 0; i < results.size(); i++) {
+            try {
+                FileTiming timing = results.get(i).get();
+                pixels += timing.mPixels;
+                readNanos += timing.mReadNanos;
+                filterNanos += timing.mFilterNanos;
+                writeNanos += timing.mWriteNanos;
+            }
+            catch(ExecutionException e) {
+                failed++;
+                mOut.println(files.get(i) + " FAILED: " + e.getCause());
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int done = files.size() - failed;
+        mOut.println(String.format(Locale.ROOT, "Total: %d files, %d failed, %.2f s wall,"
+                        + " read %.0f ms, filter %.0f ms, write %.0f ms,"
+                        + " %.2f images/s, %.2f MP/s",
+                files.size(), failed, seconds, readNanos / 1e6, filterNanos / 1e6,
+                writeNanos / 1e6, done / seconds, pixels / 1e6 / seconds));
+        return failed;
+    }
+
+    /**
+     * Filters one image and prints its timing
+     * @param source Image file to read
+     * @param target File to write result to, ".png" is appended to name if source
+     *               is neither PNG nor JPEG
+     * @return Timing of file
+     * @throws IOException If image can't be read or written
+     */
+    private FileTiming process(File source, File target) throws IOException {
+        FileTiming timing = new FileTiming();
+        long start = System.nanoTime();
+        BufferedImage image = ImageIO.read(source);
+        if(image == null)
+            throw new IOException("Unsupported image format");
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        long read = System.nanoTime();
+
+        int[] filtered = mFilters.apply(pixels, width, height, mOps, mScale);
+        long filter = System.nanoTime();
+
+        String format = getFormat(source);
+        if(format.equals("png") && !target.getName().toLowerCase(Locale.ROOT).endsWith(".png"))
+            target = new File(target.getParentFile(), target.getName() + ".png");
+        //JPEG has no alpha channel, other formats keep it
+        BufferedImage result = new BufferedImage(width, height, format.equals("jpg")
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        result.setRGB(0, 0, width, height, filtered, 0, width);
+        File parent = target.getParentFile();
+        if(parent != null && !parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Can't create " + parent);
+        if(!ImageIO.write(result, format, target))
+            throw new IOException("No writer for " + format);
+        long write = System.nanoTime();
+
+        timing.mPixels = (long)width * height;
+        timing.mReadNanos = read - start;
+        timing.mFilterNanos = filter - read;
+        timing.mWriteNanos = write - filter;
+        mOut.println(String.format(Locale.ROOT, "%s %dx%d read %.1f ms, filter %.1f ms,"
+                        + " write %.1f ms", source, width, height, timing.mReadNanos / 1e6,
+                timing.mFilterNanos / 1e6, timing.mWriteNanos / 1e6));
+        return timing;
+    }
+
+    /**
+     * Finds all image files in directory tree
+     * @param dir Directory to search
+     * @param files List to add found files to
+     */
+    private static void collectImages(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if(children == null)
+            return;
+        Arrays.sort(children);
+        for(File child : children) {
+            if(child.isDirectory())
+                collectImages(child, files);
+            else if(isImage(child))
+                files.add(child);
+        }
+    }
+
+    /**
+     * Checks if file has image extension
+     * @param file File to check
+     * @return True if file is read as image
+     */
+    private static boolean isImage(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for(String extension : IMAGE_EXTENSIONS) {
+            if(name.endsWith("." + extension))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets ImageIO format to write result in
+     * @param source Image file that was read
+     * @return "jpg" for JPEG sources, "png" for all others
+     */
+    private static String getFormat(File source) {
+        String name = source.getName().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") ? "jpg" : "png";
+    }
+
+    /**
+     * Time spent on stages of one file
+     */
+    private static class FileTiming {
+        long mPixels, mReadNanos, mFilterNanos, mWriteNanos;
+    }
+}
@@ -0,0 +1,334 @@
+package com.imagefilters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Single filter step with its parameters, immutable
+ */
+public final class FilterOp {
+    /**
+     * Kinds of filters
+     */
+    public enum Type {
+        INVERT(0), GRAYSCALE(0), BLUR(1), SHARPEN(1), GBR(0), BRG(0), UNSHARP(3),
+        GAMMA(1), LEVELS(2), POSTERIZE(1), BRIGHTNESS_CONTRAST(2), CURVES(3),
+        COLOR_BALANCE(3), CHANNEL_LEVELS(6);
+
+        /**
+         * Number of parameters filter takes
+         */
+        private final int mParamCount;
+
+        Type(int paramCount) {
+            mParamCount = paramCount;
+        }
+
+        /**
+         * @return Number of parameters filter takes
+         */
+        public int getParamCount() {
+            return mParamCount;
+        }
+    }
+
+    /**
+     * Kind of filter
+     */
+    private final Type mType;
+
+    /**
+     * Parameters of filter: radius of blur or sharpening, amount, radius and threshold
+     * of unsharp mask, gains of color balance or settings of lookup table, exactly
+     * as many as filter takes
+     */
+    private final float[] mParams;
+
+    /**
+     * Creates filter step without parameter
+     * @param type Kind of filter
+     */
+    public FilterOp(Type type) {
+        this(type, new float[0]);
+    }
+
+    /**
+     * Creates filter step
+     * @param type Kind of filter
+     * @param params Radius of blur or sharpening, amount, radius and threshold of
+     *               unsharp mask, gains of red, green and blue of color balance, or
+     *               settings of lookup table, see {@link ColorLuts}
+     * @throws IllegalArgumentException If filter takes other number of parameters
+     */
+    public FilterOp(Type type, float... params) {
+        if(params.length != type.getParamCount())
+            throw new IllegalArgumentException(type + " takes " + type.getParamCount()
+                    + " parameters, got " + params.length);
+        mType = type;
+        mParams = params.clone();
+    }
+
+    /**
+     * @return Kind of filter
+     */
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return Radius of blur or sharpening, amount of unsharp mask
+     * @throws ArrayIndexOutOfBoundsException If filter takes no parameter
+     */
+    public float getParam() {
+        return mParams[0];
+    }
+
+    /**
+     * Gets parameter by position
+     * @param index Position of parameter, e.g. 1 for radius of unsharp mask
+     * @return Value of parameter
+     */
+    public float getParam(int index) {
+        return mParams[index];
+    }
+
+    /**
+     * Gets same step for image of different resolution, so that result looks
+     * the same after rescaling. Sharpening uses fixed 3x3 kernel and is kept as is
+     * @param factor Ratio of new image size to size this step was chosen for
+     * @return Step with blur Gaussian, also that of unsharp mask, scaled by factor
+     */
+    public FilterOp scaled(float factor) {
+        //Round trip through sigma isn't exact and could widen kernel by one pixel
+        if(factor == 1f)
+            return this;
+        if(mType == Type.BLUR && mParams[0] > 0)
+            return new FilterOp(mType, scaledRadius(mParams[0], factor));
+        if(mType == Type.UNSHARP && mParams[1] > 0)
+            return new FilterOp(mType, mParams[0], scaledRadius(mParams[1], factor),
+                    mParams[2]);
+        return this;
+    }
+
+    /**
+     * Scales Gaussian of blur radius
+     * @param radius Radius of blur
+     * @param factor Ratio of new image size to old one
+     * @return Radius of blur whose Gaussian is scaled by factor
+     */
+    private static float scaledRadius(float radius, float factor) {
+        return Math.max(0f, PixelEngine.blurRadius(PixelEngine.blurSigma(radius) * factor));
+    }
+
+    /**
+     * Gets how far away pixels affect each pixel of result, e.g. to know how much
+     * overlap tiles of image need to be filtered separately
+     * @return Number of pixels in each direction
+     */
+    public int getHaloRadius() {
+        switch(mType) {
+            case BLUR:
+                return blurReach(mParams[0]);
+            case UNSHARP:
+                return blurReach(mParams[1]);
+            case SHARPEN:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets how far away pixels affect each pixel of blur
+     * @param radius Radius of blur
+     * @return Number of pixels in each direction
+     */
+    private static int blurReach(float radius) {
+        return radius > PixelEngine.MAX_BLUR_RADIUS
+                ? PixelEngine.boxBlurReach(radius) : (int)Math.ceil(radius);
+    }
+
+    /**
+     * Checks if filter is color matrix that can be combined with neighbours
+     * @return True for invert, grayscale, GBR and BRG
+     */
+    public boolean isColorMatrix() {
+        return getMatrix() != null;
+    }
+
+    /**
+     * Checks if filter is lookup table that can be combined with neighbours
+     * @return True for gamma, levels of all or each channel, posterize, brightness and
+     * contrast, curves and color balance
+     */
+    public boolean isLut() {
+        switch(mType) {
+            case GAMMA:
+            case LEVELS:
+            case POSTERIZE:
+            case BRIGHTNESS_CONTRAST:
+            case CURVES:
+            case CHANNEL_LEVELS:
+            case COLOR_BALANCE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks if filter maps each pixel only from itself, so that it can be combined
+     * with neighbouring point filters into one pass
+     * @return True for color matrices and lookup tables
+     */
+    public boolean isPointFilter() {
+        return isColorMatrix() || isLut();
+    }
+
+    /**
+     * Builds lookup table of filter
+     * @return New table from {@link ColorLuts} or null if filter isn't lookup table
+     * @throws IllegalArgumentException If parameters are out of range of filter
+     */
+    public int[] getLut() {
+        switch(mType) {
+            case GAMMA:
+                return ColorLuts.gamma(mParams[0]);
+            case LEVELS:
+                return ColorLuts.levels(mParams[0], mParams[1]);
+            case POSTERIZE:
+                return ColorLuts.posterize(mParams[0]);
+            case BRIGHTNESS_CONTRAST:
+                return ColorLuts.brightnessContrast(mParams[0], mParams[1]);
+            case CURVES:
+                return ColorLuts.curves(mParams[0], mParams[1], mParams[2]);
+            case CHANNEL_LEVELS:
+                return ColorLuts.channelLevels(mParams[0], mParams[1], mParams[2], mParams[3],
+                        mParams[4], mParams[5]);
+            case COLOR_BALANCE:
+                //Gains above 1 push channels out of range, table clamps them like separate
+                //pass does, while matrix would carry them into following channel mixing
+                return ColorLuts.fromMatrix(ColorMatrices.scale(mParams[0], mParams[1],
+                        mParams[2]));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets color matrix of filter
+     * @return 4x5 color matrix from {@link ColorMatrices} or null if filter isn't matrix
+     */
+    public float[] getMatrix() {
+        switch(mType) {
+            case INVERT:
+                return ColorMatrices.INVERT;
+            case GRAYSCALE:
+                return ColorMatrices.GRAYSCALE;
+            case GBR:
+                return ColorMatrices.GBR;
+            case BRG:
+                return ColorMatrices.BRG;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof FilterOp))
+            return false;
+        FilterOp other = (FilterOp) o;
+        return mType == other.mType && Arrays.equals(mParams, other.mParams);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mType.hashCode() + Arrays.hashCode(mParams);
+    }
+
+    @Override
+    public String toString() {
+        if(mType.getParamCount() == 0)
+            return mType.name();
+        StringBuilder step = new StringBuilder(mType.name()).append('(');
+        for(int i = 0; i < mParams.length; i++) {
+            if(i > 0)
+                step.append(',');
+            step.append(mParams[i]);
+        }
+        return step.append(')').toString();
+    }
+
+    /**
+     * Parses step written by {@link #toString()}, case-insensitive
+     * @param step Step such as "INVERT", "BLUR(25.0)" or "UNSHARP(1.0,5.0,2.0)"
+     * @return Parsed step
+     * @throws IllegalArgumentException If step can't be parsed
+     */
+    public static FilterOp parse(String step) {
+        String text = step.trim();
+        int open = text.indexOf('(');
+        try {
+            if(open < 0)
+                return new FilterOp(Type.valueOf(text.toUpperCase(Locale.ROOT)));
+            if(!text.endsWith(")"))
+                throw new IllegalArgumentException("Unclosed parameter in " + step);
+            String[] values = text.substring(open + 1, text.length() - 1).split(",");
+            float[] params = new float[values.length];
+            for(int i = 0; i < values.length; i++)
+                params[i] = Float.parseFloat(values[i]);
+            return new FilterOp(Type.valueOf(text.substring(0, open).trim()
+                    .toUpperCase(Locale.ROOT)), params);
+        }
+        catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("Can't parse filter step " + step, e);
+        }
+    }
+
+    /**
+     * Parses recipe of steps separated by commas, commas between parentheses separate
+     * parameters of one step
+     * @param recipe Recipe written by {@link #formatRecipe(List)}
+     * @return Parsed steps, empty for blank recipe
+     * @throws IllegalArgumentException If any step can't be parsed
+     */
+    public static List<FilterOp> parseRecipe(String recipe) {
+        List<FilterOp> ops = new ArrayList<>();
+        int start = 0, depth = 0;
+        for(int i = 0; i <= recipe.length(); i++) {
+            char c = i < recipe.length() ? recipe.charAt(i) : ',';
+            if(c == '(')
+                depth++;
+            else if(c == ')')
+                depth--;
+            else if(c == ',' && (depth == 0 || i == recipe.length())) {
+                String step = recipe.substring(start, i);
+                if(!step.trim().isEmpty())
+                    ops.add(parse(step));
+                start = i + 1;
+                depth = 0;
+            }
+        }
+        return ops;
+    }
+
+    /**
+     * Writes steps as recipe that can be parsed back
+     * @param ops Steps to write
+     * @return Steps separated by commas
+     */
+    public static String formatRecipe(List<FilterOp> ops) {
+        StringBuilder recipe = new StringBuilder();
+        for(FilterOp op : ops) {
+            if(recipe.length() > 0)
+                recipe.append(',');
+            recipe.append(op);
+        }
+        return recipe.toString();
+    }
+}
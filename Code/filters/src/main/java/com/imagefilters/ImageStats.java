@@ -0,0 +1,124 @@
+package com.imagefilters;
+
+/**
+ * Statistics of image gathered by {@link PixelEngine#statistics}: histograms of red,
+ * green, blue and luminance, from which extremes, means and percentiles are derived.
+ * Luminance uses the same weights as {@link ColorMatrices#GRAYSCALE}. Immutable
+ */
+public final class ImageStats {
+    /**
+     * Channels of statistics
+     */
+    public static final int RED = 0, GREEN = 1, BLUE = 2, LUMA = 3;
+
+    /**
+     * Number of channels of statistics
+     */
+    public static final int CHANNELS = 4;
+
+    /**
+     * Counts of each value of each channel, channel histograms one after another
+     */
+    private final int[] mHistograms;
+
+    /**
+     * Number of pixels counted
+     */
+    private final long mPixelCount;
+
+    /**
+     * Creates statistics from histograms
+     * @param histograms Counts of 256 values of red, green, blue and luminance,
+     *                   taken over without copying
+     */
+    ImageStats(int[] histograms) {
+        mHistograms = histograms;
+        long count = 0;
+        for(int v = 0; v < ColorLuts.CHANNEL_SIZE; v++)
+            count += histograms[v];
+        mPixelCount = count;
+    }
+
+    /**
+     * @return Number of pixels counted
+     */
+    public long getPixelCount() {
+        return mPixelCount;
+    }
+
+    /**
+     * Gets number of pixels with given value of channel
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @param value Value in [0, 255]
+     * @return Number of pixels
+     */
+    public int getCount(int channel, int value) {
+        return mHistograms[channel * ColorLuts.CHANNEL_SIZE + value];
+    }
+
+    /**
+     * Gets histogram of channel
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @return New array with number of pixels of each value
+     */
+    public int[] getHistogram(int channel) {
+        int[] histogram = new int[ColorLuts.CHANNEL_SIZE];
+        System.arraycopy(mHistograms, channel * ColorLuts.CHANNEL_SIZE, histogram, 0,
+                histogram.length);
+        return histogram;
+    }
+
+    /**
+     * Gets smallest value of channel
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @return Smallest value, 0 for empty image
+     */
+    public int getMin(int channel) {
+        return getPercentile(channel, 0);
+    }
+
+    /**
+     * Gets largest value of channel
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @return Largest value, 0 for empty image
+     */
+    public int getMax(int channel) {
+        for(int v = ColorLuts.CHANNEL_SIZE - 1; v > 0; v--) {
+            if(getCount(channel, v) > 0)
+                return v;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets mean value of channel
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @return Mean value, 0 for empty image
+     */
+    public double getMean(int channel) {
+        if(mPixelCount == 0)
+            return 0;
+        long sum = 0;
+        for(int v = 1; v < ColorLuts.CHANNEL_SIZE; v++)
+            sum += (long)v * getCount(channel, v);
+        return (double)sum / mPixelCount;
+    }
+
+    /**
+     * Gets value below which given part of pixels lies
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}
+     * @param fraction Part of pixels in [0, 1]
+     * @return Smallest value that more than fraction of pixels don't exceed, largest
+     * value for fraction 1, 0 for empty image
+     */
+    public int getPercentile(int channel, float fraction) {
+        double limit = fraction * (double)mPixelCount;
+        long below = 0;
+        for(int v = 0; v < ColorLuts.CHANNEL_SIZE; v++) {
+            below += getCount(channel, v);
+            if(below > limit)
+                return v;
+        }
+        return getMax(channel);
+    }
+}
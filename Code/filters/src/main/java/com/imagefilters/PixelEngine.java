@@ -0,0 +1,802 @@
+package com.imagefilters;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure Java implementation of all filters working on ARGB int[] buffers
+ * (as returned by Bitmap.getPixels). Image is split into bands of rows
+ * which are filtered in parallel on fork-join pool
+ */
+public class PixelEngine {
+    /**
+     * Default number of pixels in one band processed by single task
+     */
+    private static final int DEFAULT_TILE_PIXELS = 1 << 16;
+
+    /**
+     * Maximum blur radius supported by RenderScript implementation,
+     * larger radii are approximated by box blur
+     */
+    public static final float MAX_BLUR_RADIUS = 25f;
+
+    /**
+     * Number of box passes approximating Gaussian
+     */
+    private static final int BOX_PASSES = 3;
+
+    /**
+     * Offsets of green, blue and alpha tables in lookup table, red table comes first
+     */
+    private static final int GREEN_LUT = ColorLuts.CHANNEL_SIZE,
+            BLUE_LUT = 2 * ColorLuts.CHANNEL_SIZE, ALPHA_LUT = 3 * ColorLuts.CHANNEL_SIZE;
+
+    /**
+     * Offsets of histograms of each channel in statistics
+     */
+    private static final int RED_HISTOGRAM = ImageStats.RED * ColorLuts.CHANNEL_SIZE,
+            GREEN_HISTOGRAM = ImageStats.GREEN * ColorLuts.CHANNEL_SIZE,
+            BLUE_HISTOGRAM = ImageStats.BLUE * ColorLuts.CHANNEL_SIZE,
+            LUMA_HISTOGRAM = ImageStats.LUMA * ColorLuts.CHANNEL_SIZE;
+
+    /**
+     * Pool that runs filtering tasks
+     */
+    private final ForkJoinPool mPool;
+
+    /**
+     * Number of pixels in one band processed by single task
+     */
+    private final int mTilePixels;
+
+    /**
+     * Creates engine that uses all available processors
+     */
+    public PixelEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_PIXELS);
+    }
+
+    /**
+     * Creates engine with given parallelism
+     * @param parallelism Number of worker threads
+     * @param tilePixels Number of pixels in one band processed by single task
+     */
+    PixelEngine(int parallelism, int tilePixels) {
+        mPool = new ForkJoinPool(parallelism);
+        mTilePixels = tilePixels;
+    }
+
+    /**
+     * Stops worker threads, engine can't be used afterwards
+     */
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    /**
+     * Applies 4x5 color matrix to each pixel
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param matrix Color matrix from {@link ColorMatrices}
+     */
+    public void colorMatrix(int[] src, int[] dst, int width, int height, float[] matrix) {
+        final float[] m = matrix.clone();
+        run(width, height, (fromRow, toRow) ->
+                colorMatrixRange(src, dst, fromRow * width, toRow * width, m));
+    }
+
+    /**
+     * Applies 4x5 color matrix to range of pixels on calling thread
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param from Index of first pixel to filter
+     * @param to Index after last pixel to filter
+     * @param m Color matrix from {@link ColorMatrices}
+     */
+    static void colorMatrixRange(int[] src, int[] dst, int from, int to, float[] m) {
+        for(int i = from; i < to; i++) {
+            int p = src[i];
+            float a = p >>> 24, r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            int nr = toChannel(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+            int ng = toChannel(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+            int nb = toChannel(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+            int na = toChannel(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]);
+            dst[i] = (na << 24) | (nr << 16) | (ng << 8) | nb;
+        }
+    }
+
+    /**
+     * Applies point filters combined into one pass to each pixel
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param chain Combined point filters
+     */
+    public void pointFilter(int[] src, int[] dst, int width, int height, PointChain chain) {
+        run(width, height, (fromRow, toRow) ->
+                chain.applyRange(src, dst, fromRow * width, toRow * width));
+    }
+
+    /**
+     * Gathers statistics of image in one parallel pass. Each thread counts into its own
+     * histograms, which are summed at the end, so threads never share counters
+     * @param pixels Pixels of image
+     * @param width Width of image
+     * @param height Height of image
+     * @return Histograms of red, green, blue and luminance
+     */
+    public ImageStats statistics(int[] pixels, int width, int height) {
+        Map<Thread, int[]> partials = new ConcurrentHashMap<>();
+        run(width, height, (fromRow, toRow) -> {
+            //Only this thread adds its own entry, so get and put don't race
+            int[] histograms = partials.get(Thread.currentThread());
+            if(histograms == null) {
+                histograms = new int[ImageStats.CHANNELS * ColorLuts.CHANNEL_SIZE];
+                partials.put(Thread.currentThread(), histograms);
+            }
+            histogramRange(pixels, fromRow * width, toRow * width, histograms);
+        });
+
+        int[] total = new int[ImageStats.CHANNELS * ColorLuts.CHANNEL_SIZE];
+        for(int[] histograms : partials.values()) {
+            for(int i = 0; i < total.length; i++)
+                total[i] += histograms[i];
+        }
+        return new ImageStats(total);
+    }
+
+    /**
+     * Adds range of pixels to histograms on calling thread
+     * @param pixels Pixels of image
+     * @param from Index of first pixel to count
+     * @param to Index after last pixel to count
+     * @param histograms Counts of red, green, blue and luminance values to add to
+     */
+    static void histogramRange(int[] pixels, int from, int to, int[] histograms) {
+        for(int i = from; i < to; i++) {
+            int p = pixels[i];
+            int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            histograms[RED_HISTOGRAM + r]++;
+            histograms[GREEN_HISTOGRAM + g]++;
+            histograms[BLUE_HISTOGRAM + b]++;
+            //Weights of GRAYSCALE matrix in 1/256 units, summing to 256
+            histograms[LUMA_HISTOGRAM + ((55 * r + 183 * g + 18 * b + 128) >> 8)]++;
+        }
+    }
+
+    /**
+     * Applies lookup table to range of pixels on calling thread
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param from Index of first pixel to filter
+     * @param to Index after last pixel to filter
+     * @param lut Table from {@link ColorLuts}
+     */
+    static void lutRange(int[] src, int[] dst, int from, int to, int[] lut) {
+        for(int i = from; i < to; i++) {
+            int p = src[i];
+            dst[i] = (lut[ALPHA_LUT + (p >>> 24)] << 24) | (lut[(p >> 16) & 0xFF] << 16)
+                    | (lut[GREEN_LUT + ((p >> 8) & 0xFF)] << 8) | lut[BLUE_LUT + (p & 0xFF)];
+        }
+    }
+
+    /**
+     * Applies lookup table, color matrix and lookup table to range of pixels on calling
+     * thread, rounding channels after each stage
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param from Index of first pixel to filter
+     * @param to Index after last pixel to filter
+     * @param pre Table applied first, null if none
+     * @param m Color matrix from {@link ColorMatrices}
+     * @param post Table applied last, null if none
+     */
+    static void pointRange(int[] src, int[] dst, int from, int to,
+                           int[] pre, float[] m, int[] post) {
+        for(int i = from; i < to; i++) {
+            int p = src[i];
+            if(pre != null)
+                p = lookup(pre, p);
+            float a = p >>> 24, r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            int nr = toChannel(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+            int ng = toChannel(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+            int nb = toChannel(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+            int na = toChannel(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]);
+            p = (na << 24) | (nr << 16) | (ng << 8) | nb;
+            dst[i] = post == null ? p : lookup(post, p);
+        }
+    }
+
+    /**
+     * Applies lookup table to one pixel
+     * @param lut Table from {@link ColorLuts}
+     * @param p Pixel
+     * @return Mapped pixel
+     */
+    private static int lookup(int[] lut, int p) {
+        return (lut[ALPHA_LUT + (p >>> 24)] << 24) | (lut[(p >> 16) & 0xFF] << 16)
+                | (lut[GREEN_LUT + ((p >> 8) & 0xFF)] << 8) | lut[BLUE_LUT + (p & 0xFF)];
+    }
+
+    /**
+     * Applies Gaussian blur with same weights as ScriptIntrinsicBlur
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param radius Radius of blur, 0 or less copies image. Cost grows with radius, so
+     *               radii above {@link #MAX_BLUR_RADIUS} are filtered with {@link #boxBlur}
+     */
+    public void blur(int[] src, int[] dst, int width, int height, float radius) {
+        if(radius <= 0) {
+            System.arraycopy(src, 0, dst, 0, width * height);
+            return;
+        }
+
+        float[] weights = gaussianWeights(radius);
+        convolveSeparable(src, dst, width, height, weights, weights, EdgeMode.CLAMP);
+    }
+
+    /**
+     * Applies blur of any radius in time independent of radius: three box passes over
+     * running sums whose combined variance matches Gaussian of given radius. Each pass
+     * runs over rows in parallel, then over bands of columns in parallel, and uses
+     * clamped edges. Working memory is only one row or column band per task
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param radius Radius of blur, standard deviation is the same as for {@link #blur}
+     */
+    public void boxBlur(int[] src, int[] dst, int width, int height, float radius) {
+        if(src != dst)
+            System.arraycopy(src, 0, dst, 0, width * height);
+        int bandColumns = Math.max(1, mTilePixels / Math.max(1, height));
+        for(int r : boxRadii(radius)) {
+            if(r == 0)
+                continue;
+            run(width, height, (fromRow, toRow) -> boxRows(dst, width, fromRow, toRow, r));
+            mPool.invoke(new BandTask((fromColumn, toColumn) ->
+                    boxColumns(dst, width, height, fromColumn, toColumn, r),
+                    0, width, bandColumns));
+        }
+    }
+
+    /**
+     * Applies horizontal box pass to rows in place
+     * @param pixels Pixels of image
+     * @param width Width of image
+     * @param fromRow First row to filter
+     * @param toRow Row after last row to filter
+     * @param r Half-width of box
+     */
+    private static void boxRows(int[] pixels, int width, int fromRow, int toRow, int r) {
+        int[] row = new int[width];
+        float scale = 1f / (2 * r + 1);
+        for(int y = fromRow; y < toRow; y++) {
+            System.arraycopy(pixels, y * width, row, 0, width);
+            int a = 0, red = 0, g = 0, b = 0;
+            for(int k = -r; k <= r; k++) {
+                int p = row[clamp(k, width)];
+                a += p >>> 24;
+                red += (p >> 16) & 0xFF;
+                g += (p >> 8) & 0xFF;
+                b += p & 0xFF;
+            }
+            for(int x = 0, i = y * width; x < width; x++, i++) {
+                pixels[i] = average(a, red, g, b, scale);
+                int in = row[clamp(x + r + 1, width)], out = row[clamp(x - r, width)];
+                a += (in >>> 24) - (out >>> 24);
+                red += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                b += (in & 0xFF) - (out & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Applies vertical box pass to band of columns in place, walking rows in order
+     * so that memory is read sequentially
+     * @param pixels Pixels of image
+     * @param width Width of image
+     * @param height Height of image
+     * @param fromColumn First column to filter
+     * @param toColumn Column after last column to filter
+     * @param r Half-width of box
+     */
+    private static void boxColumns(int[] pixels, int width, int height,
+                                   int fromColumn, int toColumn, int r) {
+        int columns = toColumn - fromColumn;
+        int[] band = new int[columns * height];
+        for(int y = 0; y < height; y++)
+            System.arraycopy(pixels, y * width + fromColumn, band, y * columns, columns);
+
+        //Running sums of each column, 4 channels per column
+        int[] sums = new int[columns * 4];
+        for(int k = -r; k <= r; k++) {
+            int row = clamp(k, height) * columns;
+            for(int c = 0; c < columns; c++)
+                addPixel(sums, c * 4, band[row + c], 1);
+        }
+        float scale = 1f / (2 * r + 1);
+        for(int y = 0; y < height; y++) {
+            int in = clamp(y + r + 1, height) * columns, out = clamp(y - r, height) * columns;
+            for(int c = 0, i = y * width + fromColumn; c < columns; c++, i++) {
+                int s = c * 4;
+                pixels[i] = average(sums[s], sums[s + 1], sums[s + 2], sums[s + 3], scale);
+                addPixel(sums, s, band[in + c], 1);
+                addPixel(sums, s, band[out + c], -1);
+            }
+        }
+    }
+
+    /**
+     * Adds channels of pixel to running sums
+     * @param sums Running sums
+     * @param offset Index of alpha sum, followed by red, green and blue
+     * @param p Pixel
+     * @param sign 1 to add, -1 to subtract
+     */
+    private static void addPixel(int[] sums, int offset, int p, int sign) {
+        sums[offset] += sign * (p >>> 24);
+        sums[offset + 1] += sign * ((p >> 16) & 0xFF);
+        sums[offset + 2] += sign * ((p >> 8) & 0xFF);
+        sums[offset + 3] += sign * (p & 0xFF);
+    }
+
+    /**
+     * Builds pixel from channel sums
+     * @param a Sum of alpha
+     * @param r Sum of red
+     * @param g Sum of green
+     * @param b Sum of blue
+     * @param scale Inverse of number of summed pixels
+     * @return Pixel of averaged channels
+     */
+    private static int average(int a, int r, int g, int b, float scale) {
+        return (toChannel(a * scale) << 24) | (toChannel(r * scale) << 16)
+                | (toChannel(g * scale) << 8) | toChannel(b * scale);
+    }
+
+    /**
+     * Applies sharpening with same kernel as FilterImage.sharpFilter
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param sharpRadius Radius of sharpening
+     */
+    public void sharpen(int[] src, int[] dst, int width, int height, float sharpRadius) {
+        convolve3x3(src, dst, width, height, sharpenKernel(sharpRadius));
+    }
+
+    /**
+     * Applies 3x3 convolution to all channels with clamped edges,
+     * same as ScriptIntrinsicConvolve3x3
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param kernel 9 coefficients in row-major order
+     */
+    public void convolve3x3(int[] src, int[] dst, int width, int height, float[] kernel) {
+        convolve(src, dst, width, height, new ConvolutionKernel(3, kernel), EdgeMode.CLAMP);
+    }
+
+    /**
+     * Applies convolution of any size to all channels. Weight at column x and row y of
+     * kernel multiplies pixel at offset (x - radius, y - radius), like in
+     * ScriptIntrinsicConvolve3x3. Separable kernels run as vertical and horizontal
+     * 1D pass, costing 2N instead of N * N multiplications per pixel
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param kernel Convolution kernel
+     * @param edges How pixels outside of image are read
+     */
+    public void convolve(int[] src, int[] dst, int width, int height,
+                         ConvolutionKernel kernel, EdgeMode edges) {
+        if(kernel.isSeparable())
+            convolveSeparable(src, dst, width, height, kernel.getColumn(), kernel.getRow(),
+                    edges);
+        else
+            convolveDirect(src, dst, width, height, kernel, edges);
+    }
+
+    /**
+     * Applies separable convolution row by row: each row of result is made from one
+     * vertically filtered row, which is then filtered horizontally
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param column Weights of rows of kernel, odd length
+     * @param row Weights of columns of kernel, same length as column
+     * @param edges How pixels outside of image are read
+     */
+    private void convolveSeparable(int[] src, int[] dst, int width, int height,
+                                   float[] column, float[] row, EdgeMode edges) {
+        final int r = column.length / 2;
+        final int[] columns = edgeIndices(-r, width + 2 * r, width, edges);
+        run(width, height, (fromRow, toRow) -> {
+            //Vertically filtered row with edge pixels on both sides
+            float[] line = new float[(width + 2 * r) * 4];
+            int[] rows = new int[2 * r + 1];
+            for(int y = fromRow; y < toRow; y++) {
+                for(int k = 0; k <= 2 * r; k++)
+                    rows[k] = edges.map(y - r + k, height) * width;
+
+                //Vertical pass
+                for(int x = 0; x < width + 2 * r; x++) {
+                    int sx = columns[x];
+                    float a = 0, red = 0, g = 0, b = 0;
+                    for(int k = 0; k <= 2 * r; k++) {
+                        int p = src[rows[k] + sx];
+                        float w = column[k];
+                        a += w * (p >>> 24);
+                        red += w * ((p >> 16) & 0xFF);
+                        g += w * ((p >> 8) & 0xFF);
+                        b += w * (p & 0xFF);
+                    }
+                    int c = x * 4;
+                    line[c] = a;
+                    line[c + 1] = red;
+                    line[c + 2] = g;
+                    line[c + 3] = b;
+                }
+
+                //Horizontal pass
+                for(int x = 0; x < width; x++) {
+                    float a = 0, red = 0, g = 0, b = 0;
+                    for(int k = 0; k <= 2 * r; k++) {
+                        int c = (x + k) * 4;
+                        float w = row[k];
+                        a += w * line[c];
+                        red += w * line[c + 1];
+                        g += w * line[c + 2];
+                        b += w * line[c + 3];
+                    }
+                    dst[y * width + x] = (toChannel(a) << 24) | (toChannel(red) << 16)
+                            | (toChannel(g) << 8) | toChannel(b);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies convolution by summing all N * N taps for each pixel, skipping zero weights
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param kernel Convolution kernel, separable or not
+     * @param edges How pixels outside of image are read
+     */
+    void convolveDirect(int[] src, int[] dst, int width, int height,
+                        ConvolutionKernel kernel, EdgeMode edges) {
+        final int size = kernel.getSize(), r = size / 2;
+        final float[] weights = kernel.getWeights();
+        int taps = 0;
+        for(float w : weights) {
+            if(w != 0)
+                taps++;
+        }
+        //Non-zero taps in row-major order
+        final int[] tapRows = new int[taps], tapColumns = new int[taps];
+        final float[] tapWeights = new float[taps];
+        for(int i = 0, t = 0; i < weights.length; i++) {
+            if(weights[i] == 0)
+                continue;
+            tapRows[t] = i / size;
+            tapColumns[t] = i % size;
+            tapWeights[t++] = weights[i];
+        }
+
+        final int[] columns = edgeIndices(-r, width + 2 * r, width, edges);
+        run(width, height, (fromRow, toRow) -> {
+            int[] rows = new int[size];
+            for(int y = fromRow; y < toRow; y++) {
+                for(int k = 0; k < size; k++)
+                    rows[k] = edges.map(y - r + k, height) * width;
+                for(int x = 0; x < width; x++) {
+                    float a = 0, red = 0, g = 0, b = 0;
+                    for(int t = 0; t < tapWeights.length; t++) {
+                        int p = src[rows[tapRows[t]] + columns[x + tapColumns[t]]];
+                        float w = tapWeights[t];
+                        a += w * (p >>> 24);
+                        red += w * ((p >> 16) & 0xFF);
+                        g += w * ((p >> 8) & 0xFF);
+                        b += w * (p & 0xFF);
+                    }
+                    dst[y * width + x] = (toChannel(a) << 24) | (toChannel(red) << 16)
+                            | (toChannel(g) << 8) | toChannel(b);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies unsharp mask: difference between image and its blurred copy is scaled by
+     * amount and added back to image. Blur is the same as {@link #blur} up to
+     * {@link #MAX_BLUR_RADIUS} and {@link #boxBlur} above it
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, must not be the same array as src
+     * @param width Width of image
+     * @param height Height of image
+     * @param amount Strength of sharpening, 1 doubles local contrast
+     * @param radius Radius of blur that picks details to sharpen
+     * @param threshold Smallest difference of channel from blurred copy that is
+     *                  sharpened, so that noise in flat areas stays as it is
+     */
+    public void unsharpMask(int[] src, int[] dst, int width, int height,
+                            float amount, float radius, float threshold) {
+        if(radius > MAX_BLUR_RADIUS)
+            boxBlur(src, dst, width, height, radius);
+        else
+            blur(src, dst, width, height, radius);
+        unsharpCombine(src, dst, dst, width, height, amount, threshold);
+    }
+
+    /**
+     * Finishes unsharp mask from image and its blurred copy made elsewhere, e.g. by
+     * RenderScript. Color channels are sharpened separately, alpha is kept
+     * @param src Pixels of image to filter
+     * @param blurred Pixels of blurred image
+     * @param dst Pixels of result image, may be the same array as src or blurred
+     * @param width Width of image
+     * @param height Height of image
+     * @param amount Strength of sharpening, 1 doubles local contrast
+     * @param threshold Smallest difference of channel from blurred copy that is sharpened
+     */
+    public void unsharpCombine(int[] src, int[] blurred, int[] dst, int width, int height,
+                               float amount, float threshold) {
+        run(width, height, (fromRow, toRow) -> {
+            for(int i = fromRow * width; i < toRow * width; i++) {
+                int p = src[i], q = blurred[i];
+                int r = unsharpChannel((p >> 16) & 0xFF, (q >> 16) & 0xFF, amount, threshold);
+                int g = unsharpChannel((p >> 8) & 0xFF, (q >> 8) & 0xFF, amount, threshold);
+                int b = unsharpChannel(p & 0xFF, q & 0xFF, amount, threshold);
+                dst[i] = (p & 0xFF000000) | (r << 16) | (g << 8) | b;
+            }
+        });
+    }
+
+    /**
+     * Sharpens one channel of unsharp mask
+     * @param value Channel of image
+     * @param blurred Channel of blurred image
+     * @param amount Strength of sharpening
+     * @param threshold Smallest difference that is sharpened
+     * @return Sharpened channel
+     */
+    private static int unsharpChannel(int value, int blurred, float amount, float threshold) {
+        int difference = value - blurred;
+        if(Math.abs(difference) < threshold)
+            return value;
+        return toChannel(value + amount * difference);
+    }
+
+    /**
+     * Gets standard deviation of Gaussian used for blur of given radius
+     * @param radius Radius of blur
+     * @return Standard deviation in pixels
+     */
+    static float blurSigma(float radius) {
+        return 0.4f * radius + 0.6f;
+    }
+
+    /**
+     * Gets blur radius that uses Gaussian of given standard deviation
+     * @param sigma Standard deviation in pixels
+     * @return Radius of blur, negative if sigma is too small for any blur
+     */
+    static float blurRadius(float sigma) {
+        return (sigma - 0.6f) / 0.4f;
+    }
+
+    /**
+     * Finds half-widths of box passes whose combined variance is closest to Gaussian
+     * of given blur radius: boxes of two neighbouring odd widths are mixed
+     * @param radius Radius of blur
+     * @return Half-widths of {@value #BOX_PASSES} passes, 0 for passes to skip
+     */
+    static int[] boxRadii(float radius) {
+        int[] radii = new int[BOX_PASSES];
+        if(radius <= 0)
+            return radii;
+
+        float sigma = blurSigma(radius);
+        double variance = 12.0 * sigma * sigma;
+        int lower = (int)Math.floor(Math.sqrt(variance / BOX_PASSES + 1));
+        if(lower % 2 == 0)
+            lower--;
+        int lowerPasses = (int)Math.round((variance - BOX_PASSES * lower * lower
+                - 4.0 * BOX_PASSES * lower - 3.0 * BOX_PASSES) / (-4.0 * lower - 4));
+        for(int i = 0; i < BOX_PASSES; i++)
+            radii[i] = ((i < lowerPasses ? lower : lower + 2) - 1) / 2;
+        return radii;
+    }
+
+    /**
+     * Gets how far away pixels affect each pixel of box blur
+     * @param radius Radius of blur
+     * @return Number of pixels in each direction
+     */
+    static int boxBlurReach(float radius) {
+        int reach = 0;
+        for(int r : boxRadii(radius))
+            reach += r;
+        return reach;
+    }
+
+    /**
+     * Computes Gaussian weights the same way as ScriptIntrinsicBlur does
+     * @param radius Radius of blur
+     * @return Normalized weights of size 2 * ceil(radius) + 1
+     */
+    static float[] gaussianWeights(float radius) {
+        float sigma = blurSigma(radius);
+        float coeff1 = 1.0f / ((float)Math.sqrt(2.0 * Math.PI) * sigma);
+        float coeff2 = -1.0f / (2.0f * sigma * sigma);
+        int iradius = (int)Math.ceil(radius);
+
+        float[] weights = new float[2 * iradius + 1];
+        float normalizeFactor = 0;
+        for(int r = -iradius; r <= iradius; r++) {
+            weights[r + iradius] = coeff1 * (float)Math.exp(r * r * coeff2);
+            normalizeFactor += weights[r + iradius];
+        }
+        for(int i = 0; i < weights.length; i++)
+            weights[i] /= normalizeFactor;
+        return weights;
+    }
+
+    /**
+     * Builds sharpening kernel used by FilterImage.sharpFilter
+     * @param sharpRadius Radius of sharpening
+     * @return 9 coefficients in row-major order
+     */
+    static float[] sharpenKernel(float sharpRadius) {
+        return new float[] { 0, -sharpRadius, 0, -sharpRadius,
+                5f * sharpRadius, -sharpRadius, 0, -sharpRadius, 0 };
+    }
+
+    /**
+     * Rounds and clamps channel value to [0, 255]
+     * @param value Channel value
+     * @return Channel value as integer
+     */
+    static int toChannel(float value) {
+        if(value <= 0)
+            return 0;
+        if(value >= 255)
+            return 255;
+        return (int)(value + 0.5f);
+    }
+
+    /**
+     * Clamps coordinate to image edge
+     * @param value Coordinate
+     * @param size Width or height of image
+     * @return Coordinate in [0, size)
+     */
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
+
+    /**
+     * Maps range of coordinates, possibly outside of image, to pixels read for them
+     * @param from First coordinate
+     * @param count Number of coordinates
+     * @param size Width or height of image
+     * @param edges How pixels outside of image are read
+     * @return Coordinates in [0, size)
+     */
+    private static int[] edgeIndices(int from, int count, int size, EdgeMode edges) {
+        int[] indices = new int[count];
+        for(int i = 0; i < count; i++)
+            indices[i] = edges.map(from + i, size);
+        return indices;
+    }
+
+    /**
+     * Runs kernel over all rows of image, split into bands
+     * @param width Width of image
+     * @param height Height of image
+     * @param kernel Kernel to run over each band
+     */
+    private void run(int width, int height, RowKernel kernel) {
+        int bandRows = Math.max(1, mTilePixels / Math.max(1, width));
+        mPool.invoke(new BandTask(kernel, 0, height, bandRows));
+    }
+
+    /**
+     * Ways of reading pixels outside of image
+     */
+    public enum EdgeMode {
+        /**
+         * Nearest edge pixel is repeated
+         */
+        CLAMP,
+
+        /**
+         * Image is reflected around edge pixel, which isn't repeated
+         */
+        MIRROR,
+
+        /**
+         * Image repeats from opposite edge
+         */
+        WRAP;
+
+        /**
+         * Maps coordinate to pixel read for it
+         * @param value Coordinate, possibly outside of image
+         * @param size Width or height of image
+         * @return Coordinate in [0, size)
+         */
+        int map(int value, int size) {
+            if(value >= 0 && value < size)
+                return value;
+            switch(this) {
+                case MIRROR: {
+                    if(size == 1)
+                        return 0;
+                    int period = 2 * (size - 1), folded = Math.abs(value) % period;
+                    return folded < size ? folded : period - folded;
+                }
+                case WRAP:
+                    return ((value % size) + size) % size;
+                default:
+                    return clamp(value, size);
+            }
+        }
+    }
+
+    /**
+     * Filter code that processes range of rows
+     */
+    interface RowKernel {
+        /**
+         * Processes rows of image
+         * @param fromRow First row to process
+         * @param toRow Row after last row to process
+         */
+        void process(int fromRow, int toRow);
+    }
+
+    /**
+     * Task that splits range of rows in halves until it fits into one band
+     */
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowKernel mKernel;
+        private final int mFromRow, mToRow, mBandRows;
+
+        BandTask(RowKernel kernel, int fromRow, int toRow, int bandRows) {
+            mKernel = kernel;
+            mFromRow = fromRow;
+            mToRow = toRow;
+            mBandRows = bandRows;
+        }
+
+        @Override
+        protected void compute() {
+            if(mToRow - mFromRow <= mBandRows) {
+                mKernel.process(mFromRow, mToRow);
+                return;
+            }
+            int middle = (mFromRow + mToRow) >>> 1;
+            invokeAll(new BandTask(mKernel, mFromRow, middle, mBandRows),
+                    new BandTask(mKernel, middle, mToRow, mBandRows));
+        }
+    }
+}
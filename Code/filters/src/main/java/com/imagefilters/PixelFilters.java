@@ -0,0 +1,72 @@
+package com.imagefilters;
+
+import java.util.List;
+
+/**
+ * Applies filter steps to ARGB int[] images with {@link PixelEngine}, outside of Android.
+ * Consecutive point filter steps are combined into one {@link PointChain} pass the same
+ * way {@code FilterChain} does, and blur above maximum radius is approximated by box blur
+ */
+public class PixelFilters {
+    /**
+     * Engine that runs filters
+     */
+    private final PixelEngine mEngine;
+
+    /**
+     * Creates filters running on given engine
+     * @param engine Engine that runs filters, may be shared by many threads
+     */
+    public PixelFilters(PixelEngine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * Applies steps to image
+     * @param pixels Pixels of image, overwritten as one of two working buffers
+     * @param width Width of image
+     * @param height Height of image
+     * @param ops Steps to apply
+     * @param scale Ratio of image size to size steps were chosen for
+     * @return Pixels of filtered image, either pixels or new array
+     */
+    public int[] apply(int[] pixels, int width, int height, List<FilterOp> ops, float scale) {
+        int[] src = pixels, dst = null;
+        PointChain points = new PointChain();
+        for(FilterOp op : ops) {
+            op = op.scaled(scale);
+            if(op.isPointFilter()) {
+                if(!points.add(op)) {
+                    mEngine.pointFilter(src, src, width, height, points);
+                    points = new PointChain();
+                    points.add(op);
+                }
+                continue;
+            }
+
+            if(!points.isIdentity()) {
+                mEngine.pointFilter(src, src, width, height, points);
+                points = new PointChain();
+            }
+            if(dst == null)
+                dst = new int[pixels.length];
+
+            if(op.getType() == FilterOp.Type.BLUR && op.getParam() > PixelEngine.MAX_BLUR_RADIUS)
+                mEngine.boxBlur(src, dst, width, height, op.getParam());
+            else if(op.getType() == FilterOp.Type.BLUR)
+                mEngine.blur(src, dst, width, height, op.getParam());
+            else if(op.getType() == FilterOp.Type.UNSHARP)
+                mEngine.unsharpMask(src, dst, width, height, op.getParam(0), op.getParam(1),
+                        op.getParam(2));
+            else
+                mEngine.sharpen(src, dst, width, height, op.getParam());
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+
+        if(!points.isIdentity())
+            mEngine.pointFilter(src, src, width, height, points);
+        return src;
+    }
+}
@@ -0,0 +1,133 @@
+package com.imagefilters;
+
+/**
+ * Consecutive point filters combined into one pass over pixels: lookup table, color
+ * matrix, then lookup table. Matrices are multiplied, tables are composed and matrices
+ * that don't mix channels are turned into tables, so that any chain without channel
+ * mixing costs only integer table lookups. Tables give the same result as applying
+ * filters one by one, as every stage rounds to integer channels like separate passes do
+ */
+public final class PointChain {
+    /**
+     * Table applied before matrix, null if none
+     */
+    private int[] mPreLut;
+
+    /**
+     * Color matrix applied between tables
+     */
+    private float[] mMatrix = ColorMatrices.IDENTITY;
+
+    /**
+     * Table applied after matrix, null if none
+     */
+    private int[] mPostLut;
+
+    /**
+     * Adds point filter to pass
+     * @param op Color matrix or lookup table filter
+     * @return True if filter was added, false if pass must be applied before it
+     * @throws IllegalArgumentException If filter isn't point filter
+     */
+    public boolean add(FilterOp op) {
+        float[] matrix = op.getMatrix();
+        if(matrix != null)
+            return addMatrix(matrix);
+        int[] lut = op.getLut();
+        if(lut == null)
+            throw new IllegalArgumentException(op + " isn't point filter");
+        addLut(lut);
+        return true;
+    }
+
+    /**
+     * Adds color matrix to pass
+     * @param matrix 4x5 color matrix from {@link ColorMatrices}
+     * @return True if matrix was added, false if it mixes channels after table that
+     * follows other channel mixing matrix, so pass must be applied before it
+     */
+    public boolean addMatrix(float[] matrix) {
+        if(mPostLut == null)
+            mMatrix = ColorMatrices.concat(mMatrix, matrix);
+        else if(ColorLuts.isPerChannel(matrix))
+            mPostLut = ColorLuts.compose(mPostLut, ColorLuts.fromMatrix(matrix));
+        else {
+            //Pass that is only table keeps it in front of matrix, so table after matrix
+            //means matrix of pass already mixes channels
+            return false;
+        }
+        normalize();
+        return true;
+    }
+
+    /**
+     * Adds lookup table to pass, which always fits after matrix
+     * @param lut Table from {@link ColorLuts}
+     */
+    public void addLut(int[] lut) {
+        mPostLut = mPostLut == null ? lut.clone() : ColorLuts.compose(mPostLut, lut);
+        normalize();
+    }
+
+    /**
+     * @return True if pass leaves colors untouched
+     */
+    public boolean isIdentity() {
+        return mPreLut == null && mPostLut == null && ColorMatrices.isIdentity(mMatrix);
+    }
+
+    /**
+     * @return True if pass has lookup table, false if it is only color matrix
+     */
+    public boolean hasLut() {
+        return mPreLut != null || mPostLut != null;
+    }
+
+    /**
+     * @return Color matrix of pass, the only stage if pass has no lookup table
+     */
+    public float[] getMatrix() {
+        return mMatrix.clone();
+    }
+
+    /**
+     * Applies pass to range of pixels on calling thread
+     * @param src Pixels of image to filter
+     * @param dst Pixels of result image, may be the same array as src
+     * @param from Index of first pixel to filter
+     * @param to Index after last pixel to filter
+     */
+    public void applyRange(int[] src, int[] dst, int from, int to) {
+        if(!hasLut())
+            PixelEngine.colorMatrixRange(src, dst, from, to, mMatrix);
+        else if(ColorMatrices.isIdentity(mMatrix))
+            PixelEngine.lutRange(src, dst, from, to, mPreLut == null ? mPostLut : mPreLut);
+        else
+            PixelEngine.pointRange(src, dst, from, to, mPreLut, mMatrix, mPostLut);
+    }
+
+    /**
+     * Turns matrix that doesn't mix channels into table together with both tables, so
+     * that pass with any table is either single table or table around mixing matrix
+     */
+    private void normalize() {
+        if(hasLut() && ColorLuts.isPerChannel(mMatrix)) {
+            mPreLut = toLut();
+            mPostLut = null;
+            mMatrix = ColorMatrices.IDENTITY;
+        }
+    }
+
+    /**
+     * Combines pass into one table
+     * @return Table of pass, valid only if matrix doesn't mix channels
+     */
+    private int[] toLut() {
+        int[] lut = ColorLuts.fromMatrix(mMatrix);
+        if(mPreLut != null)
+            lut = ColorLuts.compose(mPreLut, lut);
+        if(mPostLut != null)
+            lut = ColorLuts.compose(lut, mPostLut);
+        return lut;
+    }
+}
@@ -0,0 +1,102 @@
+package com.imagefilters;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of adjustments chosen from image statistics
+ */
+public class AutoAdjustTest {
+    /**
+     * Engine that gathers statistics
+     */
+    private final PixelEngine mEngine = new PixelEngine(2, 64);
+
+    @After
+    public void tearDown() {
+        mEngine.shutdown();
+    }
+
+    /**
+     * Tests if auto levels stretch dull gray ramp to full range
+     */
+    @Test
+    public void levels_stretchesToFullRange() {
+        int[] pixels = new int[101];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = gray(100 + i);
+        FilterOp levels = AutoAdjust.levels(mEngine.statistics(pixels, pixels.length, 1), 0f);
+        assertEquals(FilterOp.Type.LEVELS, levels.getType());
+        assertEquals(100f, levels.getParam(0), 0f);
+        assertEquals(200f, levels.getParam(1), 0f);
+
+        int[] stretched = new int[pixels.length];
+        PointChain chain = new PointChain();
+        chain.add(levels);
+        mEngine.pointFilter(pixels, stretched, pixels.length, 1, chain);
+        ImageStats stats = mEngine.statistics(stretched, pixels.length, 1);
+        assertEquals(0, stats.getMin(ImageStats.LUMA));
+        assertEquals(255, stats.getMax(ImageStats.LUMA));
+    }
+
+    /**
+     * Tests if clipping ignores outliers and flat image gets valid range
+     */
+    @Test
+    public void levels_clipsOutliersAndHandlesFlatImage() {
+        int[] pixels = new int[1000];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = gray(i == 0 ? 0 : (i == 1 ? 255 : 60 + i % 100));
+        FilterOp levels = AutoAdjust.levels(mEngine.statistics(pixels, 100, 10),
+                AutoAdjust.DEFAULT_CLIP);
+        assertEquals(60f, levels.getParam(0), 1f);
+        assertEquals(159f, levels.getParam(1), 1f);
+
+        int[] white = { gray(255), gray(255) };
+        FilterOp flat = AutoAdjust.levels(mEngine.statistics(white, 2, 1), 0f);
+        assertTrue(flat.getParam(1) > flat.getParam(0));
+        assertNotNull(flat.getLut());
+    }
+
+    /**
+     * Tests if white balance makes color cast gray and contrast stretch fills every channel
+     */
+    @Test
+    public void whiteBalanceAndContrast_removeColorCast() {
+        int[] pixels = new int[64];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | (120 + i) << 16 | (80 + i) << 8 | (40 + i);
+        ImageStats stats = mEngine.statistics(pixels, 8, 8);
+
+        FilterOp balance = AutoAdjust.create(AutoAdjust.Kind.WHITE_BALANCE, stats);
+        assertTrue(balance.isLut());
+        int[] balanced = new int[pixels.length];
+        PixelEngine.lutRange(pixels, balanced, 0, pixels.length, balance.getLut());
+        ImageStats after = mEngine.statistics(balanced, 8, 8);
+        assertEquals(after.getMean(ImageStats.RED), after.getMean(ImageStats.BLUE), 1.0);
+        assertEquals(after.getMean(ImageStats.GREEN), after.getMean(ImageStats.BLUE), 1.0);
+
+        FilterOp contrast = AutoAdjust.create(AutoAdjust.Kind.CONTRAST, stats);
+        assertEquals(FilterOp.Type.CHANNEL_LEVELS, contrast.getType());
+        int[] stretched = new int[pixels.length];
+        PointChain chain = new PointChain();
+        chain.add(contrast);
+        mEngine.pointFilter(pixels, stretched, 8, 8, chain);
+        ImageStats full = mEngine.statistics(stretched, 8, 8);
+        for(int channel = ImageStats.RED; channel <= ImageStats.BLUE; channel++) {
+            assertEquals(0, full.getMin(channel));
+            assertEquals(255, full.getMax(channel));
+        }
+    }
+
+    /**
+     * Builds opaque gray pixel
+     * @param value Value of every channel
+     * @return ARGB pixel
+     */
+    private static int gray(int value) {
+        return 0xFF000000 | value << 16 | value << 8 | value;
+    }
+}
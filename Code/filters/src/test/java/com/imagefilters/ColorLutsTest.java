@@ -0,0 +1,102 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of lookup tables and their combination
+ */
+public class ColorLutsTest {
+    /**
+     * Tests known values of each table and that alpha is kept
+     */
+    @Test
+    public void tables_knownValues() {
+        int[] gamma = ColorLuts.gamma(2f);
+        //255 * sqrt(64 / 255) = 127.75
+        assertEquals(128, gamma[64]);
+        assertEquals(255, gamma[255]);
+        assertEquals(64, gamma[3 * ColorLuts.CHANNEL_SIZE + 64]);
+
+        int[] levels = ColorLuts.levels(55f, 205f);
+        assertEquals(0, levels[40]);
+        assertEquals(128, levels[130]);
+        assertEquals(255, levels[220]);
+
+        int[] posterize = ColorLuts.posterize(2f);
+        assertEquals(0, posterize[127]);
+        assertEquals(255, posterize[128]);
+
+        int[] brighter = ColorLuts.brightnessContrast(0.1f, 0f);
+        assertEquals(126, brighter[100]);
+        assertArrayEquals(ColorLuts.identity(), ColorLuts.brightnessContrast(0f, 0f));
+    }
+
+    /**
+     * Tests if curve passes through its points and rises monotonically between them
+     */
+    @Test
+    public void curves_monotoneThroughPoints() {
+        int[] curve = ColorLuts.curves(90f, 160f, 220f);
+        assertEquals(0, curve[0]);
+        assertEquals(90, curve[64]);
+        assertEquals(160, curve[128]);
+        assertEquals(220, curve[192]);
+        assertEquals(255, curve[255]);
+        for(int v = 1; v < ColorLuts.CHANNEL_SIZE; v++)
+            assertTrue(curve[v] >= curve[v - 1]);
+        assertTrue(ColorLuts.isIdentity(ColorLuts.curves(64f, 128f, 192f)));
+    }
+
+    /**
+     * Tests if composed table gives the same result as applying tables one by one
+     */
+    @Test
+    public void compose_matchesSequential() {
+        int[] first = ColorLuts.gamma(0.7f), second = ColorLuts.posterize(5f);
+        int[] composed = ColorLuts.compose(first, second);
+        for(int i = 0; i < ColorLuts.SIZE; i++) {
+            int channel = i / ColorLuts.CHANNEL_SIZE * ColorLuts.CHANNEL_SIZE;
+            assertEquals(second[channel + first[i]], composed[i]);
+        }
+    }
+
+    /**
+     * Tests if channel levels stretch every channel by its own range and keep alpha
+     */
+    @Test
+    public void channelLevels_perChannel() {
+        int[] lut = ColorLuts.channelLevels(0, 255, 50, 100, 100, 200);
+        int c = ColorLuts.CHANNEL_SIZE;
+        assertEquals(75, lut[75]);
+        assertEquals(0, lut[c + 50]);
+        assertEquals(128, lut[c + 75]);
+        assertEquals(255, lut[c + 100]);
+        assertEquals(0, lut[2 * c + 75]);
+        assertEquals(128, lut[2 * c + 150]);
+        assertEquals(75, lut[3 * c + 75]);
+    }
+
+    /**
+     * Tests if only matrices that don't mix channels become tables
+     */
+    @Test
+    public void fromMatrix() {
+        int[] invert = ColorLuts.fromMatrix(ColorMatrices.INVERT);
+        assertEquals(255, invert[0]);
+        assertEquals(0, invert[255]);
+        assertEquals(10, invert[3 * ColorLuts.CHANNEL_SIZE + 10]);
+        assertTrue(ColorLuts.isIdentity(ColorLuts.fromMatrix(ColorMatrices.IDENTITY)));
+        assertNull(ColorLuts.fromMatrix(ColorMatrices.GRAYSCALE));
+        assertNull(ColorLuts.fromMatrix(ColorMatrices.GBR));
+    }
+
+    /**
+     * Tests if parameters that can't make table are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void levels_rejectsInvertedRange() {
+        ColorLuts.levels(200f, 100f);
+    }
+}
@@ -0,0 +1,83 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of color matrix combination
+ */
+public class ColorMatricesTest {
+    /**
+     * Maximum difference between matrix elements considered equal
+     */
+    private static final float DELTA = 1e-5f;
+
+    /**
+     * Tests if inverting twice cancels out
+     */
+    @Test
+    public void invertTwice_isIdentity() {
+        float[] m = ColorMatrices.concat(ColorMatrices.INVERT, ColorMatrices.INVERT);
+        assertTrue(ColorMatrices.isIdentity(m));
+        assertArrayEquals(ColorMatrices.IDENTITY, m, 0f);
+    }
+
+    /**
+     * Tests if GBR and BRG are inverse to each other
+     */
+    @Test
+    public void gbrThenBrg_isIdentity() {
+        assertTrue(ColorMatrices.isIdentity(
+                ColorMatrices.concat(ColorMatrices.GBR, ColorMatrices.BRG)));
+        assertTrue(ColorMatrices.isIdentity(
+                ColorMatrices.concat(ColorMatrices.BRG, ColorMatrices.GBR)));
+    }
+
+    /**
+     * Tests if applying GBR three times cancels out
+     */
+    @Test
+    public void gbrThreeTimes_isIdentity() {
+        float[] m = ColorMatrices.concat(ColorMatrices.GBR, ColorMatrices.GBR);
+        assertFalse(ColorMatrices.isIdentity(m));
+        assertArrayEquals(ColorMatrices.BRG, m, 0f);
+        assertTrue(ColorMatrices.isIdentity(ColorMatrices.concat(m, ColorMatrices.GBR)));
+    }
+
+    /**
+     * Tests if grayscale applied twice equals grayscale applied once
+     */
+    @Test
+    public void grayscale_isIdempotent() {
+        float[] m = ColorMatrices.concat(ColorMatrices.GRAYSCALE, ColorMatrices.GRAYSCALE);
+        assertArrayEquals(ColorMatrices.GRAYSCALE, m, DELTA);
+    }
+
+    /**
+     * Tests if combined matrix gives same color as applying matrices one by one
+     */
+    @Test
+    public void concat_matchesSequentialApplication() {
+        float[] color = { 10, 200, 77, 255 };
+        float[] expected = apply(ColorMatrices.GBR, apply(ColorMatrices.INVERT, color));
+        float[] actual = apply(ColorMatrices.concat(ColorMatrices.INVERT,
+                ColorMatrices.GBR), color);
+        assertArrayEquals(expected, actual, DELTA);
+    }
+
+    /**
+     * Applies matrix to color without clamping
+     * @param m 4x5 color matrix
+     * @param c Color as {R, G, B, A}
+     * @return Resulting color
+     */
+    private static float[] apply(float[] m, float[] c) {
+        float[] result = new float[4];
+        for(int row = 0; row < 4; row++) {
+            result[row] = m[row * 5] * c[0] + m[row * 5 + 1] * c[1]
+                    + m[row * 5 + 2] * c[2] + m[row * 5 + 3] * c[3] + m[row * 5 + 4];
+        }
+        return result;
+    }
+}
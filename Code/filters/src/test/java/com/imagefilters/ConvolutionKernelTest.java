@@ -0,0 +1,46 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of convolution kernels
+ */
+public class ConvolutionKernelTest {
+    /**
+     * Tests if product of two vectors is found separable and factored back
+     */
+    @Test
+    public void separable_factorsReproduceKernel() {
+        float[] column = { 1f, -2f, 4f, -2f, 1f }, row = { 0.5f, 1f, 3f, 1f, 0.5f };
+        ConvolutionKernel kernel = new ConvolutionKernel(5,
+                ConvolutionKernel.separable(column, row).getWeights());
+        assertTrue(kernel.isSeparable());
+
+        float[] factorColumn = kernel.getColumn(), factorRow = kernel.getRow();
+        for(int y = 0; y < 5; y++) {
+            for(int x = 0; x < 5; x++)
+                assertEquals(column[y] * row[x], factorColumn[y] * factorRow[x], 1e-5f);
+        }
+    }
+
+    /**
+     * Tests if kernels of higher rank aren't separable and all-zero kernel is
+     */
+    @Test
+    public void isSeparable() {
+        assertFalse(new ConvolutionKernel(3, PixelEngine.sharpenKernel(1f)).isSeparable());
+        assertFalse(new ConvolutionKernel(3, 1, 0, 0, 0, 1, 0, 0, 0, 1).isSeparable());
+        assertTrue(new ConvolutionKernel(3, new float[9]).isSeparable());
+        assertTrue(new ConvolutionKernel(1, 2f).isSeparable());
+    }
+
+    /**
+     * Tests if kernel of even size is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEvenSize() {
+        new ConvolutionKernel(2, 1, 1, 1, 1);
+    }
+}
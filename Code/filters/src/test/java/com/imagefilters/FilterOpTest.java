@@ -0,0 +1,171 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of filter steps
+ */
+public class FilterOpTest {
+    /**
+     * Tests if blur Gaussian grows proportionally to image size
+     */
+    @Test
+    public void scaled_blurSigmaIsProportional() {
+        FilterOp preview = new FilterOp(FilterOp.Type.BLUR, 25f);
+        FilterOp full = preview.scaled(4f);
+        assertEquals(FilterOp.Type.BLUR, full.getType());
+        assertEquals(4f * PixelEngine.blurSigma(25f),
+                PixelEngine.blurSigma(full.getParam()), 1e-4f);
+    }
+
+    /**
+     * Tests if scaling by one and scaling of other filters keeps step unchanged
+     */
+    @Test
+    public void scaled_keepsOtherSteps() {
+        FilterOp blur = new FilterOp(FilterOp.Type.BLUR, 10f);
+        assertEquals(10f, blur.scaled(1f).getParam(), 1e-4f);
+
+        FilterOp sharpen = new FilterOp(FilterOp.Type.SHARPEN, 1f);
+        assertEquals(sharpen, sharpen.scaled(3f));
+
+        FilterOp invert = new FilterOp(FilterOp.Type.INVERT);
+        assertEquals(invert, invert.scaled(3f));
+    }
+
+    /**
+     * Tests if only invert, grayscale, GBR and BRG are color matrices
+     */
+    @Test
+    public void isColorMatrix() {
+        for(FilterOp.Type type : FilterOp.Type.values()) {
+            boolean expected = type.getParamCount() == 0;
+            float[] params = new float[type.getParamCount()];
+            Arrays.fill(params, 1f);
+            assertEquals(expected, new FilterOp(type, params).isColorMatrix());
+        }
+    }
+
+    /**
+     * Tests if halo covers every blur pass and is zero for color matrices
+     */
+    @Test
+    public void getHaloRadius() {
+        assertEquals(25, new FilterOp(FilterOp.Type.BLUR, 24.5f).getHaloRadius());
+        int halo = new FilterOp(FilterOp.Type.BLUR, 100f).getHaloRadius();
+        assertTrue(halo >= 100);
+        assertEquals(1, new FilterOp(FilterOp.Type.SHARPEN, 1f).getHaloRadius());
+        assertEquals(0, new FilterOp(FilterOp.Type.GBR).getHaloRadius());
+        assertEquals(5, new FilterOp(FilterOp.Type.UNSHARP, 2f, 5f, 1f).getHaloRadius());
+    }
+
+    /**
+     * Tests if recipe written by formatRecipe is parsed back to same steps
+     */
+    @Test
+    public void parseRecipe_roundTrip() {
+        List<FilterOp> ops = Arrays.asList(new FilterOp(FilterOp.Type.GBR),
+                new FilterOp(FilterOp.Type.BLUR, 12.5f), new FilterOp(FilterOp.Type.SHARPEN, 1f));
+        assertEquals(ops, FilterOp.parseRecipe(FilterOp.formatRecipe(ops)));
+        assertEquals(ops, FilterOp.parseRecipe(" gbr , blur(12.5),SHARPEN(1) "));
+        assertTrue(FilterOp.parseRecipe("").isEmpty());
+    }
+
+    /**
+     * Tests if steps with many parameters keep them through recipe and scaling
+     */
+    @Test
+    public void unsharp_keepsAllParams() {
+        FilterOp unsharp = new FilterOp(FilterOp.Type.UNSHARP, 1.5f, 4f, 2f);
+        List<FilterOp> ops = Arrays.asList(unsharp, new FilterOp(FilterOp.Type.INVERT));
+        assertEquals("UNSHARP(1.5,4.0,2.0),INVERT", FilterOp.formatRecipe(ops));
+        assertEquals(ops, FilterOp.parseRecipe(FilterOp.formatRecipe(ops)));
+        assertEquals(ops, FilterOp.parseRecipe("unsharp(1.5, 4, 2) ,invert"));
+
+        FilterOp full = unsharp.scaled(3f);
+        assertEquals(1.5f, full.getParam(0), 0f);
+        assertEquals(3f * PixelEngine.blurSigma(4f),
+                PixelEngine.blurSigma(full.getParam(1)), 1e-4f);
+        assertEquals(2f, full.getParam(2), 0f);
+    }
+
+    /**
+     * Tests if lookup table steps are point filters but not color matrices
+     */
+    @Test
+    public void isLut() {
+        FilterOp gamma = FilterOp.parse("GAMMA(2.2)");
+        assertTrue(gamma.isLut());
+        assertTrue(gamma.isPointFilter());
+        assertFalse(gamma.isColorMatrix());
+        assertArrayEquals(ColorLuts.gamma(2.2f), gamma.getLut());
+        assertEquals("GAMMA(2.2)", gamma.toString());
+        assertEquals(0, gamma.getHaloRadius());
+
+        assertTrue(new FilterOp(FilterOp.Type.INVERT).isPointFilter());
+        assertNull(new FilterOp(FilterOp.Type.INVERT).getLut());
+        assertFalse(new FilterOp(FilterOp.Type.BLUR, 5f).isPointFilter());
+    }
+
+    /**
+     * Tests if color balance is table of gain matrix that keeps gains through recipe
+     */
+    @Test
+    public void colorBalance_isGainTable() {
+        FilterOp balance = new FilterOp(FilterOp.Type.COLOR_BALANCE, 1.25f, 1f, 0.5f);
+        assertTrue(balance.isLut());
+        assertArrayEquals(ColorLuts.fromMatrix(ColorMatrices.scale(1.25f, 1f, 0.5f)),
+                balance.getLut());
+        assertEquals("COLOR_BALANCE(1.25,1.0,0.5)", balance.toString());
+        assertEquals(balance, FilterOp.parse(balance.toString()));
+
+        FilterOp levels = FilterOp.parse("CHANNEL_LEVELS(10,250,0,255,20,200)");
+        assertTrue(levels.isLut());
+        assertArrayEquals(ColorLuts.channelLevels(10, 250, 0, 255, 20, 200), levels.getLut());
+    }
+
+    /**
+     * Tests if step with too many parameters is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsExtraParams() {
+        FilterOp.parse("BLUR(1.0,2.0)");
+    }
+
+    /**
+     * Tests if parameter given to filter without parameters is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsParamOfFilterWithoutParams() {
+        FilterOp.parse("INVERT(3)");
+    }
+
+    /**
+     * Tests if step with too few parameters is rejected instead of taking 0 for missing ones
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsMissingParams() {
+        FilterOp.parse("LEVELS(16)");
+    }
+
+    /**
+     * Tests if constructor rejects step without parameters of filter that takes them
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsMissingParams() {
+        new FilterOp(FilterOp.Type.BLUR);
+    }
+
+    /**
+     * Tests if unknown step is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsUnknownStep() {
+        FilterOp.parse("SEPIA");
+    }
+}
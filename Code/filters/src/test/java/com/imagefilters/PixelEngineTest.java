@@ -0,0 +1,342 @@
+package com.imagefilters;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of pure Java filter engine
+ */
+public class PixelEngineTest {
+    /**
+     * Size of random test image, chosen so that bands don't divide it evenly
+     */
+    private static final int WIDTH = 97, HEIGHT = 61;
+
+    /**
+     * Engine with small bands to test splitting, and single-threaded one
+     */
+    private final PixelEngine mParallel = new PixelEngine(4, 300),
+            mSequential = new PixelEngine(1, Integer.MAX_VALUE);
+
+    @After
+    public void tearDown() {
+        mParallel.shutdown();
+        mSequential.shutdown();
+    }
+
+    /**
+     * Tests if matrix filters give expected colors
+     */
+    @Test
+    public void colorMatrix_knownColors() {
+        int[] src = { 0xFF102030 }, dst = new int[1];
+
+        mParallel.colorMatrix(src, dst, 1, 1, ColorMatrices.INVERT);
+        assertEquals(0xFFEFDFCF, dst[0]);
+
+        mParallel.colorMatrix(src, dst, 1, 1, ColorMatrices.GBR);
+        assertEquals(0xFF301020, dst[0]);
+
+        mParallel.colorMatrix(src, dst, 1, 1, ColorMatrices.BRG);
+        assertEquals(0xFF203010, dst[0]);
+
+        //0.213 * 16 + 0.715 * 32 + 0.072 * 48 = 29.744
+        mParallel.colorMatrix(src, dst, 1, 1, ColorMatrices.GRAYSCALE);
+        assertEquals(0xFF1E1E1E, dst[0]);
+    }
+
+    /**
+     * Tests if matrix filter can write result over source
+     */
+    @Test
+    public void colorMatrix_inPlace() {
+        int[] expected = new int[WIDTH * HEIGHT], pixels = randomImage();
+        mSequential.colorMatrix(pixels, expected, WIDTH, HEIGHT, ColorMatrices.INVERT);
+        mParallel.colorMatrix(pixels, pixels, WIDTH, HEIGHT, ColorMatrices.INVERT);
+        assertArrayEquals(expected, pixels);
+    }
+
+    /**
+     * Tests if splitting into bands doesn't change result
+     */
+    @Test
+    public void parallel_matchesSequential() {
+        int[] src = randomImage();
+        int[] expected = new int[src.length], actual = new int[src.length];
+
+        mSequential.blur(src, expected, WIDTH, HEIGHT, 7.5f);
+        mParallel.blur(src, actual, WIDTH, HEIGHT, 7.5f);
+        assertArrayEquals(expected, actual);
+
+        mSequential.sharpen(src, expected, WIDTH, HEIGHT, 1);
+        mParallel.sharpen(src, actual, WIDTH, HEIGHT, 1);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Tests if blur matches straightforward 2D Gaussian with clamped edges
+     */
+    @Test
+    public void blur_matchesReference() {
+        int[] src = randomImage(), actual = new int[src.length];
+        float radius = 4.2f;
+        mParallel.blur(src, actual, WIDTH, HEIGHT, radius);
+
+        float[] w = PixelEngine.gaussianWeights(radius);
+        int r = w.length / 2;
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                for(int shift = 0; shift < 32; shift += 8) {
+                    double sum = 0;
+                    for(int ky = -r; ky <= r; ky++) {
+                        for(int kx = -r; kx <= r; kx++) {
+                            int sy = Math.min(HEIGHT - 1, Math.max(0, y + ky));
+                            int sx = Math.min(WIDTH - 1, Math.max(0, x + kx));
+                            sum += w[ky + r] * w[kx + r] * ((src[sy * WIDTH + sx] >>> shift) & 0xFF);
+                        }
+                    }
+                    int actualChannel = (actual[y * WIDTH + x] >>> shift) & 0xFF;
+                    assertEquals(Math.round(sum), actualChannel, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests if Gaussian weights are normalized and symmetric
+     */
+    @Test
+    public void gaussianWeights_normalized() {
+        float[] w = PixelEngine.gaussianWeights(25f);
+        assertEquals(51, w.length);
+        float sum = 0;
+        for(int i = 0; i < w.length; i++) {
+            sum += w[i];
+            assertEquals(w[i], w[w.length - 1 - i], 1e-7f);
+        }
+        assertEquals(1f, sum, 1e-5f);
+    }
+
+    /**
+     * Tests if blur and sharpening keep uniform image untouched
+     */
+    @Test
+    public void uniformImage_unchanged() {
+        int[] src = new int[WIDTH * HEIGHT], dst = new int[src.length];
+        java.util.Arrays.fill(src, 0xFF336699);
+
+        mParallel.blur(src, dst, WIDTH, HEIGHT, 25f);
+        assertArrayEquals(src, dst);
+
+        mParallel.sharpen(src, dst, WIDTH, HEIGHT, 1);
+        assertArrayEquals(src, dst);
+
+        mParallel.boxBlur(src, dst, WIDTH, HEIGHT, 200f);
+        assertArrayEquals(src, dst);
+    }
+
+    /**
+     * Tests if box blur gives same result on any split into bands, also in place
+     */
+    @Test
+    public void boxBlur_parallelMatchesSequential() {
+        int[] src = randomImage(), expected = new int[src.length], actual = src.clone();
+        mSequential.boxBlur(src, expected, WIDTH, HEIGHT, 40f);
+        mParallel.boxBlur(actual, actual, WIDTH, HEIGHT, 40f);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Tests if box passes spread step edge like Gaussian of the same radius
+     */
+    @Test
+    public void boxBlur_matchesGaussianVariance() {
+        int width = 801, height = 3;
+        float radius = 60f, sigma = PixelEngine.blurSigma(radius);
+        int[] pixels = new int[width * height];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = i % width < width / 2 ? 0xFF000000 : 0xFFFFFFFF;
+        mParallel.boxBlur(pixels, pixels, width, height, radius);
+
+        //Differences of blurred step are blurred impulse
+        double sum = 0, mean = 0, variance = 0;
+        for(int x = 0; x < width - 1; x++) {
+            int d = (pixels[width + x + 1] & 0xFF) - (pixels[width + x] & 0xFF);
+            sum += d;
+            mean += d * x;
+        }
+        mean /= sum;
+        for(int x = 0; x < width - 1; x++) {
+            int d = (pixels[width + x + 1] & 0xFF) - (pixels[width + x] & 0xFF);
+            variance += d * (x - mean) * (x - mean);
+        }
+        variance /= sum;
+        assertEquals(255, sum, 0);
+        assertEquals(sigma * sigma, variance, sigma * sigma * 0.05);
+    }
+
+    /**
+     * Tests if box widths add up to variance of Gaussian for radii box blur is used for
+     */
+    @Test
+    public void boxRadii_matchGaussianVariance() {
+        for(float radius : new float[] { 30f, 200f, 1000f }) {
+            float sigma = PixelEngine.blurSigma(radius);
+            double variance = 0;
+            for(int r : PixelEngine.boxRadii(radius))
+                variance += ((2.0 * r + 1) * (2 * r + 1) - 1) / 12;
+            assertEquals(sigma * sigma, variance, sigma * sigma * 0.05);
+        }
+    }
+
+    /**
+     * Tests sharpening of single bright pixel
+     */
+    @Test
+    public void sharpen_singlePixel() {
+        int[] src = new int[9], dst = new int[9];
+        java.util.Arrays.fill(src, 0xFF101010);
+        src[4] = 0xFF202020;
+        mParallel.sharpen(src, dst, 3, 3, 1);
+
+        //Center: 5 * 32 - 4 * 16 = 96, neighbours: 5 * 16 - 3 * 16 - 32 = 0
+        assertEquals(0xFF606060, dst[4]);
+        assertEquals(0xFF000000, dst[1]);
+        assertEquals(0xFF101010, dst[0]);
+    }
+
+    /**
+     * Tests if separable pass gives same result as summing all taps, for every edge mode
+     */
+    @Test
+    public void convolve_separableMatchesDirect() {
+        float[] column = { 0.1f, -0.3f, 0.5f, 1f, 0.5f, -0.3f, 0.1f },
+                row = { 0.05f, 0.1f, 0.2f, 0.3f, 0.2f, 0.1f, 0.05f };
+        ConvolutionKernel kernel = ConvolutionKernel.separable(column, row);
+        assertTrue(kernel.isSeparable());
+
+        int[] src = randomImage(), expected = new int[src.length], actual = new int[src.length];
+        for(PixelEngine.EdgeMode edges : PixelEngine.EdgeMode.values()) {
+            mSequential.convolveDirect(src, expected, WIDTH, HEIGHT, kernel, edges);
+            mParallel.convolve(src, actual, WIDTH, HEIGHT, kernel, edges);
+            for(int i = 0; i < src.length; i++) {
+                for(int shift = 0; shift < 32; shift += 8)
+                    assertEquals(edges + " at " + i, (expected[i] >>> shift) & 0xFF,
+                            (actual[i] >>> shift) & 0xFF, 1);
+            }
+        }
+    }
+
+    /**
+     * Tests which pixels are read past edge of image in each edge mode
+     */
+    @Test
+    public void convolve_edgeModes() {
+        //Kernel that moves image one pixel right, reading pixel left of each
+        ConvolutionKernel shift = new ConvolutionKernel(3, 0, 0, 0, 1, 0, 0, 0, 0, 0);
+        int[] src = { 0xFF000010, 0xFF000020, 0xFF000030 }, dst = new int[3];
+
+        mParallel.convolve(src, dst, 3, 1, shift, PixelEngine.EdgeMode.CLAMP);
+        assertArrayEquals(new int[] { 0xFF000010, 0xFF000010, 0xFF000020 }, dst);
+        mParallel.convolve(src, dst, 3, 1, shift, PixelEngine.EdgeMode.MIRROR);
+        assertArrayEquals(new int[] { 0xFF000020, 0xFF000010, 0xFF000020 }, dst);
+        mParallel.convolve(src, dst, 3, 1, shift, PixelEngine.EdgeMode.WRAP);
+        assertArrayEquals(new int[] { 0xFF000030, 0xFF000010, 0xFF000020 }, dst);
+    }
+
+    /**
+     * Tests if large separable kernel runs much faster than summing all its taps,
+     * as it needs 2 * 31 instead of 31 * 31 multiplications per pixel
+     */
+    @Test
+    public void convolve_largeSeparableKernelIsFaster() {
+        float[] weights = PixelEngine.gaussianWeights(15f);
+        ConvolutionKernel kernel = ConvolutionKernel.separable(weights, weights);
+        int width = 320, height = 240;
+        int[] src = new int[width * height], dst = new int[src.length];
+        Random random = new Random(3);
+        for(int i = 0; i < src.length; i++)
+            src[i] = random.nextInt();
+
+        //First runs warm up compiler
+        long direct = Long.MAX_VALUE, separable = Long.MAX_VALUE;
+        for(int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            mSequential.convolveDirect(src, dst, width, height, kernel, PixelEngine.EdgeMode.CLAMP);
+            direct = Math.min(direct, System.nanoTime() - start);
+            start = System.nanoTime();
+            mSequential.convolve(src, dst, width, height, kernel, PixelEngine.EdgeMode.CLAMP);
+            separable = Math.min(separable, System.nanoTime() - start);
+        }
+        assertTrue("Separable " + separable + " ns, direct " + direct + " ns",
+                separable * 4 < direct);
+    }
+
+    /**
+     * Tests if unsharp mask steepens edge, keeps alpha and leaves small differences
+     * below threshold untouched
+     */
+    @Test
+    public void unsharpMask_edgeAndThreshold() {
+        int width = 20, height = 3;
+        int[] src = new int[width * height], dst = new int[src.length];
+        for(int i = 0; i < src.length; i++)
+            src[i] = i % width < width / 2 ? 0x80404040 : 0x80C0C0C0;
+        mParallel.unsharpMask(src, dst, width, height, 1f, 2f, 0f);
+
+        //Dark side gets darker and bright side brighter next to edge, far pixels stay
+        int row = width;
+        assertTrue((dst[row + width / 2 - 1] & 0xFF) < 0x40);
+        assertTrue((dst[row + width / 2] & 0xFF) > 0xC0);
+        assertEquals(0x80404040, dst[row]);
+        assertEquals(0x80C0C0C0, dst[row + width - 1]);
+        for(int p : dst)
+            assertEquals(0x80, p >>> 24);
+
+        //Tiny bumps vanish from blurred copy, but stay below threshold
+        for(int i = 0; i < src.length; i++)
+            src[i] = i % 2 == 0 ? 0xFF808080 : 0xFF818181;
+        mParallel.unsharpMask(src, dst, width, height, 5f, 2f, 2f);
+        assertArrayEquals(src, dst);
+    }
+
+    /**
+     * Tests if parallel statistics count every pixel once and match known values
+     */
+    @Test
+    public void statistics_matchesSequential() {
+        int[] pixels = randomImage();
+        ImageStats parallel = mParallel.statistics(pixels, WIDTH, HEIGHT),
+                sequential = mSequential.statistics(pixels, WIDTH, HEIGHT);
+        assertEquals(WIDTH * HEIGHT, parallel.getPixelCount());
+        for(int channel = 0; channel < ImageStats.CHANNELS; channel++)
+            assertArrayEquals(sequential.getHistogram(channel), parallel.getHistogram(channel));
+
+        int[] known = { 0xFF102030, 0xFF102030, 0xFFFFFFFF, 0x00000000 };
+        ImageStats stats = mParallel.statistics(known, 2, 2);
+        assertEquals(0, stats.getMin(ImageStats.RED));
+        assertEquals(255, stats.getMax(ImageStats.GREEN));
+        assertEquals((2 * 0x30 + 255) / 4.0, stats.getMean(ImageStats.BLUE), 1e-9);
+        assertEquals(0x10, stats.getPercentile(ImageStats.RED, 0.5f));
+        //Luminance of 0x102030 is 29.744, black and white map to themselves
+        assertEquals(2, stats.getCount(ImageStats.LUMA, 30));
+        assertEquals(1, stats.getCount(ImageStats.LUMA, 255));
+        assertEquals(1, stats.getCount(ImageStats.LUMA, 0));
+    }
+
+    /**
+     * Generates reproducible random image
+     * @return Pixels of image
+     */
+    private static int[] randomImage() {
+        Random random = new Random(42);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for(int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        return pixels;
+    }
+}
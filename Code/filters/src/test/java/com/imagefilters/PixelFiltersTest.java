@@ -0,0 +1,118 @@
+package com.imagefilters;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of filter steps applied to int[] images
+ */
+public class PixelFiltersTest {
+    /**
+     * Engine used by tests
+     */
+    private final PixelEngine mEngine = new PixelEngine(2, 64);
+
+    @After
+    public void tearDown() {
+        mEngine.shutdown();
+    }
+
+    /**
+     * Creates image of random pixels
+     * @param size Number of pixels
+     * @return Pixels of image
+     */
+    private static int[] randomImage(int size) {
+        int[] pixels = new int[size];
+        Random random = new Random(7);
+        for(int i = 0; i < size; i++)
+            pixels[i] = random.nextInt() | 0xFF000000;
+        return pixels;
+    }
+
+    /**
+     * Tests if chain gives same result as applying each step with engine directly
+     */
+    @Test
+    public void apply_matchesSeparateSteps() {
+        int width = 31, height = 17;
+        int[] source = randomImage(width * height);
+
+        int[] expected = source.clone(), scratch = new int[source.length];
+        mEngine.colorMatrix(expected, expected, width, height, ColorMatrices.GRAYSCALE);
+        mEngine.blur(expected, scratch, width, height, 3f);
+        mEngine.colorMatrix(scratch, scratch, width, height, ColorMatrices.INVERT);
+        mEngine.colorMatrix(scratch, scratch, width, height, ColorMatrices.GBR);
+
+        int[] actual = new PixelFilters(mEngine).apply(source.clone(), width, height,
+                FilterOp.parseRecipe("GRAYSCALE,BLUR(3.0),INVERT,GBR"), 1f);
+        assertArrayEquals(scratch, actual);
+    }
+
+    /**
+     * Tests if blur above maximum radius is done by box blur
+     */
+    @Test
+    public void apply_largeBlurUsesBoxBlur() {
+        int width = 40, height = 30;
+        int[] source = randomImage(width * height), expected = new int[source.length];
+        mEngine.boxBlur(source, expected, width, height, 100f);
+
+        int[] actual = new PixelFilters(mEngine).apply(source.clone(), width, height,
+                FilterOp.parseRecipe("BLUR(100.0)"), 1f);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Tests if unsharp mask step runs engine with its three parameters
+     */
+    @Test
+    public void apply_unsharpMask() {
+        int width = 40, height = 30;
+        int[] source = randomImage(width * height), expected = new int[source.length];
+        mEngine.unsharpMask(source, expected, width, height, 1.5f, 3f, 4f);
+
+        int[] actual = new PixelFilters(mEngine).apply(source.clone(), width, height,
+                FilterOp.parseRecipe("UNSHARP(1.5,3.0,4.0)"), 1f);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Tests if point filters around blur give same result as passes run by engine
+     */
+    @Test
+    public void apply_lutAroundBlur() {
+        int width = 31, height = 17;
+        int[] source = randomImage(width * height);
+
+        int[] expected = source.clone(), scratch = new int[source.length];
+        PointChain before = new PointChain(), after = new PointChain();
+        before.add(FilterOp.parse("GAMMA(1.8)"));
+        before.add(FilterOp.parse("GRAYSCALE"));
+        mEngine.pointFilter(expected, expected, width, height, before);
+        mEngine.blur(expected, scratch, width, height, 2f);
+        after.add(FilterOp.parse("POSTERIZE(4.0)"));
+        mEngine.pointFilter(scratch, scratch, width, height, after);
+
+        int[] actual = new PixelFilters(mEngine).apply(source.clone(), width, height,
+                FilterOp.parseRecipe("GAMMA(1.8),GRAYSCALE,BLUR(2.0),POSTERIZE(4.0)"), 1f);
+        assertArrayEquals(scratch, actual);
+    }
+
+    /**
+     * Tests if inverting twice restores image
+     */
+    @Test
+    public void apply_doubleInvertIsIdentity() {
+        int[] source = randomImage(100);
+        int[] actual = new PixelFilters(mEngine).apply(source.clone(), 10, 10,
+                Arrays.asList(new FilterOp(FilterOp.Type.INVERT),
+                        new FilterOp(FilterOp.Type.INVERT)), 1f);
+        assertArrayEquals(source, actual);
+    }
+}
@@ -0,0 +1,133 @@
+package com.imagefilters;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of point filters combined into one pass
+ */
+public class PointChainTest {
+    /**
+     * Number of pixels in test image
+     */
+    private static final int SIZE = 4096;
+
+    /**
+     * Tests if tables and matrices that don't mix channels become one table
+     */
+    @Test
+    public void perChannelFilters_becomeOneTable() {
+        PointChain chain = chainOf("GAMMA(1.5),INVERT,POSTERIZE(4.0),LEVELS(10.0,240.0)");
+        assertTrue(chain.hasLut());
+        assertTrue(ColorMatrices.isIdentity(chain.getMatrix()));
+        assertPassMatchesSteps("GAMMA(1.5),INVERT,POSTERIZE(4.0),LEVELS(10.0,240.0)", 1);
+    }
+
+    /**
+     * Tests if matrix mixing channels is kept between tables in the same pass
+     */
+    @Test
+    public void mixingMatrix_fusedBetweenTables() {
+        assertPassMatchesSteps("CURVES(80.0,140.0,200.0),GRAYSCALE,INVERT,POSTERIZE(3.0)", 1);
+        assertPassMatchesSteps("GAMMA(0.8),GBR,BRIGHTNESS_CONTRAST(0.1,0.4)", 1);
+    }
+
+    /**
+     * Tests if mixing matrix after pass that is only table goes behind that table
+     */
+    @Test
+    public void mixingAfterOnlyTable_fusedBehindTable() {
+        PointChain chain = chainOf("GAMMA(1.5),INVERT,GRAYSCALE");
+        assertTrue(chain.hasLut());
+        assertArrayEquals(ColorMatrices.GRAYSCALE, chain.getMatrix(), 0f);
+        assertPassMatchesSteps("GAMMA(1.5),INVERT,GRAYSCALE,POSTERIZE(5.0)", 1);
+    }
+
+    /**
+     * Tests if color balance gains above 1 are clamped before following channel mixing,
+     * as they are when filters are applied one by one
+     */
+    @Test
+    public void colorBalance_clampedBeforeMixing() {
+        assertPassMatchesSteps("COLOR_BALANCE(2.0,1.0,1.0),GRAYSCALE", 1);
+        assertPassMatchesSteps("COLOR_BALANCE(2.0,1.0,1.0),GBR", 1);
+        assertPassMatchesSteps("COLOR_BALANCE(2.0,1.0,1.0),BRG", 1);
+        assertPassMatchesSteps("COLOR_BALANCE(3.0,0.5,1.5),COLOR_BALANCE(0.5,2.0,1.0)", 1);
+    }
+
+    /**
+     * Tests if second mixing matrix after table starts new pass
+     */
+    @Test
+    public void mixingAfterTable_startsNewPass() {
+        PointChain chain = chainOf("GRAYSCALE,GAMMA(2.0)");
+        assertFalse(chain.addMatrix(ColorMatrices.GBR));
+        assertPassMatchesSteps("GAMMA(1.2),GRAYSCALE,POSTERIZE(6.0),GBR,LEVELS(20.0,200.0)", 2);
+    }
+
+    /**
+     * Tests if only matrices stay color matrix pass without tables
+     */
+    @Test
+    public void onlyMatrices_stayMatrix() {
+        PointChain chain = chainOf("INVERT,GBR");
+        assertFalse(chain.hasLut());
+        assertArrayEquals(ColorMatrices.concat(ColorMatrices.INVERT, ColorMatrices.GBR),
+                chain.getMatrix(), 0f);
+        assertTrue(chainOf("INVERT,INVERT").isIdentity());
+    }
+
+    /**
+     * Builds pass of steps that all fit into one pass
+     * @param recipe Point filter steps
+     * @return Combined pass
+     */
+    private static PointChain chainOf(String recipe) {
+        PointChain chain = new PointChain();
+        for(FilterOp op : FilterOp.parseRecipe(recipe))
+            assertTrue(chain.add(op));
+        return chain;
+    }
+
+    /**
+     * Checks if combined passes give the same image as applying each step separately
+     * @param recipe Point filter steps
+     * @param expectedPasses Number of passes steps should be combined into
+     */
+    private static void assertPassMatchesSteps(String recipe, int expectedPasses) {
+        List<FilterOp> ops = FilterOp.parseRecipe(recipe);
+        int[] src = new int[SIZE];
+        Random random = new Random(11);
+        for(int i = 0; i < SIZE; i++)
+            src[i] = random.nextInt();
+
+        int[] expected = src.clone();
+        for(FilterOp op : ops) {
+            if(op.isColorMatrix())
+                PixelEngine.colorMatrixRange(expected, expected, 0, SIZE, op.getMatrix());
+            else
+                PixelEngine.lutRange(expected, expected, 0, SIZE, op.getLut());
+        }
+
+        int[] actual = src.clone();
+        int passes = 0;
+        PointChain chain = new PointChain();
+        for(FilterOp op : ops) {
+            if(!chain.add(op)) {
+                chain.applyRange(actual, actual, 0, SIZE);
+                passes++;
+                chain = new PointChain();
+                assertTrue(chain.add(op));
+            }
+        }
+        chain.applyRange(actual, actual, 0, SIZE);
+        passes++;
+
+        assertEquals(expectedPasses, passes);
+        assertArrayEquals(expected, actual);
+    }
+}